@@ -6,9 +6,17 @@ import javax.servlet.http.*;
 import java.io.*;
 
 import java.net.HttpURLConnection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class implements a dynamic {@link javax.servlet.Servlet} service for
@@ -38,7 +46,10 @@ public class ActiveMQServer extends HttpServlet {
   }
 
   /**
-   * Method performs servlet initialization.
+   * Method performs servlet initialization. Configuration is read first, then
+   * security, connection, admission and ID setup run in parallel, see
+   * {@link ActiveMQServerStartup}. JMS connections, consumers and topic
+   * subscriptions are only created when a channel is first used.
    * 
    * @param config {@link javax.servlet.ServletConfig} provided by
    *               {@link javax.servlet.http.HttpServlet} container.
@@ -49,47 +60,120 @@ public class ActiveMQServer extends HttpServlet {
     
     super.init(config);
 
-    _config.init(getServletContext());
-    
-    if (!_config.getIsValid()) {
+    ServletContext context = getServletContext();
+
+    setEndpointPaths(context.getContextPath());
+
+    ActiveMQServerStartup startup = new ActiveMQServerStartup();
+
+    if (!startup.run("config", () -> {
+      
+      _config.init(context);
+      
+      return _config.getIsValid();
+    })) {
       
       _logger.severe("config is not valid");
       
+      startup.join();
+      
       return;
     }
 
-    _logger.info("config is valid");
+    startup.fork("security", () -> {
+      
+      _security.init(context);
+      
+      return _security.getIsValid();
+    });
+
+    startup.fork("connection", _connection::init);
 
-    _security.init(getServletContext());
-    
-    if (!_security.getIsValid()) {
+    startup.fork("admission", () -> {
       
-      _logger.severe("security is not valid");
+      _admission = new ActiveMQServerAdmission(_config.getRateLimitTiers(), 
+          _config.getRateLimitUsers(), 
+          _config.getRateLimitStripes());
       
-      return;
-    }
+      return _admission.getIsValid();
+    });
+
+    startup.fork("lanes", () -> {
+      
+      _lanes = new ActiveMQServerLanes(_config.getLanes(), 
+          (_config.getIsExecutionVirtual() ? 0 : _config.getContainerThreads()));
+      
+      return _lanes.getIsValid();
+    });
 
-    _logger.info("security is valid");
+    startup.fork("ids", () -> {
+      
+      _ids = new ActiveMQServerId(_config.getNodeId());
+      
+      _dedup = new ActiveMQServerDedup(_config.getDedupSize(), _config.getDedupWindow());
+      
+      return true;
+    });
 
-    if (!_connection.init()) {
+    if (!startup.join()) {
       
-      _logger.severe("connection is not valid");
+      _logger.severe("startup failed");
       
       return;
     }
 
-    _logger.info("connection is valid");
+    if (_config.getIsExecutionVirtual()) {
+      
+      _executor = Executors.newVirtualThreadPerTaskExecutor();
+      
+      _logger.info("blocking work runs on virtual threads");
+    }
 
     _isValid = true;
   }
 
+  /**
+   * Method performs servlet shutdown.
+   */
+  @Override
+  public void destroy() {
+    
+    _isValid = false;
+    
+    if (_executor != null) {
+      
+      _executor.shutdown();
+      
+      try {
+        
+        _executor.awaitTermination(getPublishBudget(), TimeUnit.MILLISECONDS);
+        
+      } catch (InterruptedException e) {
+        
+        Thread.currentThread().interrupt();
+      }
+    }
+    
+    if (_lanes != null) {
+      
+      _lanes.destroy();
+    }
+    
+    _security.destroy();
+    
+    _connection.destroy();
+    
+    super.destroy();
+  }
+
   /**
    * Override of 'service' {@link javax.servlet.http.HttpServlet} life cycle
    * method
    * {@link javax.servlet.http.HttpServlet#service(HttpServletRequest, HttpServletResponse)}.
    * This method returns code {@value HttpURLConnection#HTTP_INTERNAL_ERROR} to
-   * clients if {@link ActiveMQServer#_isValid} is false. Otherwise it calls the
-   * overridden superclass method.
+   * clients if {@link ActiveMQServer#_isValid} is false, and code
+   * {@value _HTTP_TOO_MANY_REQUESTS} if the client's remote address is over
+   * its rate limit. Otherwise it calls the overridden superclass method.
    * 
    * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
    * @param response client {@link javax.servlet.http.HttpServletResponse} object.
@@ -109,6 +193,15 @@ public class ActiveMQServer extends HttpServlet {
       return;
     }
 
+    long wait = _admission.admitClient(request.getRemoteAddr());
+    
+    if (wait > 0) {
+      
+      reject(response, wait);
+      
+      return;
+    }
+
     super.service(request, response);
   }
 
@@ -147,10 +240,53 @@ public class ActiveMQServer extends HttpServlet {
   protected void doGet(HttpServletRequest request, HttpServletResponse response) 
       throws ServletException, IOException {
 
-    _logger.severe_response(response, 
-        "http get disabled.");
+    String requestURI = request.getRequestURI();
+    
+    String clientIp = request.getRemoteAddr();
 
-    response.setStatus(HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+    if (isEndpointLogGet(requestURI)) {
+
+      execute("doGet Get", request, response, this::doGetEndpointGet);
+
+      return;
+    }
+
+    if (isEndpointLogMetrics(requestURI)) {
+
+      if (!isMetricsClient(clientIp, _config.getMetricsAddresses())) {
+
+        _logger.severe_response(response, 
+            "metrics denied to ",
+            clientIp);
+
+        response.setStatus(HttpURLConnection.HTTP_FORBIDDEN);
+
+        return;
+      }
+
+      response.setStatus(HttpURLConnection.HTTP_OK);
+
+      response.setContentType(_HTTP_CONTENT_TYPE_TEXT);
+
+      response.getWriter().append(ActiveMQServerMetrics.render());
+
+      return;
+    }
+
+    if (isEndpointLogSubscribe(requestURI)) {
+
+      run("doGet Subscribe", request, response, this::doGetEndpointSubscribe);
+
+      return;
+    }
+
+    _logger.severe_response(response, 
+        "invalid endpoint ",
+        requestURI,
+        " from ",
+        clientIp);
+            
+    response.setStatus(HttpURLConnection.HTTP_BAD_METHOD);
   }
 
   /**
@@ -190,22 +326,18 @@ public class ActiveMQServer extends HttpServlet {
     
     String requestURI = request.getRequestURI();
     
-    String requestContext = request.getContextPath();
-    
     String clientIp = request.getRemoteAddr();
 
-    if (isEndpointLogPost(requestContext, requestURI)) {
+    if (isEndpointLogPost(requestURI)) {
 
-      if (doPostEndpointPost(request, response)) {
-      
-        _logger.info("doPost Post OK for client ",
-            clientIp);
-      
-      } else {
-       
-        _logger.severe("doPost Post NOT ok for client ",
-            clientIp);
-      }
+      execute("doPost Post", request, response, this::doPostEndpointPost);
+
+      return;
+    }
+
+    if (isEndpointLogUpload(requestURI)) {
+
+      execute("doPost Upload", request, response, this::doPostEndpointUpload);
 
       return;
     }
@@ -220,206 +352,1223 @@ public class ActiveMQServer extends HttpServlet {
   }
 
   /**
-   * Method implements processing for Post Post endpoint. This method bounces the
-   * client's header and ip back to the client. This checks that the client
-   * credentials are valid.
+   * Method runs an endpoint. In virtual execution mode the request is put
+   * into asynchronous mode and the endpoint runs on its own virtual thread,
+   * so the container thread is handed back at once and blocking lookups,
+   * connects, sends and retry pauses do not hold a platform thread.
+   * Otherwise the endpoint runs on the calling container thread.
    * 
+   * @param name endpoint name for logging.
    * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
    * @param response client {@link javax.servlet.http.HttpServletResponse} object.
-   * @return boolean true indicating success, false otherwise.
+   * @param endpoint endpoint processing method.
    * @throws IOException      .
    * @throws ServletException .
    */
-  private boolean doPostEndpointPost(HttpServletRequest request, HttpServletResponse response)
-      throws ServletException, IOException {
-
-    String id = Long.toString(_id.getAndIncrement());
-
-    Map<String, String> values = new HashMap<String, String>();
-
-    if (!extractRequest(_HTTP_REQUEST_KEYS, request, values)) {
-
-      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+  private void execute(String name, 
+      HttpServletRequest request, 
+      HttpServletResponse response, 
+      Endpoint endpoint) throws ServletException, IOException {
+    
+    if (_executor == null) {
       
-      _logger.severe_response(response,
-          "invalid fields in request from ",
-          request.getRemoteAddr());
-
-      return false;
+      run(name, request, response, endpoint);
+      
+      return;
     }
-
-    if (!_security.validateCredentials(values.get(_HTTP_KEY_USER), values.get(_HTTP_KEY_PASSWORD))) {
+    
+    AsyncContext async = request.startAsync();
+    
+    async.setTimeout(0);
+    
+    try {
       
-      _logger.severe_response(response,
-          "invalid credentials for user from client ",
-          request.getRemoteAddr());
+      _executor.execute(() -> {
+        
+        try {
+          
+          run(name, request, response, endpoint);
+          
+        } finally {
+          
+          async.complete();
+        }
+      });
       
-      return false;
+    } catch (RejectedExecutionException e) {
+      
+      _logger.exception(e);
+      
+      response.setStatus(HttpURLConnection.HTTP_UNAVAILABLE);
+      
+      async.complete();
     }
+  }
+
+  /**
+   * Method runs an endpoint on the current thread and logs its outcome.
+   * 
+   * @param name endpoint name for logging.
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param endpoint endpoint processing method.
+   */
+  private void run(String name, 
+      HttpServletRequest request, 
+      HttpServletResponse response, 
+      Endpoint endpoint) {
+    
+    ActiveMQServerRequest context = ActiveMQServerRequest.acquire();
     
-    if (!values.get(_HTTP_KEY_CHANNEL).matches(_pattern)) {
+    if (isTimed(request)) {
+      
+      context.getTiming().start();
+    }
+    
+    context.getResult().setDeadline(getTimeout(request), _config.getDeadlineGrace());
+    
+    try {
+      
+      if (endpoint.process(request, response, context)) {
+        
+        _logger.info(name,
+            " OK for client ",
+            request.getRemoteAddr());
+        
+        return;
+      }
+      
+    } catch (Exception e) {
+      
+      _logger.exception(e);
       
       response.setStatus(HttpURLConnection.HTTP_INTERNAL_ERROR);
       
-      _logger.severe_response(response, "invalid channel name format.");
+    } finally {
       
-      return false;
+      context.release();
     }
     
-    Map<String, String> data = new HashMap<String, String>();
+    _logger.severe(name,
+        " NOT ok for client ",
+        request.getRemoteAddr());
+  }
 
-    StringBuilder code = new StringBuilder();
+  /**
+   * Method returns whether a request is answered with a per-stage timing
+   * breakdown, either because it carries the configured timing header or
+   * because it is sampled.
+   * 
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @return boolean true if the request is timed.
+   */
+  private boolean isTimed(HttpServletRequest request) {
     
-    StringBuilder mqid = new StringBuilder();
+    String header = _config.getTimingHeader();
     
-    if (!_connection.publish(id, 
-        values.get(_HTTP_KEY_MESSAGE), 
-        values.get(_HTTP_KEY_CHANNEL), 
-        code, 
-        mqid)) {
+    if (header != null &&
+        request.getHeader(header) != null) {
+      
+      return true;
+    }
     
-      data.put(_HTTP_KEY_CODE, (code.length() > 0 ? code.toString() : "-11"));
+    return _config.getTimingSampleRate() > 0 &&
+        ThreadLocalRandom.current().nextInt(1000) < _config.getTimingSampleRate();
+  }
+
+  /**
+   * Method returns the time a client waits for its request, read from the
+   * configured deadline header. A missing or malformed header means the
+   * request has no deadline.
+   * 
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @return long timeout (ms), 0 if none.
+   */
+  private long getTimeout(HttpServletRequest request) {
     
-      data.put(_HTTP_KEY_MQID, (mqid.length() > 0 ? mqid.toString() : "0"));
+    String header = _config.getDeadlineHeader();
     
-    } else {
-      
-      data.put(_HTTP_KEY_CODE, "0");
+    if (header == null) {
       
-      data.put(_HTTP_KEY_MQID, "0");      
-    
+      return 0;
     }
     
-    data.put(_HTTP_KEY_HEADER, values.get(_HTTP_KEY_HEADER));
+    String value = request.getHeader(header);
     
-    data.put(_HTTP_KEY_ID, id);
+    if (value == null) {
+      
+      return 0;
+    }
     
-    data.put(_HTTP_KEY_REMOTE, request.getRemoteAddr());
-
-    String encoded = _security.encodeData(data);
-
-    if (encoded == null ||
-        encoded.isBlank()) {
+    try {
       
-      response.setStatus(HttpURLConnection.HTTP_INTERNAL_ERROR);
+      return Math.max(1, Long.parseLong(value.trim()));
       
-      _logger.severe_response(response, "could not encode data.");
+    } catch (NumberFormatException e) {
       
-      return false;
+      _logger.severe("request malformed deadline from client ",
+          request.getRemoteAddr());
     }
+    
+    return 0;
+  }
 
-    response.setStatus(HttpURLConnection.HTTP_OK);
-
-    response.getWriter().append(encoded);
-
+  /**
+   * Method rejects a request whose deadline leaves less time than a stage
+   * usually takes, so no work is spent on an answer nobody waits for.
+   * 
+   * @param stage next stage.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @return boolean true if the request was rejected.
+   */
+  private boolean isExpired(ActiveMQServerStage stage, HttpServletResponse response, ActiveMQServerRequest context) {
+    
+    if (context.getResult().covers(stage.getEstimate())) {
+      
+      return false;
+    }
+    
+    _expired.increment();
+    
+    response.setStatus(HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
+    
+    _logger.severe_response(response, "request deadline exceeded.");
+    
     return true;
   }
 
   /**
-   * Method checks if all fields in fields parameter are present in request
-   * object and extracts values..
+   * This interface is implemented by endpoint processing methods.
+   */
+  @FunctionalInterface
+  private interface Endpoint {
+    
+    /**
+     * Method processes a request.
+     * 
+     * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+     * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+     * @param context pooled request context.
+     * @return boolean true indicating success, false otherwise.
+     * @throws IOException      .
+     * @throws ServletException .
+     */
+    boolean process(HttpServletRequest request, HttpServletResponse response, ActiveMQServerRequest context)
+        throws ServletException, IOException;
+  }
+
+  /**
+   * Method implements processing for Post Post endpoint. This method bounces the
+   * client's header and ip back to the client. This checks that the client
+   * credentials are valid. If the client supplies the optional
+   * '{@value _HTTP_KEY_SEQUENCE}' field, user, pid and sequence form an
+   * idempotency key and a retried request is answered with the result of the
+   * original one without being published again.
    * 
-   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
-   * @param keys names of field values to be checked against request parameter.
-   * @param values request data is returned to client in this collection.
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
    * @return boolean true indicating success, false otherwise.
+   * @throws IOException      .
+   * @throws ServletException .
    */
-  private boolean extractRequest(String[] keys, HttpServletRequest request, Map<String, String> values) {
-    
-    boolean result = true;
+  private boolean doPostEndpointPost(HttpServletRequest request, HttpServletResponse response, ActiveMQServerRequest context)
+      throws ServletException, IOException {
 
-    for (String key : keys) {
+    String id = Long.toString(_ids.next());
 
-      String value = request.getParameter(key);
-      
-      if (value == null || 
-          value.isBlank()) {
+    if (!validateRequest(_HTTP_REQUEST_KEYS, 
+        _HTTP_REQUEST_OPTIONAL_KEYS, 
+        request, 
+        response, 
+        context)) {
 
-        _logger.severe("request missing field '",
-            key,
-            "' from client ",
-            request.getRemoteAddr());
+      return false;
+    }
+    
+    String key = null;
+    
+    String code = null;
+    
+    String mqid = null;
+    
+    ActiveMQServerDedup.Entry entry = null;
+    
+    ActiveMQServerDedup.Entry original = null;
+    
+    if (context.get(_HTTP_KEY_SEQUENCE) != null) {
+      
+      key = ActiveMQServerDedup.key(context.get(_HTTP_KEY_USER), 
+          context.get(_HTTP_KEY_PID), 
+          context.get(_HTTP_KEY_SEQUENCE));
+      
+      entry = new ActiveMQServerDedup.Entry();
+      
+      original = _dedup.claim(key, entry);
+    }
+    
+    if (original != entry) {
+      
+      if (!original.await(Math.min(getPublishBudget(), context.getResult().getRemaining()))) {
+        
+        response.setStatus(HttpURLConnection.HTTP_CONFLICT);
         
-        result = false;
+        _logger.severe_response(response, "duplicate request still in progress.");
         
-        continue;
+        return false;
       }
       
+      _logger.info("duplicate id ",
+          id,
+          " of id ",
+          original.getId());
+      
+      id = original.getId();
+      
+      code = original.getCode();
+      
+      mqid = original.getMqid();
+    
+    } else {
+    
+      ActiveMQServerResult result = context.getResult();
+      
+      result.setMetadata(context.get(_HTTP_KEY_HEADER), 
+          context.get(_HTTP_KEY_PID), 
+          request.getRemoteAddr(), 
+          System.currentTimeMillis());
+      
+      String call = id;
+      
+      long start = _stagePublish.begin();
+      
+      boolean published = false;
+      
       try {
+      
+        try {
         
-        String text = _security.decryptData(value);
+          published = _stagePublish.end(start, 
+              _lanes.call(context.get(_HTTP_KEY_CHANNEL), 
+                  context.getTiming(), 
+                  () -> _connection.publish(call, 
+                      context.get(_HTTP_KEY_MESSAGE), 
+                      context.get(_HTTP_KEY_CHANNEL), 
+                      context.get(_config.getShardKey()), 
+                      result)), 
+              context.getTiming());
         
-        if (text == null || 
-            text.isBlank()) {
-
-          _logger.severe("request mangled value for key '",
-              key,
-              "' from client ",
-              request.getRemoteAddr());
-
-          result = false;
+        } catch (RejectedExecutionException e) {
+        
+          _stagePublish.end(start, false, context.getTiming());
+        
+          if (entry != null) {
+          
+            _dedup.complete(key, 
+                entry, 
+                id, 
+                _CODE_LANE_SATURATED, 
+                _CODE_OK, 
+                false);
           
-          continue;
+            entry = null;
+          }
+        
+          saturate(response, context.get(_HTTP_KEY_CHANNEL));
+        
+          return false;
         }
+      
+        if (!published) {
+      
+          code = (result.getCode() != null ? result.getCode() : (result.getIsExpired() ? _CODE_DEADLINE_EXCEEDED : _CODE_PUBLISH_FAILED));
+      
+          mqid = (result.getMqid() != null ? result.getMqid() : _CODE_OK);
+      
+        } else {
         
-        values.put(key, text);
+          code = _CODE_OK;
+        
+          mqid = _CODE_OK;
       
-      } catch (Exception e) {
+        }
       
-        _logger.exception(e);
+        if (entry != null) {
         
-        result = false;
-      }
-    }
+          _dedup.complete(key, 
+              entry, 
+              id, 
+              code, 
+              mqid, 
+              published);
         
-    return result;
-  }
-  
+          entry = null;
+        }
+      
+      } finally {
+        
+        if (entry != null) {
+          
+          _dedup.complete(key, 
+              entry, 
+              id, 
+              _CODE_PUBLISH_FAILED, 
+              _CODE_OK, 
+              false);
+        }
+      }
+    }
+    
+    respond(request, 
+        response, 
+        context, 
+        _HTTP_RESPONSE_KEYS, 
+        context.getResponse(context.get(_HTTP_KEY_HEADER), id, code, request.getRemoteAddr(), mqid), 
+        null, 
+        null);
+
+    return true;
+  }
+
+  /**
+   * Method implements processing for Post Upload endpoint. This method
+   * publishes a payload of any size. The request fields are sent as headers,
+   * see {@link ActiveMQServerUploadRequest}, since a query string would put
+   * the credentials into access logs. The request body is the raw payload,
+   * which is streamed to the channel as it arrives as a group of chunk
+   * messages of
+   * '{@value ActiveMQServerConfig#_CONTEXT_CHUNK_SIZE_KEY}' bytes, see
+   * {@link ActiveMQServerConnection#publishChunks}. Consumers reassemble the
+   * payload with {@link ActiveMQServerAssembler}.
+   * 
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @return boolean true indicating success, false otherwise.
+   * @throws IOException      .
+   * @throws ServletException .
+   */
+  private boolean doPostEndpointUpload(HttpServletRequest request, HttpServletResponse response, ActiveMQServerRequest context)
+      throws ServletException, IOException {
+
+    String contentType = request.getContentType();
+
+    // Form bodies would be consumed by the container as parameters.
+    if (contentType != null &&
+        contentType.toLowerCase(Locale.ROOT).startsWith(_HTTP_CONTENT_TYPE_FORM)) {
+
+      response.setStatus(HttpURLConnection.HTTP_UNSUPPORTED_TYPE);
+
+      _logger.severe_response(response, "upload body must not be form encoded.");
+
+      return false;
+    }
+
+    if (request.getQueryString() != null) {
+
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+
+      _logger.severe_response(response, "upload fields must be sent as headers.");
+
+      return false;
+    }
+
+    String id = Long.toString(_ids.next());
+
+    if (!validateRequest(_HTTP_UPLOAD_KEYS, 
+        _HTTP_NO_KEYS, 
+        new ActiveMQServerUploadRequest(request), 
+        response, 
+        context)) {
+
+      return false;
+    }
+
+    ActiveMQServerResult result = context.getResult();
+    
+    result.setMetadata(context.get(_HTTP_KEY_HEADER), 
+        context.get(_HTTP_KEY_PID), 
+        request.getRemoteAddr(), 
+        System.currentTimeMillis());
+    
+    InputStream in = request.getInputStream();
+    
+    long length = request.getContentLengthLong();
+    
+    long start = _stagePublish.begin();
+    
+    boolean published = false;
+    
+    try {
+      
+      published = _stagePublish.end(start, 
+          _lanes.call(context.get(_HTTP_KEY_CHANNEL), 
+              context.getTiming(), 
+              () -> _connection.publishChunks(id, 
+                  in, 
+                  length, 
+                  context.get(_HTTP_KEY_CHANNEL), 
+                  context.get(_config.getShardKey()), 
+                  result)), 
+          context.getTiming());
+      
+    } catch (RejectedExecutionException e) {
+      
+      _stagePublish.end(start, false, context.getTiming());
+      
+      saturate(response, context.get(_HTTP_KEY_CHANNEL));
+      
+      return false;
+    }
+
+    String code = (published ? _CODE_OK : (result.getCode() != null ? result.getCode() : (result.getIsExpired() ? _CODE_DEADLINE_EXCEEDED : _CODE_UPLOAD_FAILED)));
+
+    String mqid = (result.getMqid() != null ? result.getMqid() : _CODE_OK);
+
+    respond(request, 
+        response, 
+        context, 
+        _HTTP_UPLOAD_RESPONSE_KEYS, 
+        context.getResponse(context.get(_HTTP_KEY_HEADER), id, code, request.getRemoteAddr(), mqid, Integer.toString(result.getCount())), 
+        null, 
+        null);
+
+    return true;
+  }
+
+  /**
+   * Method implements processing for Get Get endpoint. This method long-polls
+   * the client's channel and returns up to '{@value _HTTP_KEY_MAX}' messages,
+   * waiting up to '{@value _HTTP_KEY_WAIT}' ms for the first one. Both are
+   * optional plain-text fields capped by the servlet configuration.
+   * 
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @return boolean true indicating success, false otherwise.
+   * @throws IOException      .
+   * @throws ServletException .
+   */
+  private boolean doGetEndpointGet(HttpServletRequest request, HttpServletResponse response, ActiveMQServerRequest context)
+      throws ServletException, IOException {
+
+    String id = Long.toString(_ids.next());
+
+    if (!validateRequest(_HTTP_CONSUME_KEYS, 
+        _HTTP_NO_KEYS, 
+        request, 
+        response, 
+        context)) {
+
+      return false;
+    }
+
+    int max = extractLimit(request, _HTTP_KEY_MAX, _config.getConsumeMaxMessages());
+    
+    int wait = (int) Math.min(extractLimit(request, _HTTP_KEY_WAIT, _config.getConsumeMaxWait()), 
+        context.getResult().getRemaining());
+    
+    if (max < 0 || 
+        wait < 0) {
+      
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+      
+      _logger.severe_response(response, "invalid consume limits.");
+      
+      return false;
+    }
+    
+    List<String> messages = new ArrayList<String>();
+
+    boolean[] delivered = new boolean[1];
+
+    if (_connection.consume(id, 
+        context.get(_HTTP_KEY_CHANNEL), 
+        max, 
+        wait, 
+        messages, 
+        received -> delivered[0] = deliver(request, response, context, id, received))) {
+      
+      return true;
+    }
+    
+    if (delivered[0] ||
+        response.isCommitted()) {
+      
+      return false;
+    }
+    
+    respond(request, 
+        response, 
+        context, 
+        _HTTP_CONSUME_RESPONSE_KEYS, 
+        new String[] { id, _CODE_CONSUME_FAILED, request.getRemoteAddr(), "0" }, 
+        _HTTP_KEY_MESSAGE, 
+        new ArrayList<String>());
+
+    return true;
+  }
+
+  /**
+   * Method writes consumed messages to the client and flushes them, so they
+   * are acknowledged to the broker only once they have been sent.
+   * 
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @param id server operation ID.
+   * @param messages received message texts.
+   * @return boolean true if the response was sent, false otherwise.
+   */
+  private boolean deliver(HttpServletRequest request, 
+      HttpServletResponse response, 
+      ActiveMQServerRequest context, 
+      String id, 
+      List<String> messages) {
+    
+    try {
+      
+      respond(request, 
+          response, 
+          context, 
+          _HTTP_CONSUME_RESPONSE_KEYS, 
+          new String[] { id, _CODE_OK, request.getRemoteAddr(), Integer.toString(messages.size()) }, 
+          _HTTP_KEY_MESSAGE, 
+          messages);
+      
+      response.flushBuffer();
+      
+      return true;
+      
+    } catch (IOException e) {
+      
+      _logger.exception(e);
+    }
+    
+    return false;
+  }
+
+  /**
+   * Method writes a successful response in the format negotiated through the
+   * request Accept header, see {@link ActiveMQServerEncoder}. Timed requests
+   * get the '{@value _HTTP_HEADER_SERVER_TIMING}' header.
+   * 
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @param keys response field names.
+   * @param values response field values in the order of keys.
+   * @param key name of repeated field, or null.
+   * @param repeated values of repeated field, or null.
+   * @throws IOException .
+   */
+  private static void respond(HttpServletRequest request, 
+      HttpServletResponse response, 
+      ActiveMQServerRequest context, 
+      String[] keys, 
+      String[] values, 
+      String key, 
+      List<String> repeated) throws IOException {
+
+    boolean binary = ActiveMQServerEncoder.isBinary(request.getHeader(_HTTP_HEADER_ACCEPT));
+
+    response.setStatus(HttpURLConnection.HTTP_OK);
+
+    if (context.getTiming().getIsEnabled()) {
+
+      response.setHeader(_HTTP_HEADER_SERVER_TIMING, context.getTiming().render());
+    }
+
+    response.setContentType(binary ? 
+        ActiveMQServerEncoder._CONTENT_TYPE_BINARY : 
+        ActiveMQServerEncoder._CONTENT_TYPE_FORM);
+
+    ActiveMQServerEncoder.write(response.getOutputStream(), 
+        binary, 
+        keys, 
+        values, 
+        key, 
+        repeated);
+  }
+
+  /**
+   * Method implements processing for Get Subscribe endpoint. This method holds
+   * the response open asynchronously and streams the client's topic channel
+   * as Server-Sent Events until the client disconnects, the response times
+   * out or the client falls too far behind.
+   * 
+   * @param request  client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context pooled request context.
+   * @return boolean true indicating success, false otherwise.
+   * @throws IOException      .
+   * @throws ServletException .
+   */
+  private boolean doGetEndpointSubscribe(HttpServletRequest request, HttpServletResponse response, ActiveMQServerRequest context)
+      throws ServletException, IOException {
+
+    String id = Long.toString(_ids.next());
+
+    if (!validateRequest(_HTTP_CONSUME_KEYS, 
+        _HTTP_NO_KEYS, 
+        request, 
+        response, 
+        context)) {
+
+      return false;
+    }
+
+    response.setStatus(HttpURLConnection.HTTP_OK);
+
+    response.setContentType(_HTTP_CONTENT_TYPE_EVENT_STREAM);
+    
+    response.setHeader("Cache-Control", "no-cache");
+    
+    AsyncContext async = request.startAsync();
+    
+    async.setTimeout(_config.getSubscribeTimeout());
+    
+    ActiveMQServerSubscriber subscriber = new ActiveMQServerSubscriber(id, 
+        async, 
+        _config.getSubscribeBufferSize());
+    
+    if (!_connection.subscribe(id, 
+        context.get(_HTTP_KEY_CHANNEL), 
+        subscriber)) {
+      
+      subscriber.close();
+      
+      return false;
+    }
+    
+    return true;
+  }
+
+  /**
+   * Method validates a request in stages ordered by cost, stopping at the
+   * first stage that fails. Cheap structural checks on the raw fields run
+   * first, then each group of fields is decrypted and checked in turn: the
+   * user, the credentials and then the user's rate limit, the channel, the remaining
+   * metadata fields and finally the message body. The response status is set
+   * by the failing stage.
+   * 
+   * @param keys names of required fields.
+   * @param optional names of optional fields.
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param context decrypted field values are returned to client in this context.
+   * @return boolean true if all stages passed, false otherwise.
+   */
+  private boolean validateRequest(String[] keys,
+      String[] optional,
+      HttpServletRequest request, 
+      HttpServletResponse response, 
+      ActiveMQServerRequest context) {
+
+    long start = _stageStructure.begin();
+    
+    if (!_stageStructure.end(start, checkStructure(keys, optional, request), context.getTiming())) {
+
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+      
+      _logger.severe_response(response,
+          "invalid fields in request from ",
+          request.getRemoteAddr());
+
+      return false;
+    }
+    
+    start = _stageUser.begin();
+    
+    if (!extractField(_HTTP_KEY_USER, request, context)) {
+      
+      _stageUser.end(start, false, context.getTiming());
+
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+      
+      _logger.severe_response(response,
+          "invalid user in request from ",
+          request.getRemoteAddr());
+
+      return false;
+    }
+    
+    _stageUser.end(start, true, context.getTiming());
+    
+    if (isExpired(_stageCredentials, response, context)) {
+      
+      return false;
+    }
+    
+    start = _stageCredentials.begin();
+    
+    long wait = _admission.admitUser(context.get(_HTTP_KEY_USER), () -> 
+        extractField(_HTTP_KEY_PASSWORD, request, context) &&
+        _security.validateCredentials(context.get(_HTTP_KEY_USER), 
+            context.get(_HTTP_KEY_PASSWORD), 
+            request.getRemoteAddr()));
+    
+    if (!_stageCredentials.end(start, wait == 0, context.getTiming())) {
+      
+      if (wait > 0) {
+        
+        reject(response, wait);
+        
+        return false;
+      }
+      
+      response.setStatus(HttpURLConnection.HTTP_UNAUTHORIZED);
+      
+      _logger.severe_response(response,
+          "invalid credentials for user from client ",
+          request.getRemoteAddr());
+      
+      return false;
+    }
+    
+    if (isExpired(_stageChannel, response, context)) {
+      
+      return false;
+    }
+    
+    start = _stageChannel.begin();
+    
+    int acl = (extractField(_HTTP_KEY_CHANNEL, request, context) ?
+        _security.checkChannel(context.get(_HTTP_KEY_USER), context.get(_HTTP_KEY_CHANNEL)) :
+        ActiveMQServerAcl._MALFORMED);
+    
+    if (!_stageChannel.end(start, acl == ActiveMQServerAcl._ALLOWED, context.getTiming())) {
+      
+      if (acl == ActiveMQServerAcl._DENIED) {
+        
+        response.setStatus(HttpURLConnection.HTTP_FORBIDDEN);
+        
+        _logger.severe_response(response,
+            "channel not allowed for user from client ",
+            request.getRemoteAddr());
+        
+        return false;
+      }
+      
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+      
+      _logger.severe_response(response, "invalid channel name format.");
+      
+      return false;
+    }
+    
+    if (isExpired(_stageMetadata, response, context)) {
+      
+      return false;
+    }
+    
+    start = _stageMetadata.begin();
+    
+    boolean result = true;
+    
+    for (String key : keys) {
+      
+      if (!isStagedKey(key)) {
+        
+        result = result && extractField(key, request, context);
+      }
+    }
+    
+    for (String key : optional) {
+      
+      result = result && extractOptional(key, request, context);
+    }
+    
+    if (!_stageMetadata.end(start, result, context.getTiming())) {
+
+      response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+      
+      _logger.severe_response(response,
+          "invalid fields in request from ",
+          request.getRemoteAddr());
+
+      return false;
+    }
+    
+    for (String key : keys) {
+      
+      if (key.equals(_HTTP_KEY_MESSAGE)) {
+
+        if (isExpired(_stageMessage, response, context)) {
+          
+          return false;
+        }
+        
+        start = _stageMessage.begin();
+    
+        if (!_stageMessage.end(start, extractField(_HTTP_KEY_MESSAGE, request, context), context.getTiming())) {
+
+          response.setStatus(HttpURLConnection.HTTP_BAD_REQUEST);
+          
+          _logger.severe_response(response,
+              "invalid message in request from ",
+              request.getRemoteAddr());
+
+          return false;
+        }
+      }
+    }
+    
+    return true;
+  }
+
+  /**
+   * Method checks request structure before any decryption. Every required
+   * field must be present and no field may exceed the configured size.
+   * 
+   * @param keys names of required fields.
+   * @param optional names of optional fields.
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @return boolean true if structure is valid, false otherwise.
+   */
+  private boolean checkStructure(String[] keys, String[] optional, HttpServletRequest request) {
+    
+    for (String key : keys) {
+
+      String value = request.getParameter(key);
+      
+      if (value == null || 
+          value.isBlank() ||
+          value.length() > _config.getRequestFieldMax()) {
+
+        _logger.severe("request missing or oversized field '",
+            key,
+            "' from client ",
+            request.getRemoteAddr());
+        
+        return false;
+      }
+    }
+    
+    for (String key : optional) {
+
+      String value = request.getParameter(key);
+      
+      if (value != null && 
+          value.length() > _config.getRequestFieldMax()) {
+
+        _logger.severe("request oversized field '",
+            key,
+            "' from client ",
+            request.getRemoteAddr());
+        
+        return false;
+      }
+    }
+    
+    return true;
+  }
+
+  /**
+   * Method returns boolean indicating whether field is decrypted by a
+   * dedicated stage of {@link #validateRequest}.
+   * 
+   * @param key name of field.
+   * @return boolean true if field has its own stage.
+   */
+  private boolean isStagedKey(String key) {
+    
+    return key.equals(_HTTP_KEY_USER) ||
+        key.equals(_HTTP_KEY_PASSWORD) ||
+        key.equals(_HTTP_KEY_CHANNEL) ||
+        key.equals(_HTTP_KEY_MESSAGE);
+  }
+
+  /**
+   * Method rejects a request over its rate limit. Nothing is logged, so
+   * rejecting abusive traffic stays cheap.
+   * 
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param wait nanoseconds until the client may retry.
+   */
+  private void reject(HttpServletResponse response, long wait) {
+    
+    response.setStatus(_HTTP_TOO_MANY_REQUESTS);
+    
+    response.setHeader(_HTTP_HEADER_RETRY_AFTER, ActiveMQServerAdmission.getRetryAfter(wait));
+  }
+
+  /**
+   * Method rejects a request whose channel's lane is saturated, see
+   * {@link ActiveMQServerLanes}, or whose channel is shed because its broker
+   * holds producers back, see {@link ActiveMQServerFlow}.
+   * 
+   * @param response client {@link javax.servlet.http.HttpServletResponse} object.
+   * @param channel channel of the request.
+   */
+  private void saturate(HttpServletResponse response, String channel) {
+    
+    response.setStatus(HttpURLConnection.HTTP_UNAVAILABLE);
+    
+    response.setHeader(_HTTP_HEADER_RETRY_AFTER, "1");
+    
+    _logger.severe_response(response, 
+        "channel ",
+        channel,
+        " saturated.");
+  }
+
+  /**
+   * Method extracts and decrypts an optional request field. An absent field
+   * is not an error.
+   * 
+   * @param key name of field.
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param context field value is set in this context if present.
+   * @return boolean true if field is absent or valid, false otherwise.
+   */
+  private boolean extractOptional(String key, HttpServletRequest request, ActiveMQServerRequest context) {
+    
+    String value = request.getParameter(key);
+    
+    if (value == null || 
+        value.isBlank()) {
+      
+      return true;
+    }
+    
+    return extractField(key, request, context);
+  }
+
+  /**
+   * Method returns the longest time (ms) a publish can take including all
+   * connect and publish retries.
+   * 
+   * @return long time (ms).
+   */
+  private long getPublishBudget() {
+    
+    return (long) _config.getPublishLimit() * 
+        (_config.getPublishInterval() + 
+            (long) _config.getConnectLimit() * _config.getConnectInterval());
+  }
+
+  /**
+   * Method reads an optional plain-text numeric request field and caps it.
+   * 
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param key name of field.
+   * @param limit value used when field is absent and upper bound otherwise.
+   * @return int field value, or -1 if the field is malformed.
+   */
+  private int extractLimit(HttpServletRequest request, String key, int limit) {
+    
+    String value = request.getParameter(key);
+    
+    if (value == null || 
+        value.isBlank()) {
+      
+      return limit;
+    }
+    
+    try {
+      
+      return Math.min(Math.max(0, Integer.parseInt(value.trim())), limit);
+      
+    } catch (NumberFormatException e) {
+      
+      _logger.severe("request malformed field '",
+          key,
+          "' from client ",
+          request.getRemoteAddr());
+    }
+    
+    return -1;
+  }
+
+  /**
+   * Method extracts and decrypts one request field.
+   * 
+   * @param key name of field.
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   * @param context field value is set in this context.
+   * @return boolean true indicating success, false otherwise.
+   */
+  private boolean extractField(String key, HttpServletRequest request, ActiveMQServerRequest context) {
+    
+    String value = request.getParameter(key);
+    
+    if (value == null || 
+        value.isBlank()) {
+
+      _logger.severe("request missing field '",
+          key,
+          "' from client ",
+          request.getRemoteAddr());
+      
+      return false;
+    }
+    
+    try {
+      
+      String text = _security.decryptData(value);
+      
+      if (text == null || 
+          text.isBlank()) {
+
+        _logger.severe("request mangled value for key '",
+            key,
+            "' from client ",
+            request.getRemoteAddr());
+
+        return false;
+      }
+      
+      context.put(key, text);
+      
+      return true;
+    
+    } catch (Exception e) {
+    
+      _logger.exception(e);
+    }
+        
+    return false;
+  }
+  
+  /**
+   * Method precomputes the full Uri paths of the endpoints, so requests are
+   * routed without building strings.
+   * 
+   * @param context contains application context path.
+   */
+  private void setEndpointPaths(String context) {
+    
+    _pathLogDelete = context + _ENDPOINT_LOG_DELETE;
+    
+    _pathLogGet = context + _ENDPOINT_LOG_GET;
+    
+    _pathLogMetrics = context + _ENDPOINT_LOG_METRICS;
+    
+    _pathLogSubscribe = context + _ENDPOINT_LOG_SUBSCRIBE;
+    
+    _pathLogPost = context + _ENDPOINT_LOG_POST;
+    
+    _pathLogUpload = context + _ENDPOINT_LOG_UPLOAD;
+    
+    _pathLogPut = context + _ENDPOINT_LOG_PUT;
+  }
+
   /**
    * Method returns boolean indicating whether Uri is the delete endpoint.
    * 
-   * @param context contains request context.
-   * @param uri     contains Uri path.
+   * @param uri contains Uri path.
    * @return boolean indicating whether Uri is the log delete endpoint.
    **/
   @SuppressWarnings("unused")
-  private boolean isEndpointLogDelete(String context, String uri) {
-    return (context + _ENDPOINT_LOG_DELETE).compareToIgnoreCase(uri) == 0;
+  private boolean isEndpointLogDelete(String uri) {
+    return _pathLogDelete.equalsIgnoreCase(uri);
   }
 
   /**
    * Method returns boolean indicating whether Uri is the get endpoint.
    * 
-   * @param context contains request context.
    * @param uri contains Uri path.
    * @return boolean indicating whether Uri is the log get endpoint.
    **/
-  @SuppressWarnings("unused")
-  private boolean isEndpointLogGet(String context, String uri) {
-    return (context + _ENDPOINT_LOG_GET).compareToIgnoreCase(uri) == 0;
+  private boolean isEndpointLogGet(String uri) {
+    return _pathLogGet.equalsIgnoreCase(uri);
+  }
+
+  /**
+   * Method returns boolean indicating whether Uri is the metrics endpoint.
+   * 
+   * @param uri contains Uri path.
+   * @return boolean indicating whether Uri is the log metrics endpoint.
+   **/
+  private boolean isEndpointLogMetrics(String uri) {
+    return _pathLogMetrics.equalsIgnoreCase(uri);
+  }
+
+  /**
+   * Method returns boolean indicating whether a client may read the metrics.
+   * Loopback clients always may, other clients only if their address is
+   * listed in parameter 'metrics-addresses'.
+   * 
+   * @param address client address.
+   * @param addresses allowed addresses, comma separated, or null.
+   * @return boolean indicating whether the client may read the metrics.
+   **/
+  static boolean isMetricsClient(String address, String addresses) {
+
+    if (address == null) {
+
+      return false;
+    }
+
+    try {
+
+      if (InetAddress.getByName(address).isLoopbackAddress()) {
+
+        return true;
+      }
+
+    } catch (UnknownHostException e) {
+
+      return false;
+    }
+
+    if (addresses == null) {
+
+      return false;
+    }
+
+    for (String allowed : ActiveMQServerConfig.split(addresses)) {
+
+      if (allowed.equalsIgnoreCase(address)) {
+
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method returns boolean indicating whether Uri is the subscribe endpoint.
+   * 
+   * @param uri contains Uri path.
+   * @return boolean indicating whether Uri is the log subscribe endpoint.
+   **/
+  private boolean isEndpointLogSubscribe(String uri) {
+    return _pathLogSubscribe.equalsIgnoreCase(uri);
   }
 
   /**
    * Method returns boolean indicating whether Uri is the post endpoint.
    * 
-   * @param context contains request context.
    * @param uri contains Uri path.
    * @return boolean indicating whether Uri is the log post endpoint.
    **/
-  private boolean isEndpointLogPost(String context, String uri) {
-    return (context + _ENDPOINT_LOG_POST).compareToIgnoreCase(uri) == 0;
+  private boolean isEndpointLogPost(String uri) {
+    return _pathLogPost.equalsIgnoreCase(uri);
+  }
+
+  /**
+   * Method returns boolean indicating whether Uri is the upload endpoint.
+   * 
+   * @param uri contains Uri path.
+   * @return boolean indicating whether Uri is the log upload endpoint.
+   **/
+  private boolean isEndpointLogUpload(String uri) {
+    return _pathLogUpload.equalsIgnoreCase(uri);
   }
 
   /**
    * Method returns boolean indicating whether Uri is the put endpoint.
    * 
-   * @param context contains request context.
    * @param uri contains Uri path.
    * @return boolean indicating whether Uri is the log put endpoint.
    **/
   @SuppressWarnings("unused")
-  private boolean isEndpointLogPut(String context, String uri) {
-    return (context + _ENDPOINT_LOG_PUT).compareToIgnoreCase(uri) == 0;
+  private boolean isEndpointLogPut(String uri) {
+    return _pathLogPut.equalsIgnoreCase(uri);
   }
 
   /**
@@ -446,6 +1595,59 @@ public class ActiveMQServer extends HttpServlet {
    */
   final public static String _ENDPOINT_LOG_PUT = "/server/logger/log/put";
 
+  /**
+   * Parameter constant for the {@link javax.servlet.http.HttpServlet} subscribe log Uri
+   * '{@value _ENDPOINT_LOG_SUBSCRIBE}'.
+   */
+  final public static String _ENDPOINT_LOG_SUBSCRIBE = "/server/logger/log/subscribe";
+
+  /**
+   * Parameter constant for the {@link javax.servlet.http.HttpServlet} metrics log Uri
+   * '{@value _ENDPOINT_LOG_METRICS}'.
+   */
+  final public static String _ENDPOINT_LOG_METRICS = "/server/logger/log/metrics";
+
+  /**
+   * Parameter constant for the {@link javax.servlet.http.HttpServlet} upload log Uri
+   * '{@value _ENDPOINT_LOG_UPLOAD}'.
+   */
+  final public static String _ENDPOINT_LOG_UPLOAD = "/server/logger/log/upload";
+
+  /**
+   * HTTP content type '{@value _HTTP_CONTENT_TYPE_TEXT}'.
+   */
+  final public static String _HTTP_CONTENT_TYPE_TEXT = "text/plain;charset=UTF-8";
+
+  /**
+   * HTTP content type '{@value _HTTP_CONTENT_TYPE_EVENT_STREAM}'.
+   */
+  final public static String _HTTP_CONTENT_TYPE_EVENT_STREAM = "text/event-stream;charset=UTF-8";
+
+  /**
+   * HTTP content type '{@value _HTTP_CONTENT_TYPE_FORM}' of form encoded requests.
+   */
+  final public static String _HTTP_CONTENT_TYPE_FORM = "application/x-www-form-urlencoded";
+
+  /**
+   * HTTP status '{@value _HTTP_TOO_MANY_REQUESTS}' for requests over their rate limit.
+   */
+  final public static int _HTTP_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * HTTP header '{@value _HTTP_HEADER_ACCEPT}'.
+   */
+  final public static String _HTTP_HEADER_ACCEPT = "Accept";
+
+  /**
+   * HTTP header '{@value _HTTP_HEADER_SERVER_TIMING}' carrying the stage breakdown.
+   */
+  final public static String _HTTP_HEADER_SERVER_TIMING = "Server-Timing";
+
+  /**
+   * HTTP header '{@value _HTTP_HEADER_RETRY_AFTER}'.
+   */
+  final public static String _HTTP_HEADER_RETRY_AFTER = "Retry-After";
+
   /**
    * HTTP message key '{@value _HTTP_KEY_HEADER}'.
    */
@@ -479,6 +1681,21 @@ public class ActiveMQServer extends HttpServlet {
    */
   final public static String _HTTP_KEY_MESSAGE = "message";
   
+  /**
+   * HTTP message key '{@value _HTTP_KEY_SEQUENCE}'.
+   */
+  final public static String _HTTP_KEY_SEQUENCE = "seq";
+
+  /**
+   * Parameter array containing optional client request fields.
+   */
+  final public static String[] _HTTP_REQUEST_OPTIONAL_KEYS = new String[] { _HTTP_KEY_SEQUENCE };
+
+  /**
+   * Parameter array containing no fields.
+   */
+  final public static String[] _HTTP_NO_KEYS = new String[0];
+  
   /**
    * Parameter array containing client request fields.
    */
@@ -489,6 +1706,70 @@ public class ActiveMQServer extends HttpServlet {
       _HTTP_KEY_MESSAGE,
       _HTTP_KEY_PID };
 
+  /**
+   * Parameter array containing client upload request fields, sent as
+   * headers.
+   */
+  final public static String[] _HTTP_UPLOAD_KEYS = new String[] { _HTTP_KEY_HEADER, 
+      _HTTP_KEY_USER, 
+      _HTTP_KEY_PASSWORD,
+      _HTTP_KEY_CHANNEL,
+      _HTTP_KEY_PID };
+
+  /**
+   * Parameter array containing client consume request fields.
+   */
+  final public static String[] _HTTP_CONSUME_KEYS = new String[] { _HTTP_KEY_USER, 
+      _HTTP_KEY_PASSWORD,
+      _HTTP_KEY_CHANNEL };
+
+  /**
+   * Response code '{@value _CODE_OK}' of a successful request.
+   */
+  final public static String _CODE_OK = "0";
+
+  /**
+   * Response code '{@value _CODE_PUBLISH_FAILED}' of a failed publish.
+   */
+  final public static String _CODE_PUBLISH_FAILED = "-11";
+
+  /**
+   * Response code '{@value _CODE_CONSUME_FAILED}' of a failed consume.
+   */
+  final public static String _CODE_CONSUME_FAILED = "-12";
+
+  /**
+   * Response code '{@value _CODE_UPLOAD_FAILED}' of a failed upload.
+   */
+  final public static String _CODE_UPLOAD_FAILED = "-13";
+
+  /**
+   * Response code '{@value _CODE_DEADLINE_EXCEEDED}' of a publish given up at
+   * the request deadline.
+   */
+  final public static String _CODE_DEADLINE_EXCEEDED = "-14";
+
+  /**
+   * Response code '{@value _CODE_LANE_SATURATED}' of a publish rejected by its
+   * saturated lane.
+   */
+  final public static String _CODE_LANE_SATURATED = "-15";
+
+  /**
+   * HTTP message key '{@value _HTTP_KEY_MAX}'.
+   */
+  final public static String _HTTP_KEY_MAX = "max";
+
+  /**
+   * HTTP message key '{@value _HTTP_KEY_WAIT}'.
+   */
+  final public static String _HTTP_KEY_WAIT = "wait";
+
+  /**
+   * HTTP message key '{@value _HTTP_KEY_COUNT}'.
+   */
+  final public static String _HTTP_KEY_COUNT = "count";
+
   /**
    * HTTP message key '{@value _HTTP_KEY_ID}'.
    */
@@ -517,7 +1798,61 @@ public class ActiveMQServer extends HttpServlet {
       _HTTP_KEY_CODE,
       _HTTP_KEY_REMOTE,
       _HTTP_KEY_MQID };
+
+  /**
+   * HTTP upload response message keys, '{@value _HTTP_KEY_COUNT}' being the
+   * number of chunks published.
+   */
+  final public static String[] _HTTP_UPLOAD_RESPONSE_KEYS = new String[] { _HTTP_KEY_HEADER, 
+      _HTTP_KEY_ID, 
+      _HTTP_KEY_CODE,
+      _HTTP_KEY_REMOTE,
+      _HTTP_KEY_MQID,
+      _HTTP_KEY_COUNT };
+
+  /**
+   * HTTP consume response message keys, followed by repeated '{@value _HTTP_KEY_MESSAGE}' keys.
+   */
+  final public static String[] _HTTP_CONSUME_RESPONSE_KEYS = new String[] { _HTTP_KEY_ID, 
+      _HTTP_KEY_CODE,
+      _HTTP_KEY_REMOTE,
+      _HTTP_KEY_COUNT };
   
+  /**
+   * Uri path of Log Delete endpoint.
+   */
+  private String _pathLogDelete = _ENDPOINT_LOG_DELETE;
+
+  /**
+   * Uri path of Log Get endpoint.
+   */
+  private String _pathLogGet = _ENDPOINT_LOG_GET;
+
+  /**
+   * Uri path of Log Metrics endpoint.
+   */
+  private String _pathLogMetrics = _ENDPOINT_LOG_METRICS;
+
+  /**
+   * Uri path of Log Subscribe endpoint.
+   */
+  private String _pathLogSubscribe = _ENDPOINT_LOG_SUBSCRIBE;
+
+  /**
+   * Uri path of Log Post endpoint.
+   */
+  private String _pathLogPost = _ENDPOINT_LOG_POST;
+
+  /**
+   * Uri path of Log Upload endpoint.
+   */
+  private String _pathLogUpload = _ENDPOINT_LOG_UPLOAD;
+
+  /**
+   * Uri path of Log Put endpoint.
+   */
+  private String _pathLogPut = _ENDPOINT_LOG_PUT;
+
   /**
    * boolean indicating whether this {@link ActiveMQServer} object is in a valid
    * state.
@@ -525,9 +1860,29 @@ public class ActiveMQServer extends HttpServlet {
   private boolean _isValid = false;
 
   /**
-   * Variable counter to provide unique ID's for each operation.
+   * Executor running endpoints on virtual threads, null in container mode.
+   */
+  private ExecutorService _executor = null;
+
+  /**
+   * Per-client and per-user admission control.
+   */
+  private ActiveMQServerAdmission _admission = null;
+
+  /**
+   * Priority lanes isolating the publish work of channel classes.
+   */
+  private ActiveMQServerLanes _lanes = null;
+
+  /**
+   * Generator of cluster-unique ID's for each operation.
    */
-  private AtomicLong _id = new AtomicLong();
+  private ActiveMQServerId _ids = null;
+
+  /**
+   * Record of recent operations indexed by client idempotency key.
+   */
+  private ActiveMQServerDedup _dedup = null;
 
   /**
    * Logger object for logging operations.
@@ -550,7 +1905,42 @@ public class ActiveMQServer extends HttpServlet {
   private ActiveMQServerConnection _connection = new ActiveMQServerConnection(_config);
   
   /**
-   * Regexp to validate channel name. 
+   * Validation stage checking request structure.
+   */
+  final private static ActiveMQServerStage _stageStructure = new ActiveMQServerStage("structure");
+
+  /**
+   * Validation stage decrypting and admitting the user.
+   */
+  final private static ActiveMQServerStage _stageUser = new ActiveMQServerStage("user");
+
+  /**
+   * Validation stage checking credentials.
+   */
+  final private static ActiveMQServerStage _stageCredentials = new ActiveMQServerStage("credentials");
+
+  /**
+   * Validation stage checking channel.
+   */
+  final private static ActiveMQServerStage _stageChannel = new ActiveMQServerStage("channel");
+
+  /**
+   * Validation stage decrypting remaining metadata fields.
+   */
+  final private static ActiveMQServerStage _stageMetadata = new ActiveMQServerStage("metadata");
+
+  /**
+   * Validation stage decrypting the message body.
+   */
+  final private static ActiveMQServerStage _stageMessage = new ActiveMQServerStage("message");
+
+  /**
+   * Stage publishing a validated request.
+   */
+  final private static ActiveMQServerStage _stagePublish = new ActiveMQServerStage("publish");
+
+  /**
+   * Requests rejected at their deadline, published as 'request.expired'.
    */
-  private static final String _pattern = "^[/a-zA-Z0-9\\.]+$";
+  final private static LongAdder _expired = ActiveMQServerMetrics.counter("request.expired");
 }
@@ -0,0 +1,515 @@
+package cc.tools.activemq.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class implements immutable per-user channel access control lists,
+ * compiled into one character trie per user. The text holds one user per
+ * line in the form <code>user:rule,rule,...</code>. Blank lines and lines
+ * starting with '#' are ignored.
+ * <p>
+ * Channel names are segments separated by '/' or '.'. A rule matches a
+ * channel name literally, except that a segment '*' matches any one segment
+ * and a last segment '&gt;' matches one or more remaining segments, as in
+ * ActiveMQ destination wildcards. A rule for user '*' applies to every user,
+ * so <code>*:&gt;</code> allows all channels.
+ * <p>
+ * A check walks the channel once for format and permission and allocates
+ * nothing, so it replaces the per-request regular expression. A reload
+ * compiles a new object and replaces the old one as a whole.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerAcl {
+
+  /**
+   * Constructor.
+   */
+  public ActiveMQServerAcl() {
+  }
+
+  /**
+   * Method loads and compiles rules from text in list format.
+   *
+   * @param text list text.
+   * @return boolean true if at least one rule was loaded and no line was
+   *         malformed, false otherwise.
+   */
+  public boolean load(String text) {
+
+    Map<String, List<String>> rules = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+    List<String> common = new ArrayList<String>();
+
+    for (String line : text.split("\n")) {
+
+      String data = line.trim();
+
+      if (data.isEmpty() ||
+          data.startsWith("#")) {
+
+        continue;
+      }
+
+      int colon = data.indexOf(':');
+
+      if (colon <= 0) {
+
+        _logger.severe("malformed acl line");
+
+        return false;
+      }
+
+      String user = data.substring(0, colon).trim();
+
+      List<String> list = (user.equals(_ANY_USER) ?
+          common :
+          rules.computeIfAbsent(user, k -> new ArrayList<String>()));
+
+      for (String rule : data.substring(colon + 1).split(ActiveMQServerDestination._SEPARATOR)) {
+
+        String name = rule.trim();
+
+        if (!isRule(name)) {
+
+          _logger.severe("malformed acl rule '",
+              name,
+              "' for user ",
+              user);
+
+          return false;
+        }
+
+        list.add(name);
+      }
+    }
+
+    if (common.isEmpty() &&
+        rules.isEmpty()) {
+
+      return false;
+    }
+
+    _default = compile(common, null);
+
+    for (Map.Entry<String, List<String>> entry : rules.entrySet()) {
+
+      _users.put(entry.getKey(), compile(common, entry.getValue()));
+    }
+
+    return true;
+  }
+
+  /**
+   * Method checks the format of a channel, which may list up to max names
+   * separated by commas, and whether user may use every name listed.
+   *
+   * @param user user ID.
+   * @param channel channel name or comma separated channel names.
+   * @param max max number of names listed.
+   * @return int {@link #_ALLOWED}, {@link #_MALFORMED} or {@link #_DENIED}.
+   */
+  public int check(String user, String channel, int max) {
+
+    Node root = _users.get(user);
+
+    if (root == null) {
+
+      root = _default;
+    }
+
+    int length = channel.length();
+
+    int start = 0;
+
+    int count = 0;
+
+    int result = _ALLOWED;
+
+    for (int i = 0; i <= length; i++) {
+
+      char c = (i < length ? channel.charAt(i) : ',');
+
+      if (c == ',') {
+
+        if (i == start ||
+            ++count > max) {
+
+          return _MALFORMED;
+        }
+
+        if (result == _ALLOWED &&
+            !match(root, channel, start, i)) {
+
+          result = _DENIED;
+        }
+
+        start = i + 1;
+
+      } else if (!isChannelChar(c)) {
+
+        return _MALFORMED;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Method to get number of users with their own rules.
+   * @return int number of users.
+   */
+  public int size() {
+    return _users.size();
+  }
+
+  /**
+   * Method matches one channel name from the start of a segment.
+   *
+   * @param node trie node at the start of a segment.
+   * @param channel channel text.
+   * @param from index of the segment start.
+   * @param to index past the name end.
+   * @return boolean true if a rule matches.
+   */
+  private static boolean match(Node node, String channel, int from, int to) {
+
+    if (from == to) {
+
+      return node._isTerminal;
+    }
+
+    if (node._isRest) {
+
+      return true;
+    }
+
+    if (node._any != null) {
+
+      int end = from;
+
+      while (end < to &&
+          !isSeparator(channel.charAt(end))) {
+
+        end++;
+      }
+
+      if (end > from &&
+          matchAfter(node._any, channel, end, to)) {
+
+        return true;
+      }
+    }
+
+    Node current = node;
+
+    for (int i = from; i < to; i++) {
+
+      char c = channel.charAt(i);
+
+      current = current.child(c);
+
+      if (current == null) {
+
+        return false;
+      }
+
+      if (isSeparator(c)) {
+
+        return match(current, channel, i + 1, to);
+      }
+    }
+
+    return current._isTerminal;
+  }
+
+  /**
+   * Method continues a match after a segment consumed by a '*' rule segment.
+   *
+   * @param node trie node after the wildcard.
+   * @param channel channel text.
+   * @param from index after the segment.
+   * @param to index past the name end.
+   * @return boolean true if a rule matches.
+   */
+  private static boolean matchAfter(Node node, String channel, int from, int to) {
+
+    if (from == to) {
+
+      return node._isTerminal;
+    }
+
+    Node next = node.child(channel.charAt(from));
+
+    return next != null &&
+        match(next, channel, from + 1, to);
+  }
+
+  /**
+   * Method compiles rules into a trie.
+   *
+   * @param common rules of every user.
+   * @param rules rules of one user, or null.
+   * @return Node trie root.
+   */
+  private static Node compile(List<String> common, List<String> rules) {
+
+    Node root = new Node();
+
+    for (String rule : common) {
+
+      insert(root, rule);
+    }
+
+    if (rules != null) {
+
+      for (String rule : rules) {
+
+        insert(root, rule);
+      }
+    }
+
+    return root;
+  }
+
+  /**
+   * Method adds one rule to a trie.
+   *
+   * @param root trie root.
+   * @param rule rule text.
+   */
+  private static void insert(Node root, String rule) {
+
+    Node node = root;
+
+    int i = 0;
+
+    while (i < rule.length()) {
+
+      char c = rule.charAt(i);
+
+      if (c == _REST) {
+
+        node._isRest = true;
+
+        return;
+      }
+
+      if (c == _ANY) {
+
+        if (node._any == null) {
+
+          node._any = new Node();
+        }
+
+        node = node._any;
+
+      } else {
+
+        node = node.add(c);
+      }
+
+      i++;
+    }
+
+    node._isTerminal = true;
+  }
+
+  /**
+   * Method checks the format of a rule. Wildcards must fill a whole segment
+   * and '&gt;' must be the last one.
+   *
+   * @param rule rule text.
+   * @return boolean true if valid.
+   */
+  private static boolean isRule(String rule) {
+
+    if (rule.isEmpty()) {
+
+      return false;
+    }
+
+    for (int i = 0; i < rule.length(); i++) {
+
+      char c = rule.charAt(i);
+
+      if (c == _ANY ||
+          c == _REST) {
+
+        boolean whole = (i == 0 || isSeparator(rule.charAt(i - 1))) &&
+            (i + 1 == rule.length() || (c == _ANY && isSeparator(rule.charAt(i + 1))));
+
+        if (!whole) {
+
+          return false;
+        }
+
+      } else if (!isChannelChar(c)) {
+
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Method returns whether c may appear in a channel name.
+   * @param c character.
+   * @return boolean true if valid.
+   */
+  private static boolean isChannelChar(char c) {
+
+    return (c >= 'a' && c <= 'z') ||
+        (c >= 'A' && c <= 'Z') ||
+        (c >= '0' && c <= '9') ||
+        isSeparator(c);
+  }
+
+  /**
+   * Method returns whether c separates channel name segments.
+   * @param c character.
+   * @return boolean true if separator.
+   */
+  private static boolean isSeparator(char c) {
+
+    return c == '/' ||
+        c == '.';
+  }
+
+  /**
+   * This class holds one trie node. Children are kept in two small parallel
+   * arrays, which are scanned linearly since channel names branch little.
+   */
+  private static class Node {
+
+    /**
+     * Method returns the child for c.
+     * @param c character.
+     * @return Node child, or null.
+     */
+    private Node child(char c) {
+
+      for (int i = 0; i < _keys.length; i++) {
+
+        if (_keys[i] == c) {
+
+          return _nodes[i];
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Method returns the child for c, adding it if missing.
+     * @param c character.
+     * @return Node child.
+     */
+    private Node add(char c) {
+
+      Node node = child(c);
+
+      if (node != null) {
+
+        return node;
+      }
+
+      int size = _keys.length;
+
+      char[] keys = new char[size + 1];
+
+      Node[] nodes = new Node[size + 1];
+
+      System.arraycopy(_keys, 0, keys, 0, size);
+
+      System.arraycopy(_nodes, 0, nodes, 0, size);
+
+      keys[size] = c;
+
+      nodes[size] = new Node();
+
+      _keys = keys;
+
+      _nodes = nodes;
+
+      return nodes[size];
+    }
+
+    /**
+     * Child characters.
+     */
+    private char[] _keys = new char[0];
+
+    /**
+     * Child nodes, parallel to {@link #_keys}.
+     */
+    private Node[] _nodes = new Node[0];
+
+    /**
+     * Child matching any one segment.
+     */
+    private Node _any = null;
+
+    /**
+     * boolean indicating whether a rule ends here.
+     */
+    private boolean _isTerminal = false;
+
+    /**
+     * boolean indicating whether a rule matches any remaining segments here.
+     */
+    private boolean _isRest = false;
+  }
+
+  /**
+   * Check result '{@value _ALLOWED}', channel is valid and allowed.
+   */
+  final public static int _ALLOWED = 0;
+
+  /**
+   * Check result '{@value _MALFORMED}', channel format is invalid.
+   */
+  final public static int _MALFORMED = 1;
+
+  /**
+   * Check result '{@value _DENIED}', channel is not allowed for the user.
+   */
+  final public static int _DENIED = 2;
+
+  /**
+   * User '{@value _ANY_USER}' whose rules apply to every user.
+   */
+  final public static String _ANY_USER = "*";
+
+  /**
+   * Rule segment matching any one segment.
+   */
+  final private static char _ANY = '*';
+
+  /**
+   * Last rule segment matching one or more segments.
+   */
+  final private static char _REST = '>';
+
+  /**
+   * Trie of users without their own rules.
+   */
+  private Node _default = new Node();
+
+  /**
+   * Tries indexed by case insensitive user name, so lookups do not allocate
+   * a lower case copy. Only written while loading.
+   */
+  final private Map<String, Node> _users = new TreeMap<String, Node>(String.CASE_INSENSITIVE_ORDER);
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerAcl.class.getName());
+}
@@ -1,19 +1,29 @@
 package cc.tools.activemq.server;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageProducer;
+import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
+import javax.jms.Topic;
 import javax.naming.Context;
 
 /**
  * This class implements a wrapper for the Active MQ connection objects.
+ * Its lifecycle is explicit: sends hold a reference between
+ * {@link #acquire()} and {@link #release()}, and the owning broker
+ * {@link #retire() retires} it when replacing or discarding it, so the
+ * connection closes as soon as the last send in flight has finished.
  * 
  * @author cc
  * @version %I%, %G%
@@ -24,22 +34,40 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
   /**
    * Constructor.
    * @param context Initial Naming context.
-   * @param factory MQ Factory name.
-   * @param queue MQ Queue name.
+   * @param factory MQ Connection Factory.
+   * @param queue MQ Queue name, or comma separated names.
+   * @param shard shard index, or -1 if the queue is not sharded. Shard i of
+   *        a queue is the destination named by its physical name plus '.i'.
+   * @param listener run when the connection reports a failure, or null.
    */
-  public ActiveMQServerAdaptor(Context context, String factory, String queue) {
+  public ActiveMQServerAdaptor(Context context, ConnectionFactory factory, String queue, int shard, Runnable listener) {
    
+    _channel = queue;
+
+    _shard = shard;
+
+    _listener = listener;
+
     try {
 
-      _factory = (ConnectionFactory) context.lookup(factory);
+      _factory = factory;
 
       _connection = _factory.createConnection();
 
+      _open.increment();
+
       _connection.setExceptionListener(this);
 
       _session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 
-      _producer = _session.createProducer((Destination) context.lookup(queue));
+      Destination destination = ActiveMQServerDestination.lookup(context, queue);
+
+      if (shard >= 0) {
+
+        destination = shard(destination, shard);
+      }
+
+      _producer = _session.createProducer(destination);
 
       _isValid.set(true);
 
@@ -47,40 +75,198 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
 
       _logger.exception(e);
 
+      _refs.set(0);
+
       shutdown();
     }
     
   }
   
   /**
-   * Method to finalize state.
+   * Method returns the shard destination of a queue or topic.
+   * 
+   * @param destination sharded destination.
+   * @param shard shard index.
+   * @return {@link Destination} shard destination.
+   * @throws JMSException .
    */
-  @Override
-  @SuppressWarnings("removal")
-  public void finalize() {
+  private Destination shard(Destination destination, int shard) throws JMSException {
 
-    shutdown();    
-  
+    if (destination instanceof Queue) {
+
+      return _session.createQueue(((Queue) destination).getQueueName() + "." + shard);
+    }
+
+    if (destination instanceof Topic) {
+
+      return _session.createTopic(((Topic) destination).getTopicName() + "." + shard);
+    }
+
+    throw new JMSException("destination cannot be sharded");
   }
   
   /** 
-   * Method to publish message to message to MQ Broker.
+   * Method to publish message to message to MQ Broker. The client call ID and
+   * request metadata are stamped on the message, see {@link #stamp}. If a group
+   * is given it is set as '{@value _MQ_PROPERTY_GROUP}', so the broker hands
+   * all messages of the group to one consumer in order. Messages of a
+   * request with a deadline expire after it, see {@link #getTimeToLive}.
    * 
    * @param id client call ID.
    * @param message text to be sent to MQ.
-   * @param code StringBuffer to return result status code.
-   * @param mqid StringBuffer to return MQ transaction id (if any).
+   * @param group message group, or null.
+   * @param result result status code and MQ transaction id (if any).
    * @return boolean true if success, false otherwise.
    */
-  public boolean publish(String id, String message, StringBuilder code, StringBuilder mqid) {
+  public boolean publish(String id, String message, String group, ActiveMQServerResult result) {
    
+    ActiveMQServerEvents.Send event = new ActiveMQServerEvents.Send();
+
+    event.begin();
+
+    boolean sent = false;
+
     try {
       
       TextMessage text = _session.createTextMessage(message);
       
-      _producer.send(text);
+      stamp(text, id, result);
+
+      if (group != null) {
+
+        text.setStringProperty(_MQ_PROPERTY_GROUP, group);
+      }
+      
+      _producer.send(text, 
+          _producer.getDeliveryMode(), 
+          _producer.getPriority(), 
+          getTimeToLive(result));
+     
+      sent = true;
+      
+    } catch (Exception e) {
+      
+      _logger.exception(e);
+
+      _isValid.set(false);
+    }
+    
+    commit(event, message.length(), sent);
+
+    return sent;  
+  }
+  
+  /** 
+   * Method to publish one chunk of a large payload to MQ Broker as a bytes
+   * message. All chunks of a payload form the group of the client call ID:
+   * each carries the properties set by {@link #stamp}, '{@value _MQ_PROPERTY_GROUP}',
+   * its position as '{@value _MQ_PROPERTY_CHUNK_SEQ}' (from 0) and
+   * '{@value _MQ_PROPERTY_GROUP_SEQ}' (from 1), the number of chunks as
+   * '{@value _MQ_PROPERTY_CHUNK_TOTAL}' (-1 while unknown) and
+   * '{@value _MQ_PROPERTY_CHUNK_LAST}'. The last chunk has group sequence -1,
+   * which closes the group on the broker once delivered.
+   * <p>
+   * A chunk is resent after a failed send, which may still have reached the
+   * broker, so consumers must drop a chunk whose
+   * '{@value _MQ_PROPERTY_CHUNK_SEQ}' they already received, as
+   * {@link ActiveMQServerAssembler} does.
+   * 
+   * @param id client call ID.
+   * @param data chunk buffer.
+   * @param length number of bytes used in buffer.
+   * @param sequence chunk position, from 0.
+   * @param total number of chunks, or -1 if unknown.
+   * @param last boolean true for the last chunk.
+   * @param result result status code and MQ transaction id (if any).
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean publishChunk(String id, 
+      byte[] data, 
+      int length, 
+      int sequence, 
+      int total, 
+      boolean last, 
+      ActiveMQServerResult result) {
+    
+    return sendChunk(id, data, length, sequence, total, last, false, result);
+  }
+
+  /** 
+   * Method to publish the abort marker of a payload whose publish failed
+   * after its first chunk. The marker is an empty chunk at the position of
+   * the first chunk not sent, marked '{@value _MQ_PROPERTY_CHUNK_ABORT}' and
+   * last, so it closes the group on the broker and consumers discard the
+   * chunks received so far.
+   * 
+   * @param id client call ID.
+   * @param sequence position of the first chunk not sent.
+   * @param result result status code and MQ transaction id (if any).
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean abortChunks(String id, 
+      int sequence, 
+      ActiveMQServerResult result) {
+    
+    return sendChunk(id, new byte[0], 0, sequence, -1, true, true, result);
+  }
+
+  /** 
+   * Method to send one chunk message, see {@link #publishChunk}.
+   * 
+   * @param id client call ID.
+   * @param data chunk buffer.
+   * @param length number of bytes used in buffer.
+   * @param sequence chunk position, from 0.
+   * @param total number of chunks, or -1 if unknown.
+   * @param last boolean true for the last chunk.
+   * @param abort boolean true for an abort marker.
+   * @param result result status code and MQ transaction id (if any).
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean sendChunk(String id, 
+      byte[] data, 
+      int length, 
+      int sequence, 
+      int total, 
+      boolean last, 
+      boolean abort, 
+      ActiveMQServerResult result) {
+   
+    ActiveMQServerEvents.Send event = new ActiveMQServerEvents.Send();
+
+    event.begin();
+
+    boolean sent = false;
+
+    try {
+      
+      BytesMessage bytes = _session.createBytesMessage();
+
+      bytes.writeBytes(data, 0, length);
+      
+      stamp(bytes, id, result);
+
+      bytes.setStringProperty(_MQ_PROPERTY_GROUP, id);
+
+      bytes.setIntProperty(_MQ_PROPERTY_GROUP_SEQ, (last ? -1 : sequence + 1));
+
+      bytes.setIntProperty(_MQ_PROPERTY_CHUNK_SEQ, sequence);
+
+      bytes.setIntProperty(_MQ_PROPERTY_CHUNK_TOTAL, total);
+
+      bytes.setBooleanProperty(_MQ_PROPERTY_CHUNK_LAST, last);
+
+      if (abort) {
+
+        bytes.setBooleanProperty(_MQ_PROPERTY_CHUNK_ABORT, true);
+      }
+      
+      _producer.send(bytes, 
+          _producer.getDeliveryMode(), 
+          _producer.getPriority(), 
+          getTimeToLive(result));
      
-      return true;
+      sent = true;
       
     } catch (Exception e) {
       
@@ -89,7 +275,90 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
       _isValid.set(false);
     }
     
-    return false;  
+    commit(event, length, sent);
+
+    return sent;  
+  }
+
+  /**
+   * Method sets the routing properties of a message, so consumers can pick
+   * messages with broker side selectors such as
+   * <code>ccPid = '42' AND ccIngestTime &gt; 1700000000000</code>: the
+   * operation ID as '{@value _MQ_PROPERTY_ID}', and if known the client
+   * header as '{@value _MQ_PROPERTY_HEADER}', process id as
+   * '{@value _MQ_PROPERTY_PID}', IP address as '{@value _MQ_PROPERTY_CLIENT_IP}'
+   * and the time the request was accepted as long property
+   * '{@value _MQ_PROPERTY_INGEST_TIME}'.
+   * 
+   * @param message message to be sent.
+   * @param id client call ID.
+   * @param result request metadata.
+   * @throws JMSException .
+   */
+  private static void stamp(Message message, String id, ActiveMQServerResult result) throws JMSException {
+
+    message.setStringProperty(_MQ_PROPERTY_ID, id);
+
+    if (result.getHeader() != null) {
+
+      message.setStringProperty(_MQ_PROPERTY_HEADER, result.getHeader());
+    }
+
+    if (result.getPid() != null) {
+
+      message.setStringProperty(_MQ_PROPERTY_PID, result.getPid());
+    }
+
+    if (result.getAddress() != null) {
+
+      message.setStringProperty(_MQ_PROPERTY_CLIENT_IP, result.getAddress());
+    }
+
+    if (result.getIngest() != 0) {
+
+      message.setLongProperty(_MQ_PROPERTY_INGEST_TIME, result.getIngest());
+    }
+  }
+
+  /**
+   * Method returns the time to live of a message, which expires with the
+   * request deadline plus grace time if the request has a deadline.
+   * 
+   * @param result request deadline.
+   * @return long time to live (ms), 0 for unlimited.
+   * @throws JMSException .
+   */
+  private long getTimeToLive(ActiveMQServerResult result) throws JMSException {
+
+    if (result.getExpiration() == 0) {
+
+      return _producer.getTimeToLive();
+    }
+
+    return Math.max(1, result.getExpiration() - System.currentTimeMillis());
+  }
+
+  /**
+   * Method completes a send flight recorder event.
+   * 
+   * @param event started event.
+   * @param size payload size.
+   * @param sent boolean true if the send succeeded.
+   */
+  private void commit(ActiveMQServerEvents.Send event, int size, boolean sent) {
+
+    if (event.shouldCommit()) {
+
+      event.channel = _channel;
+
+      event.shard = _shard;
+
+      event.size = size;
+
+      event.success = sent;
+
+      event.commit();
+    }
   }
   
   /**
@@ -116,6 +385,8 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
       
       if (_connection != null) {
 
+        _open.decrement();
+
         _connection.close();
       
       }
@@ -135,13 +406,85 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
    * @param e exception throw by MQ.
    */
   @Override
-  public synchronized void onException(JMSException e) {
+  public void onException(JMSException e) {
   
     _logger.exception(e);
   
     _isValid.set(false);
+
+    if (_listener != null) {
+
+      _listener.run();
+    }
+  }
+
+  /**
+   * Method takes a reference for one send. Every successful acquire must be
+   * paired with {@link #release()}.
+   * @return boolean true if acquired, false if the adaptor is retired.
+   */
+  public boolean acquire() {
+
+    while (true) {
+
+      int refs = _refs.get();
+
+      if (refs <= 0 ||
+          _isRetired.get()) {
+
+        return false;
+      }
+
+      if (_refs.compareAndSet(refs, refs + 1)) {
+
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Method drops a reference. The last reference closes the adaptor's MQ
+   * resources.
+   */
+  public void release() {
+
+    if (_refs.decrementAndGet() == 0) {
+
+      shutdown();
+    }
+  }
+
+  /**
+   * Method retires the adaptor when its owner replaces or discards it. The
+   * adaptor takes no new sends and is closed as soon as sends in flight have
+   * released it. Retiring twice has no effect.
+   */
+  public void retire() {
+
+    if (_isRetired.compareAndSet(false, true)) {
+
+      _isValid.set(false);
+
+      release();
+    }
   }
   
+  /**
+   * Method to get the channel of the adaptor.
+   * @return String MQ Queue name, or comma separated names.
+   */
+  public String getChannel() {
+    return _channel;
+  }
+
+  /**
+   * Method to get the shard of the adaptor.
+   * @return int shard index, or -1 if the queue is not sharded.
+   */
+  public int getShard() {
+    return _shard;
+  }
+
   /**
    * Method to check whether adaptor object is valid.
    * @return boolean indicating validity.  
@@ -152,6 +495,98 @@ public class ActiveMQServerAdaptor implements ExceptionListener {
   
   }
   
+  /**
+   * Metric '{@value _METRIC_OPEN}' counting open adaptor connections.
+   */
+  final public static String _METRIC_OPEN = "jms.adaptor.open";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_ID}' holding the operation ID.
+   */
+  final public static String _MQ_PROPERTY_ID = "ccOperationId";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_HEADER}' holding the client header.
+   */
+  final public static String _MQ_PROPERTY_HEADER = "ccHeader";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_PID}' holding the client process id.
+   */
+  final public static String _MQ_PROPERTY_PID = "ccPid";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_CLIENT_IP}' holding the client IP address.
+   */
+  final public static String _MQ_PROPERTY_CLIENT_IP = "ccClientIp";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_INGEST_TIME}' holding the time
+   * (ms since epoch) the request was accepted.
+   */
+  final public static String _MQ_PROPERTY_INGEST_TIME = "ccIngestTime";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_GROUP}' holding the message group.
+   */
+  final public static String _MQ_PROPERTY_GROUP = "JMSXGroupID";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_GROUP_SEQ}' holding the position in the group.
+   */
+  final public static String _MQ_PROPERTY_GROUP_SEQ = "JMSXGroupSeq";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_CHUNK_SEQ}' holding the chunk position.
+   */
+  final public static String _MQ_PROPERTY_CHUNK_SEQ = "ccChunkSeq";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_CHUNK_TOTAL}' holding the number of chunks.
+   */
+  final public static String _MQ_PROPERTY_CHUNK_TOTAL = "ccChunkTotal";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_CHUNK_LAST}' marking the last chunk.
+   */
+  final public static String _MQ_PROPERTY_CHUNK_LAST = "ccChunkLast";
+
+  /**
+   * JMS message property '{@value _MQ_PROPERTY_CHUNK_ABORT}' marking the
+   * abort marker of a failed payload.
+   */
+  final public static String _MQ_PROPERTY_CHUNK_ABORT = "ccChunkAbort";
+  
+  /**
+   * MQ Queue name, or comma separated names.
+   */
+  final private String _channel;
+
+  /**
+   * Shard index, or -1 if the queue is not sharded.
+   */
+  final private int _shard;
+
+  /**
+   * References held: one by the owner until retired, one per send in flight.
+   */
+  final private AtomicInteger _refs = new AtomicInteger(1);
+
+  /**
+   * boolean indicating whether the owner has retired the adaptor.
+   */
+  final private AtomicBoolean _isRetired = new AtomicBoolean(false);
+
+  /**
+   * Open adaptor connections, published as '{@value _METRIC_OPEN}'.
+   */
+  final private static LongAdder _open = ActiveMQServerMetrics.counter(_METRIC_OPEN);
+
+  /**
+   * Connection failure listener, or null.
+   */
+  final private Runnable _listener;
+
   /**
    * boolean indicating whether this {@link ActiveMQServerAdaptor} object is in a valid
    * state.
@@ -0,0 +1,179 @@
+package cc.tools.activemq.server;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class implements per-client and per-user admission control with one
+ * {@link ActiveMQServerLimiter} per tier.
+ * <p>
+ * Tiers are configured as <code>name=rate:burst</code> entries separated by
+ * commas. Tier '{@value _TIER_CLIENT}' limits each remote address and tier
+ * '{@value _TIER_USER}' is the default for users. Users are assigned other
+ * tiers as <code>user=tier</code> entries. A missing tier is not limited.
+ * <p>
+ * Users are limited only once their credentials are valid, so failed logins
+ * naming a user never spend that user's tokens. Until then a request is
+ * limited by its remote address alone.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerAdmission {
+
+  /**
+   * Constructor.
+   * @param tiers tier definitions, or null.
+   * @param users user tier assignments, or null.
+   * @param stripes number of buckets per tier.
+   */
+  public ActiveMQServerAdmission(String tiers, String users, int stripes) {
+
+    try {
+
+      for (String tier : ActiveMQServerConfig.split(tiers)) {
+
+        String[] fields = tier.split("[=:]");
+
+        if (fields.length != 3) {
+
+          _logger.severe("malformed rate limit tier ",
+              tier);
+
+          return;
+        }
+
+        _tiers.put(fields[0].trim(),
+            new ActiveMQServerLimiter(Integer.parseInt(fields[1].trim()),
+                Integer.parseInt(fields[2].trim()),
+                stripes));
+      }
+
+      for (String user : ActiveMQServerConfig.split(users)) {
+
+        String[] fields = user.split("=");
+
+        if (fields.length != 2 ||
+            !_tiers.containsKey(fields[1].trim())) {
+
+          _logger.severe("malformed rate limit user ",
+              user);
+
+          return;
+        }
+
+        _users.put(fields[0].trim().toLowerCase(Locale.ROOT), fields[1].trim());
+      }
+
+      _isValid = true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+  }
+
+  /**
+   * Method admits a request from a remote address.
+   *
+   * @param address client remote address.
+   * @return long 0 if admitted, otherwise nanoseconds until retry.
+   */
+  public long admitClient(String address) {
+
+    ActiveMQServerLimiter limiter = _tiers.get(_TIER_CLIENT);
+
+    return (limiter == null ? 0 : limiter.acquire(address));
+  }
+
+  /**
+   * Method admits a request from a user once its credentials are valid.
+   *
+   * @param user user name.
+   * @param authenticate check of the user's credentials.
+   * @return long 0 if admitted, {@link #_UNAUTHENTICATED} if the credentials
+   *         are invalid, otherwise nanoseconds until retry.
+   */
+  public long admitUser(String user, BooleanSupplier authenticate) {
+
+    if (!authenticate.getAsBoolean()) {
+
+      return _UNAUTHENTICATED;
+    }
+
+    return acquireUser(user);
+  }
+
+  /**
+   * Method takes a token of a user.
+   *
+   * @param user user name.
+   * @return long 0 if admitted, otherwise nanoseconds until retry.
+   */
+  private long acquireUser(String user) {
+
+    String key = user.toLowerCase(Locale.ROOT);
+
+    ActiveMQServerLimiter limiter = _tiers.get(_users.getOrDefault(key, _TIER_USER));
+
+    return (limiter == null ? 0 : limiter.acquire(key));
+  }
+
+  /**
+   * Method converts a wait to a Retry-After header value.
+   *
+   * @param wait nanoseconds until retry.
+   * @return String whole seconds, at least 1.
+   */
+  public static String getRetryAfter(long wait) {
+
+    return Long.toString(Math.max(1, (wait + 999999999L) / 1000000000L));
+  }
+
+  /**
+   * Method to check whether admission object is valid.
+   * @return boolean indicating validity.
+   */
+  public boolean getIsValid() {
+    return _isValid;
+  }
+
+  /**
+   * Tier name '{@value _TIER_CLIENT}' limiting remote addresses.
+   */
+  final public static String _TIER_CLIENT = "client";
+
+  /**
+   * Tier name '{@value _TIER_USER}' limiting users without a tier.
+   */
+  final public static String _TIER_USER = "user";
+
+  /**
+   * Admission result '{@value _UNAUTHENTICATED}' of invalid credentials.
+   */
+  final public static long _UNAUTHENTICATED = -1L;
+
+  /**
+   * Limiters indexed by tier name. Only written while constructing.
+   */
+  final private Map<String, ActiveMQServerLimiter> _tiers = new HashMap<String, ActiveMQServerLimiter>();
+
+  /**
+   * Tier names indexed by lower case user name. Only written while constructing.
+   */
+  final private Map<String, String> _users = new HashMap<String, String>();
+
+  /**
+   * boolean indicating whether this {@link ActiveMQServerAdmission} object is in a valid
+   * state.
+   */
+  private boolean _isValid = false;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerAdmission.class.getName());
+}
@@ -0,0 +1,237 @@
+package cc.tools.activemq.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * This class implements consumer side reassembly of payloads published in
+ * chunks by the upload endpoint, see
+ * {@link ActiveMQServerAdaptor#publishChunk}. Chunks are streamed into an
+ * output stream per payload as they are received, so heap use is bounded by
+ * the copy buffer and not by the payload size. Chunks of a payload share a
+ * message group and so arrive in order at one consumer. A chunk resent
+ * after an uncertain send arrives twice and the copy is dropped. A payload
+ * whose chunks arrive out of sequence, whose publish ended with an abort
+ * marker, or which is restarted, is discarded and its stream closed.
+ * <p>
+ * An assembler is not thread safe. Use one per consumer thread.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerAssembler {
+
+  /**
+   * Constructor.
+   * @param sink function opening the output stream of a payload, given the
+   * client call ID of the upload.
+   * @param bufferSize copy buffer size (bytes).
+   */
+  public ActiveMQServerAssembler(Function<String, OutputStream> sink, int bufferSize) {
+
+    _sink = sink;
+
+    _buffer = new byte[bufferSize];
+
+  }
+
+  /**
+   * Method appends a chunk to its payload.
+   *
+   * @param message received chunk message.
+   * @return String client call ID of the payload if this chunk completed it,
+   * null otherwise.
+   * @throws JMSException if the message is not a chunk.
+   * @throws IOException if the payload stream fails; the payload is discarded.
+   */
+  public String accept(BytesMessage message) throws JMSException, IOException {
+
+    if (!message.propertyExists(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_SEQ)) {
+
+      throw new JMSException("message is not a chunk");
+    }
+
+    String group = message.getStringProperty(ActiveMQServerAdaptor._MQ_PROPERTY_ID);
+
+    int sequence = message.getIntProperty(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_SEQ);
+
+    Part part = _parts.get(group);
+
+    if (message.propertyExists(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_ABORT)) {
+
+      _logger.severe("assembly ",
+          group,
+          " aborted by publisher");
+
+      discard(group);
+
+      return null;
+    }
+
+    if (part != null &&
+        sequence < part._next &&
+        (sequence > 0 || part._next == 1)) {
+
+      _logger.info("assembly ",
+          group,
+          " dropped duplicate chunk ",
+          Integer.toString(sequence));
+
+      return null;
+    }
+
+    if (sequence == 0) {
+
+      if (part != null) {
+
+        _logger.severe("assembly ",
+            group,
+            " restarted");
+
+        discard(group);
+      }
+
+      part = new Part(_sink.apply(group));
+
+      _parts.put(group, part);
+
+    } else if (part == null ||
+        part._next != sequence) {
+
+      _logger.severe("assembly ",
+          group,
+          " out of sequence at chunk ",
+          Integer.toString(sequence));
+
+      discard(group);
+
+      return null;
+    }
+
+    try {
+
+      for (int read = message.readBytes(_buffer); read > 0; read = message.readBytes(_buffer)) {
+
+        part._out.write(_buffer, 0, read);
+      }
+
+    } catch (IOException e) {
+
+      discard(group);
+
+      throw e;
+    }
+
+    part._next++;
+
+    if (!message.getBooleanProperty(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_LAST)) {
+
+      return null;
+    }
+
+    int total = message.getIntProperty(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_TOTAL);
+
+    if (total != part._next) {
+
+      _logger.severe("assembly ",
+          group,
+          " incomplete");
+
+      discard(group);
+
+      return null;
+    }
+
+    _parts.remove(group);
+
+    part._out.close();
+
+    return group;
+  }
+
+  /**
+   * Method discards a payload in progress, for example one whose chunks
+   * stopped arriving, and closes its stream.
+   *
+   * @param group client call ID of the payload.
+   */
+  public void discard(String group) {
+
+    Part part = _parts.remove(group);
+
+    if (part == null) {
+
+      return;
+    }
+
+    try {
+
+      part._out.close();
+
+    } catch (IOException e) {
+
+      _logger.exception(e);
+    }
+  }
+
+  /**
+   * Method to get the number of payloads in progress.
+   * @return int payloads in progress.
+   */
+  public int getPending() {
+    return _parts.size();
+  }
+
+  /**
+   * This class holds one payload in progress.
+   */
+  private static class Part {
+
+    /**
+     * Constructor.
+     * @param out payload stream.
+     */
+    Part(OutputStream out) {
+
+      _out = out;
+
+    }
+
+    /**
+     * Payload stream.
+     */
+    final private OutputStream _out;
+
+    /**
+     * Next expected chunk position.
+     */
+    private int _next = 0;
+  }
+
+  /**
+   * Function opening payload streams.
+   */
+  final private Function<String, OutputStream> _sink;
+
+  /**
+   * Copy buffer.
+   */
+  final private byte[] _buffer;
+
+  /**
+   * Payloads in progress indexed by client call ID.
+   */
+  final private Map<String, Part> _parts = new HashMap<String, Part>();
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerAssembler.class.getName());
+}
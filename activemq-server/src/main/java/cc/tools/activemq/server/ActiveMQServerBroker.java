@@ -0,0 +1,702 @@
+package cc.tools.activemq.server;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.naming.Context;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+/**
+ * This class implements one broker endpoint of a {@link ActiveMQServerConnection}.
+ * Each broker owns the publish adaptors of the routes assigned to it, and
+ * retires a route's adaptor once the route moves to another broker. It
+ * tracks its health as moving averages of send errors and send latency. A
+ * broker whose error rate or latency rises above its limit is taken out of
+ * rotation for the configured down interval, after which it is tried again
+ * with a clean record.
+ * <p>
+ * Metrics are published as <code>broker.&lt;index&gt;.published</code>,
+ * <code>.failed</code>, <code>.nanos</code>, <code>.trips</code>,
+ * <code>.healthy</code>, <code>.weight</code> (per mille), <code>.routes</code>,
+ * <code>.probes</code> and <code>.repairs</code>.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerBroker {
+
+  /**
+   * Constructor.
+   * @param index broker position in configuration.
+   * @param context Initial Naming context.
+   * @param name MQ Factory name of this broker.
+   * @param factory MQ Connection Factory of this broker.
+   * @param config Configuration object.
+   */
+  public ActiveMQServerBroker(int index, Context context, String name, ConnectionFactory factory, ActiveMQServerConfig config) {
+
+    _index = index;
+
+    _context = context;
+
+    _name = name;
+
+    _factory = factory;
+
+    _config = config;
+
+    configure(factory, config);
+
+    _errorThreshold = config.getBrokerErrorThreshold() / 100.0;
+
+    _latencyLimit = config.getBrokerLatencyLimit() * 1000000.0;
+
+    String prefix = "broker." + index + ".";
+
+    _published = ActiveMQServerMetrics.counter(prefix + "published");
+
+    _failed = ActiveMQServerMetrics.counter(prefix + "failed");
+
+    _nanos = ActiveMQServerMetrics.counter(prefix + "nanos");
+
+    _trips = ActiveMQServerMetrics.counter(prefix + "trips");
+
+    _probes = ActiveMQServerMetrics.counter(prefix + "probes");
+
+    _repairs = ActiveMQServerMetrics.counter(prefix + "repairs");
+
+    ActiveMQServerMetrics.gauge(prefix + "healthy", () -> (getIsHealthy() ? 1 : 0));
+
+    ActiveMQServerMetrics.gauge(prefix + "weight", () -> Math.round(getWeight() * 1000));
+
+    ActiveMQServerMetrics.gauge(prefix + "routes", () -> _routes.size());
+
+  }
+
+  /**
+   * Method returns the adaptor of a route, which is a channel or one shard of
+   * a channel.
+   * @param route route id.
+   * @return {@link ActiveMQServerAdaptor} if connected, null otherwise.
+   */
+  public ActiveMQServerAdaptor getAdaptor(String route) {
+
+    ActiveMQServerAdaptor adaptor = _adaptors.get(route);
+
+    return (adaptor != null && adaptor.getIsValid() ? adaptor : null);
+  }
+
+  /**
+   * Method assigns a route to this broker.
+   * @param route route id.
+   */
+  public void assign(String route) {
+
+    _routes.add(route);
+  }
+
+  /**
+   * Method withdraws a route from this broker and retires its adaptor, see
+   * {@link ActiveMQServerAdaptor#retire()}. Sends already holding the
+   * adaptor complete first.
+   * @param route route id.
+   */
+  public void retire(String route) {
+
+    _routes.remove(route);
+
+    ActiveMQServerAdaptor adaptor = _adaptors.remove(route);
+
+    if (adaptor != null) {
+
+      adaptor.retire();
+    }
+  }
+
+  /**
+   * Method to create or recreate the route's connection to this broker.
+   * Connects are serialized per route with a {@link ReentrantLock} rather
+   * than a monitor, so a virtual thread waiting here or blocked in the JMS
+   * connect does not pin its carrier thread, and routes connect
+   * independently. A failed connect takes the broker out of rotation.
+   *
+   * @param id client call ID
+   * @param channel channel id to be used.
+   * @param shard shard index, or -1 if the channel is not sharded.
+   * @param route route id of channel and shard.
+   * @return boolean true for success, false otherwise.
+   */
+  public boolean connect(String id, String channel, int shard, String route) {
+
+    ReentrantLock lock = _locks.computeIfAbsent(route, r -> new ReentrantLock());
+
+    ActiveMQServerEvents.Connect event = new ActiveMQServerEvents.Connect();
+
+    event.begin();
+
+    boolean connected = false;
+
+    lock.lock();
+
+    try {
+
+      connected = connectLocked(id, channel, shard, route, event);
+
+    } finally {
+
+      lock.unlock();
+    }
+
+    if (event.shouldCommit()) {
+
+      event.channel = channel;
+
+      event.shard = shard;
+
+      event.broker = _name;
+
+      event.success = connected;
+
+      event.commit();
+    }
+
+    if (!connected) {
+
+      trip();
+    }
+
+    return connected;
+  }
+
+  /**
+   * Method to create or recreate the route's connection to this broker
+   * while holding the route's connect lock.
+   * @param id client call ID
+   * @param channel channel id to be used.
+   * @param shard shard index, or -1 if the channel is not sharded.
+   * @param route route id of channel and shard.
+   * @param event flight recorder event counting the attempts.
+   * @return boolean true for success, false otherwise.
+   */
+  private boolean connectLocked(String id, String channel, int shard, String route, ActiveMQServerEvents.Connect event) {
+
+    _logger.info("connecting ...",
+        id,
+        " broker ",
+        _name);
+
+    if (getAdaptor(route) != null) {
+
+      return true;
+    }
+
+    for (int i = 0; i < _config.getConnectLimit(); i++) {
+
+      event.attempts = i + 1;
+
+      try {
+
+        ActiveMQServerAdaptor adaptor = create(channel, shard);
+
+        if (adaptor.getIsValid()) {
+
+          ActiveMQServerAdaptor broken = _adaptors.put(route, adaptor);
+
+          if (broken != null) {
+
+            broken.retire();
+          }
+
+          _logger.info("connect id ",
+              id,
+              " got valid adaptor");
+
+          return true;
+        }
+
+      } catch (RejectedExecutionException e) {
+
+        _logger.severe("connect id ",
+            id,
+            " no connector free for broker ",
+            _name);
+
+        return false;
+
+      } catch (Exception e) {
+
+        _logger.exception(e);
+
+      }
+
+      ActiveMQServerTime.sleep(_config.getConnectInterval());
+    }
+
+    _logger.severe("connect id ",
+        id,
+        " could not get valid adaptor from broker ",
+        _name);
+
+    return false;
+  }
+
+  /**
+   * Method creates an adaptor. With a monitor the connect runs bounded by
+   * the connect timeout, and an adaptor connecting too late is closed.
+   * @param channel channel id to be used.
+   * @param shard shard index, or -1 if the channel is not sharded.
+   * @return {@link ActiveMQServerAdaptor} new adaptor.
+   * @throws Exception if the connect timed out.
+   */
+  private ActiveMQServerAdaptor create(String channel, int shard) throws Exception {
+
+    Callable<ActiveMQServerAdaptor> connect = () -> new ActiveMQServerAdaptor(_context,
+        _factory,
+        channel,
+        shard,
+        this::signal);
+
+    if (_monitor == null) {
+
+      return connect.call();
+    }
+
+    return _monitor.bounded(connect, ActiveMQServerAdaptor::retire);
+  }
+
+  /**
+   * Method asks the monitor to check this broker soon, called when an
+   * adaptor's connection fails.
+   */
+  private void signal() {
+
+    if (_monitor != null) {
+
+      _monitor.signal();
+    }
+  }
+
+  /**
+   * Method checks the broker's health off the request path, called by
+   * {@link ActiveMQServerMonitor}. A broker out of rotation, or one whose
+   * adaptors are all broken, is probed with a bounded throwaway connection.
+   * A healthy broker without routes is probed only every
+   * {@value _IDLE_PROBE_INTERVALS} monitor intervals. A
+   * failed probe keeps it out of rotation and a successful one brings it
+   * back early. Adaptors of routes no longer assigned to this broker, left
+   * by requests racing a move, are retired. Broken adaptors of assigned
+   * routes on a reachable broker are then rebuilt, so requests find them
+   * connected.
+   */
+  public void check() {
+
+    boolean idle = _adaptors.isEmpty();
+
+    boolean broken = !idle;
+
+    for (ActiveMQServerAdaptor adaptor : _adaptors.values()) {
+
+      broken &= !adaptor.getIsValid();
+    }
+
+    long now = System.currentTimeMillis();
+
+    if (idle &&
+        now >= _idleProbeAt) {
+
+      _idleProbeAt = now + (long) _config.getMonitorInterval() * _IDLE_PROBE_INTERVALS;
+
+    } else {
+
+      idle = false;
+    }
+
+    if (!getIsHealthy() ||
+        broken ||
+        idle) {
+
+      if (!probe()) {
+
+        if (getIsHealthy()) {
+
+          trip();
+        }
+
+        return;
+      }
+
+      _downUntil.set(0);
+    }
+
+    for (Map.Entry<String, ActiveMQServerAdaptor> entry : _adaptors.entrySet()) {
+
+      ActiveMQServerAdaptor adaptor = entry.getValue();
+
+      if (!_routes.contains(entry.getKey())) {
+
+        retire(entry.getKey());
+
+      } else if (!adaptor.getIsValid()) {
+
+        _repairs.increment();
+
+        connect("monitor", adaptor.getChannel(), adaptor.getShard(), entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Method probes the broker by opening and closing a connection.
+   * @return boolean true if the broker is reachable.
+   */
+  private boolean probe() {
+
+    _probes.increment();
+
+    try {
+
+      Connection connection = (_monitor == null ? 
+          _factory.createConnection() : 
+          _monitor.bounded(_factory::createConnection, ActiveMQServerBroker::close));
+
+      close(connection);
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.severe("broker ",
+          _name,
+          " probe failed ",
+          e.toString());
+    }
+
+    return false;
+  }
+
+  /**
+   * Method closes a probe connection.
+   * @param connection connection.
+   */
+  private static void close(Connection connection) {
+
+    try {
+
+      connection.close();
+
+    } catch (Exception e) {
+
+      // nothing to recover
+    }
+  }
+
+  /**
+   * Method applies the configured connect and send timeouts and producer
+   * window size to an ActiveMQ factory. The window bounds the bytes of
+   * asynchronous sends awaiting the broker's go-ahead under producer flow
+   * control. Other factories are left as configured.
+   * @param factory MQ Connection Factory.
+   * @param config Configuration object.
+   */
+  private static void configure(ConnectionFactory factory, ActiveMQServerConfig config) {
+
+    if (factory instanceof ActiveMQConnectionFactory) {
+
+      ActiveMQConnectionFactory activemq = (ActiveMQConnectionFactory) factory;
+
+      activemq.setConnectResponseTimeout(config.getConnectTimeout());
+
+      activemq.setSendTimeout(config.getSendTimeout());
+
+      activemq.setProducerWindowSize(config.getProducerWindowSize());
+
+      activemq.setCloseTimeout(config.getConnectTimeout());
+    }
+  }
+
+  /**
+   * Method retires all adaptors of this broker, see
+   * {@link ActiveMQServerAdaptor#retire()}.
+   */
+  public void destroy() {
+
+    _routes.clear();
+
+    for (String route : _adaptors.keySet()) {
+
+      ActiveMQServerAdaptor adaptor = _adaptors.remove(route);
+
+      if (adaptor != null) {
+
+        adaptor.retire();
+      }
+    }
+  }
+
+  /**
+   * Method sets the monitor that checks this broker and bounds its
+   * connects.
+   * @param monitor health monitor.
+   */
+  public void setMonitor(ActiveMQServerMonitor monitor) {
+    _monitor = monitor;
+  }
+
+  /**
+   * Method records the outcome of one send. The broker is taken out of
+   * rotation once its error rate or latency average exceeds its limit.
+   *
+   * @param success boolean true if the send succeeded.
+   * @param nanos send duration (ns).
+   */
+  public void record(boolean success, long nanos) {
+
+    _nanos.add(nanos);
+
+    (success ? _published : _failed).increment();
+
+    double error = average(_errorRate, (success ? 0.0 : 1.0));
+
+    double latency = (success ? average(_latency, nanos) : Double.longBitsToDouble(_latency.get()));
+
+    if (error > _errorThreshold ||
+        latency > _latencyLimit) {
+
+      trip();
+    }
+  }
+
+  /**
+   * Method takes the broker out of rotation for the configured down
+   * interval and clears its health record.
+   */
+  public void trip() {
+
+    _downUntil.set(System.currentTimeMillis() + _config.getBrokerDownInterval());
+
+    _errorRate.set(Double.doubleToLongBits(0.0));
+
+    _latency.set(Double.doubleToLongBits(0.0));
+
+    _trips.increment();
+
+    _logger.severe("broker ",
+        _name,
+        " out of rotation");
+  }
+
+  /**
+   * Method folds a sample into a moving average without locking.
+   * @param average average stored as double bits.
+   * @param sample new sample.
+   * @return double updated average.
+   */
+  private static double average(AtomicLong average, double sample) {
+
+    while (true) {
+
+      long bits = average.get();
+
+      double value = Double.longBitsToDouble(bits);
+
+      double updated = value + (sample - value) * _ALPHA;
+
+      if (average.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+
+        return updated;
+      }
+    }
+  }
+
+  /**
+   * Method returns the broker's share of new route assignments, between
+   * {@value _WEIGHT_MIN} and 1, falling with error rate and latency.
+   *
+   * @return double weight.
+   */
+  public double getWeight() {
+
+    double error = Double.longBitsToDouble(_errorRate.get());
+
+    double latency = Double.longBitsToDouble(_latency.get());
+
+    return Math.max(_WEIGHT_MIN, (1.0 - error) * (1.0 - Math.min(1.0, latency / _latencyLimit)));
+  }
+
+  /**
+   * Method returns the weighted rendezvous score of a route on this
+   * broker. Each route goes to the broker with the highest score, so
+   * assignments are stable, spread in proportion to weight, and only the
+   * routes of a failed broker move.
+   *
+   * @param route route id.
+   * @return double score.
+   */
+  public double score(String route) {
+
+    long hash = route.hashCode() * 0x9e3779b97f4a7c15L + _index;
+
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+
+    hash = hash ^ (hash >>> 31);
+
+    double unit = ((hash >>> 11) + 0.5) * 0x1.0p-53;
+
+    return -getWeight() / Math.log(unit);
+  }
+
+  /**
+   * Method to check whether the broker is in rotation.
+   * @return boolean true if healthy.
+   */
+  public boolean getIsHealthy() {
+    return System.currentTimeMillis() >= _downUntil.get();
+  }
+
+  /**
+   * Method to get the broker's MQ Factory name.
+   * @return String factory name.
+   */
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * Smoothing factor of the health averages.
+   */
+  final private static double _ALPHA = 0.2;
+
+  /**
+   * Number of monitor intervals '{@value _IDLE_PROBE_INTERVALS}' between
+   * probes of a healthy broker without routes.
+   */
+  final private static int _IDLE_PROBE_INTERVALS = 10;
+
+  /**
+   * Least weight of a broker.
+   */
+  final private static double _WEIGHT_MIN = 0.05;
+
+  /**
+   * Broker position in configuration.
+   */
+  final private int _index;
+
+  /**
+   * JMS Context.
+   */
+  final private Context _context;
+
+  /**
+   * MQ Factory name.
+   */
+  final private String _name;
+
+  /**
+   * MQ Connection Factory.
+   */
+  final private ConnectionFactory _factory;
+
+  /**
+   * Configuration object.
+   */
+  final private ActiveMQServerConfig _config;
+
+  /**
+   * Error rate above which the broker is taken out of rotation.
+   */
+  final private double _errorThreshold;
+
+  /**
+   * Send latency (ns) above which the broker is taken out of rotation.
+   */
+  final private double _latencyLimit;
+
+  /**
+   * Moving average of send errors, as double bits.
+   */
+  final private AtomicLong _errorRate = new AtomicLong(Double.doubleToLongBits(0.0));
+
+  /**
+   * Moving average of send latency (ns), as double bits.
+   */
+  final private AtomicLong _latency = new AtomicLong(Double.doubleToLongBits(0.0));
+
+  /**
+   * Time (ms) until which the broker is out of rotation.
+   */
+  final private AtomicLong _downUntil = new AtomicLong(0);
+
+  /**
+   * MQ Adaptors indexed by route.
+   */
+  final private Map<String, ActiveMQServerAdaptor> _adaptors = new ConcurrentHashMap<String, ActiveMQServerAdaptor>();
+
+  /**
+   * Routes assigned to this broker.
+   */
+  final private Set<String> _routes = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Connect locks indexed by route.
+   */
+  final private Map<String, ReentrantLock> _locks = new ConcurrentHashMap<String, ReentrantLock>();
+
+  /**
+   * Messages published.
+   */
+  final private LongAdder _published;
+
+  /**
+   * Sends failed.
+   */
+  final private LongAdder _failed;
+
+  /**
+   * Time spent sending (ns).
+   */
+  final private LongAdder _nanos;
+
+  /**
+   * Times taken out of rotation.
+   */
+  final private LongAdder _trips;
+
+  /**
+   * Health probes run.
+   */
+  final private LongAdder _probes;
+
+  /**
+   * Broken adaptors rebuilt by the monitor.
+   */
+  final private LongAdder _repairs;
+
+  /**
+   * Time (ms) of the next probe of a healthy broker without routes. Only
+   * used by the monitor thread.
+   */
+  private long _idleProbeAt = 0;
+
+  /**
+   * Health monitor, or null.
+   */
+  private volatile ActiveMQServerMonitor _monitor = null;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerBroker.class.getName());
+}
@@ -1,5 +1,9 @@
 package cc.tools.activemq.server;
 
+
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.ServletContext;
 
 /**
@@ -33,7 +37,52 @@ public class ActiveMQServerConfig {
           !setInitialContextKey(context)  |
           !setFactoryName(context)        |
           !setPrivateKeyLocation(context) |
-          !setCredentialsLocation(context)) {
+          !setCredentialsLocation(context) |
+          !setConsumePoolSize(context)     |
+          !setConsumePrefetch(context)     |
+          !setConsumeMaxMessages(context)  |
+          !setConsumeMaxWait(context)      |
+          !setSubscribeBufferSize(context) |
+          !setSubscribeTimeout(context)    |
+          !setDedupSize(context)           |
+          !setDedupWindow(context)         |
+          !setNodeId(context)              |
+          !setCredentialsReloadInterval(context) |
+          !setRateLimits(context)          |
+          !setRequestFieldMax(context)     |
+          !setExecutionMode(context)       |
+          !setBrokerMode(context)          |
+          !setBrokerErrorThreshold(context) |
+          !setBrokerLatencyLimit(context)  |
+          !setBrokerDownInterval(context)  |
+          !setShardChannels(context)       |
+          !setShardKey(context)            |
+          !setEmbeddedBrokerName(context)  |
+          !setEmbeddedPersistence(context) |
+          !setEmbeddedDataDirectory(context) |
+          !setEmbeddedJournalSize(context) |
+          !setEmbeddedMemoryLimit(context) |
+          !setEmbeddedStoreLimit(context)  |
+          !setEmbeddedTempLimit(context)   |
+          !setEmbeddedConnectors(context)  |
+          !setEmbeddedNetworkConnectors(context) |
+          !setChannelListMax(context)      |
+          !setChunkSize(context)           |
+          !setChunkLimit(context)          |
+          !setTimingHeader(context)        |
+          !setTimingSampleRate(context)    |
+          !setMonitorInterval(context)     |
+          !setConnectTimeout(context)      |
+          !setSendTimeout(context)         |
+          !setAclLocation(context)         |
+          !setDeadlineHeader(context)      |
+          !setDeadlineGrace(context)       |
+          !setLanes(context)               |
+          !setProducerWindowSize(context)  |
+          !setFlowBlockThreshold(context)  |
+          !setFlowShedInterval(context)    |
+          !setContainerThreads(context)    |
+          !setMetricsAddresses(context)) {
         
         _logger.severe("setter failed");
         
@@ -181,7 +230,8 @@ public class ActiveMQServerConfig {
   }
 
   /** 
-   * Method to set JMS factory name.
+   * Method to set JMS factory names, a comma separated list with one factory
+   * per broker.
    * 
    * @param context servlet context.
    * @return boolean true if success, false otherwise.
@@ -193,7 +243,9 @@ public class ActiveMQServerConfig {
     if (name != null &&
         !name.isBlank()) {
       
-      _factoryName = name;
+      _factoryNames = name.trim().split("\\s*,\\s*");
+
+      _factoryName = _factoryNames[0];
       
       return true;
     }
@@ -258,158 +310,2069 @@ public class ActiveMQServerConfig {
   
   }
 
-  /**
-   * Method to get max number of connection attempts in a row.
-   *
-   * @return int limit.
+  /** 
+   * Method to set max number of pooled consumers per channel.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public int getConnectLimit() {
-    return _connectLimit;
+  private boolean setConsumePoolSize(ServletContext context) {
+
+    _consumePoolSize = getPositiveInt(context, 
+        _CONTEXT_CONSUME_POOL_SIZE_KEY, 
+        _consumePoolSize);
+    
+    return _consumePoolSize > 0;
+  
   }
 
-  /**
-   * Method to get pause interval between connect tries.
+  /** 
+   * Method to set consumer prefetch size.
    * 
-   * @return int pause.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public int getConnectInterval() {
-    return _connectInterval;
+  private boolean setConsumePrefetch(ServletContext context) {
+
+    _consumePrefetch = getPositiveInt(context, 
+        _CONTEXT_CONSUME_PREFETCH_KEY, 
+        _consumePrefetch);
+    
+    return _consumePrefetch > 0;
+  
   }
 
-  /**
-   * Method to get max number of publish attempts in a row.
+  /** 
+   * Method to set max number of messages returned by one consume call.
    * 
-   * @return int limit.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public int getPublishLimit() {
-    return _publishLimit;
+  private boolean setConsumeMaxMessages(ServletContext context) {
+
+    _consumeMaxMessages = getPositiveInt(context, 
+        _CONTEXT_CONSUME_MAX_MESSAGES_KEY, 
+        _consumeMaxMessages);
+    
+    return _consumeMaxMessages > 0;
+  
   }
 
-  /**
-   * Method to get pause interval between publish tries.
+  /** 
+   * Method to set max wait (ms) of one consume call.
    * 
-   * @return int pause.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public int getPublishInterval() {
-    return _publishInterval;
+  private boolean setConsumeMaxWait(ServletContext context) {
+
+    _consumeMaxWait = getPositiveInt(context, 
+        _CONTEXT_CONSUME_MAX_WAIT_KEY, 
+        _consumeMaxWait);
+    
+    return _consumeMaxWait > 0;
+  
   }
 
-  /**
-   * Method to get initial context value.
+  /** 
+   * Method to set max number of events buffered per subscriber.
    * 
-   * @return String containing initial context.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public String getInitialContext() {
-    return _initialContext;
+  private boolean setSubscribeBufferSize(ServletContext context) {
+
+    _subscribeBufferSize = getPositiveInt(context, 
+        _CONTEXT_SUBSCRIBE_BUFFER_SIZE_KEY, 
+        _subscribeBufferSize);
+    
+    return _subscribeBufferSize > 0;
+  
   }
 
-  /**
-   * Method to get factory lookup value.
+  /** 
+   * Method to set subscription response timeout (ms).
    * 
-   * @return String containing factory lookup.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public String getFactoryName() {
-    return _factoryName;
+  private boolean setSubscribeTimeout(ServletContext context) {
+
+    _subscribeTimeout = getPositiveInt(context, 
+        _CONTEXT_SUBSCRIBE_TIMEOUT_KEY, 
+        _subscribeTimeout);
+    
+    return _subscribeTimeout > 0;
+  
   }
 
-  /**
-   * Method to get private key location file.
+  /** 
+   * Method to set max number of idempotency keys remembered.
    * 
-   * @return String containing private key file location.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public String getPrivateKeyLocation() {
-    return _privateKeyLocation;
+  private boolean setDedupSize(ServletContext context) {
+
+    _dedupSize = getPositiveInt(context, 
+        _CONTEXT_DEDUP_SIZE_KEY, 
+        _dedupSize);
+    
+    return _dedupSize > 0;
+  
   }
 
-  /**
-   * Method to get credentials file location..
+  /** 
+   * Method to set time (ms) an idempotency key is remembered for.
    * 
-   * @return String credentials file location.
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  public String getCredentialsLocation() {    
-    return _credentialsLocation;
-  }
+  private boolean setDedupWindow(ServletContext context) {
+
+    _dedupWindow = getPositiveInt(context, 
+        _CONTEXT_DEDUP_WINDOW_KEY, 
+        _dedupWindow);
+    
+    return _dedupWindow > 0;
   
-  /**
-   * Connection retry limit.
-   */
-  private int _connectLimit = -1;
+  }
 
-  /**
-   * Message publish retry sleep interval (ms).
+  /** 
+   * Method to set the node ID stamped into operation IDs. The parameter is
+   * required, as instances sharing a node ID could issue the same operation
+   * IDs and no derived value is unique enough to be trusted.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  private int _connectInterval = -1;
+  private boolean setNodeId(ServletContext context) {
 
-  /**
-   * Message publish retry limit.
-   */
-  private int _publishLimit = -1;
+    String number = context.getInitParameter(_CONTEXT_NODE_ID_KEY);
 
-  /**
-   * Message publish retry sleep interval (ms).
-   */
-  private int _publishInterval = -1;
+    try {
+      
+      if (number == null ||
+          number.isBlank()) {
+        
+        _logger.severe("parameter ",
+            _CONTEXT_NODE_ID_KEY,
+            " missing.");
+        
+        return false;
+      }
+          
+      _nodeId = Integer.parseInt(number.trim());
+    
+      if (_nodeId >= 0 &&
+          _nodeId <= ActiveMQServerId._NODE_MAX) {
+        
+        return true;
+      }
+      
+      _logger.severe("parameter ",
+          _CONTEXT_NODE_ID_KEY,
+          " out of range.");
+      
+    } catch (Exception e) {
 
-  /**
-   * MQ initial context.
-   */
-  private String _initialContext = null;
+      _logger.exception(e);
 
-  /**
-   * MQ Factory name
-   */
-  private String _factoryName = null;
+    }
 
-  /**
-   * MQ Factory name
-   */
-  private String _privateKeyLocation = null;
+    return false;
+  
+  }
 
-  /**
-   * MQ Factory name
+  /** 
+   * Method to set interval (ms) between credentials reload checks.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  private String _credentialsLocation = null;
+  private boolean setCredentialsReloadInterval(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_CONNECT_LIMIT_KEY}'.
-   */
-  final public static String _CONTEXT_CONNECT_LIMIT_KEY = "connect-limit";
+    _credentialsReloadInterval = getPositiveInt(context, 
+        _CONTEXT_CREDENTIALS_RELOAD_INTERVAL_KEY, 
+        _credentialsReloadInterval);
+    
+    return _credentialsReloadInterval > 0;
+  
+  }
 
-  /**
-   * Parameter constant '{@value _CONTEXT_CONNECT_INTERVAL_KEY}'.
+  /** 
+   * Method to set optional rate limit tiers, user tier assignments and the
+   * number of buckets per tier.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_CONNECT_INTERVAL_KEY = "connect-interval";
+  private boolean setRateLimits(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_PUBLISH_LIMIT_KEY}'.
+    _rateLimitTiers = context.getInitParameter(_CONTEXT_RATE_LIMIT_TIERS_KEY);
+    
+    _rateLimitUsers = context.getInitParameter(_CONTEXT_RATE_LIMIT_USERS_KEY);
+    
+    _rateLimitStripes = getPositiveInt(context, 
+        _CONTEXT_RATE_LIMIT_STRIPES_KEY, 
+        _rateLimitStripes);
+    
+    return _rateLimitStripes > 0;
+  
+  }
+
+  /** 
+   * Method to set max length of one encoded request field.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_PUBLISH_LIMIT_KEY = "publish-limit";
+  private boolean setRequestFieldMax(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_PUBLISH_INTERVAL_KEY}'.
+    _requestFieldMax = getPositiveInt(context, 
+        _CONTEXT_REQUEST_FIELD_MAX_KEY, 
+        _requestFieldMax);
+    
+    return _requestFieldMax > 0;
+  
+  }
+
+  /** 
+   * Method to set broker mode, either '{@value _BROKER_MODE_REMOTE}' or
+   * '{@value _BROKER_MODE_EMBEDDED}'.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_PUBLISH_INTERVAL_KEY = "publish-interval";
+  private boolean setBrokerMode(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_INITIAL_CONTEXT_KEY}'.
+    String mode = context.getInitParameter(_CONTEXT_BROKER_MODE_KEY);
+
+    if (mode == null ||
+        mode.isBlank() ||
+        mode.trim().equalsIgnoreCase(_BROKER_MODE_REMOTE)) {
+      
+      _isBrokerEmbedded = false;
+      
+      return true;
+    }
+    
+    if (mode.trim().equalsIgnoreCase(_BROKER_MODE_EMBEDDED)) {
+      
+      _isBrokerEmbedded = true;
+      
+      return true;
+    }
+
+    _logger.severe("unknown broker mode ",
+        mode,
+        ". check servlet configuration.");
+    
+    return false;
+  
+  }
+
+  /** 
+   * Method to set execution mode, either '{@value _EXECUTION_MODE_CONTAINER}'
+   * or '{@value _EXECUTION_MODE_VIRTUAL}'.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_INITIAL_CONTEXT_KEY = "initial-context";
+  private boolean setExecutionMode(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_FACTORY_NAME_KEY}'.
+    String mode = context.getInitParameter(_CONTEXT_EXECUTION_MODE_KEY);
+
+    if (mode == null ||
+        mode.isBlank() ||
+        mode.trim().equalsIgnoreCase(_EXECUTION_MODE_CONTAINER)) {
+      
+      _isExecutionVirtual = false;
+      
+      return true;
+    }
+    
+    if (mode.trim().equalsIgnoreCase(_EXECUTION_MODE_VIRTUAL)) {
+      
+      _isExecutionVirtual = true;
+      
+      return true;
+    }
+
+    _logger.severe("unknown execution mode ",
+        mode,
+        ". check servlet configuration.");
+    
+    return false;
+  
+  }
+
+  /** 
+   * Method to set send error rate (percent) above which a broker is taken out of rotation.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_FACTORY_NAME_KEY = "factory-name";
+  private boolean setBrokerErrorThreshold(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_SERVER_PRIVATE_LOCATION_KEY}'.
+    _brokerErrorThreshold = getPositiveInt(context, 
+        _CONTEXT_BROKER_ERROR_THRESHOLD_KEY, 
+        _brokerErrorThreshold);
+    
+    return _brokerErrorThreshold > 0;
+  
+  }
+
+  /** 
+   * Method to set send latency (ms) above which a broker is taken out of rotation.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
    */
-  final public static String _CONTEXT_SERVER_PRIVATE_LOCATION_KEY = "server-private-key";
+  private boolean setBrokerLatencyLimit(ServletContext context) {
 
-  /**
-   * Parameter constant '{@value _CONTEXT_CREDENTIALS_FILE_LOCATION_KEY}'.
+    _brokerLatencyLimit = getPositiveInt(context, 
+        _CONTEXT_BROKER_LATENCY_LIMIT_KEY, 
+        _brokerLatencyLimit);
+    
+    return _brokerLatencyLimit > 0;
+  
+  }
+
+  /** 
+   * Method to set time (ms) a broker stays out of rotation.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setBrokerDownInterval(ServletContext context) {
+
+    _brokerDownInterval = getPositiveInt(context, 
+        _CONTEXT_BROKER_DOWN_INTERVAL_KEY, 
+        _brokerDownInterval);
+    
+    return _brokerDownInterval > 0;
+  
+  }
+
+  /** 
+   * Method to set shard counts of sharded channels. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setShardChannels(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_SHARD_CHANNELS_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _shardChannels = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set request field hashed to pick a shard. The parameter is
+   * optional and must name a published request field.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setShardKey(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_SHARD_KEY_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _shardKey = value.trim();
+    }
+
+    if (_shardKey.equals(ActiveMQServer._HTTP_KEY_HEADER) ||
+        _shardKey.equals(ActiveMQServer._HTTP_KEY_PID) ||
+        _shardKey.equals(ActiveMQServer._HTTP_KEY_USER)) {
+
+      return true;
+    }
+
+    _logger.severe("parameter ",
+        _CONTEXT_SHARD_KEY_KEY,
+        " must be one of header, pid or user.");
+
+    return false;
+  
+  }
+
+  /** 
+   * Method to set name of the embedded broker. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedBrokerName(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_EMBEDDED_BROKER_NAME_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _embeddedBrokerName = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set persistence adapter of the embedded broker, either
+   * '{@value _PERSISTENCE_KAHADB}' or '{@value _PERSISTENCE_MEMORY}'. The
+   * parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedPersistence(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_EMBEDDED_PERSISTENCE_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _embeddedPersistence = value.trim();
+    }
+
+    if (_embeddedPersistence.equalsIgnoreCase(_PERSISTENCE_KAHADB) ||
+        _embeddedPersistence.equalsIgnoreCase(_PERSISTENCE_MEMORY)) {
+
+      return true;
+    }
+
+    _logger.severe("unknown persistence ",
+        _embeddedPersistence,
+        ". check servlet configuration.");
+
+    return false;
+  
+  }
+
+  /** 
+   * Method to set data directory of the embedded broker. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedDataDirectory(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_EMBEDDED_DATA_DIRECTORY_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _embeddedDataDirectory = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set size (MB) of one KahaDB journal file of the embedded broker.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedJournalSize(ServletContext context) {
+
+    _embeddedJournalSize = getPositiveInt(context, 
+        _CONTEXT_EMBEDDED_JOURNAL_SIZE_KEY, 
+        _embeddedJournalSize);
+    
+    return _embeddedJournalSize > 0;
+  
+  }
+
+  /** 
+   * Method to set memory limit (MB) of the embedded broker.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedMemoryLimit(ServletContext context) {
+
+    _embeddedMemoryLimit = getPositiveInt(context, 
+        _CONTEXT_EMBEDDED_MEMORY_LIMIT_KEY, 
+        _embeddedMemoryLimit);
+    
+    return _embeddedMemoryLimit > 0;
+  
+  }
+
+  /** 
+   * Method to set store limit (MB) of the embedded broker.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedStoreLimit(ServletContext context) {
+
+    _embeddedStoreLimit = getPositiveInt(context, 
+        _CONTEXT_EMBEDDED_STORE_LIMIT_KEY, 
+        _embeddedStoreLimit);
+    
+    return _embeddedStoreLimit > 0;
+  
+  }
+
+  /** 
+   * Method to set temporary store limit (MB) of the embedded broker.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedTempLimit(ServletContext context) {
+
+    _embeddedTempLimit = getPositiveInt(context, 
+        _CONTEXT_EMBEDDED_TEMP_LIMIT_KEY, 
+        _embeddedTempLimit);
+    
+    return _embeddedTempLimit > 0;
+  
+  }
+
+  /** 
+   * Method to set transport connector URIs of the embedded broker. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedConnectors(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_EMBEDDED_CONNECTORS_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _embeddedConnectors = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set network connector URIs of the embedded broker. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setEmbeddedNetworkConnectors(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_EMBEDDED_NETWORK_CONNECTORS_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _embeddedNetworkConnectors = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set max number of channels one request may list.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setChannelListMax(ServletContext context) {
+
+    _channelListMax = getPositiveInt(context, 
+        _CONTEXT_CHANNEL_LIST_MAX_KEY, 
+        _channelListMax);
+    
+    return _channelListMax > 0;
+  
+  }
+
+  /** 
+   * Method to set size (bytes) of one upload chunk message.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setChunkSize(ServletContext context) {
+
+    _chunkSize = getPositiveInt(context, 
+        _CONTEXT_CHUNK_SIZE_KEY, 
+        _chunkSize);
+    
+    return _chunkSize > 0;
+  
+  }
+
+  /** 
+   * Method to set max number of chunk messages of one upload.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setChunkLimit(ServletContext context) {
+
+    _chunkLimit = getPositiveInt(context, 
+        _CONTEXT_CHUNK_LIMIT_KEY, 
+        _chunkLimit);
+    
+    return _chunkLimit > 0;
+  
+  }
+
+  /** 
+   * Method to set request header asking for a Server-Timing response header.
+   * The parameter is optional, an empty value disables the header.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setTimingHeader(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_TIMING_HEADER_KEY);
+
+    if (value != null) {
+      
+      _timingHeader = (value.isBlank() ? null : value.trim());
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set share (per mille) of requests answered with Server-Timing.
+   * The parameter is optional and must be between 0 and 1000.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setTimingSampleRate(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_TIMING_SAMPLE_RATE_KEY);
+
+    if (value == null ||
+        value.isBlank()) {
+      
+      return true;
+    }
+
+    try {
+
+      _timingSampleRate = Integer.parseInt(value.trim());
+
+    } catch (NumberFormatException e) {
+
+      _logger.exception(e);
+
+      return false;
+    }
+
+    return _timingSampleRate >= 0 &&
+        _timingSampleRate <= 1000;
+  
+  }
+
+  /** 
+   * Method to set interval (ms) between broker health checks.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setMonitorInterval(ServletContext context) {
+
+    _monitorInterval = getPositiveInt(context, 
+        _CONTEXT_MONITOR_INTERVAL_KEY, 
+        _monitorInterval);
+    
+    return _monitorInterval > 0;
+  
+  }
+
+  /** 
+   * Method to set max time (ms) of one broker connect.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setConnectTimeout(ServletContext context) {
+
+    _connectTimeout = getPositiveInt(context, 
+        _CONTEXT_CONNECT_TIMEOUT_KEY, 
+        _connectTimeout);
+    
+    return _connectTimeout > 0;
+  
+  }
+
+  /** 
+   * Method to set max time (ms) of one broker send.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setSendTimeout(ServletContext context) {
+
+    _sendTimeout = getPositiveInt(context, 
+        _CONTEXT_SEND_TIMEOUT_KEY, 
+        _sendTimeout);
+    
+    return _sendTimeout > 0;
+  
+  }
+
+  /** 
+   * Method to set channel access control list file location. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setAclLocation(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_ACL_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _aclLocation = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set request header carrying the client timeout (ms). The
+   * parameter is optional, an empty value disables deadlines.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setDeadlineHeader(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_DEADLINE_HEADER_KEY);
+
+    if (value != null) {
+      
+      _deadlineHeader = (value.isBlank() ? null : value.trim());
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set time (ms) messages outlive their request deadline.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setDeadlineGrace(ServletContext context) {
+
+    _deadlineGrace = getPositiveInt(context, 
+        _CONTEXT_DEADLINE_GRACE_KEY, 
+        _deadlineGrace);
+    
+    return _deadlineGrace > 0;
+  
+  }
+
+  /** 
+   * Method to set priority lane definitions. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setLanes(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_LANES_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _lanes = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /** 
+   * Method to set bytes of asynchronous sends a producer may have unconfirmed.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setProducerWindowSize(ServletContext context) {
+
+    _producerWindowSize = getPositiveInt(context, 
+        _CONTEXT_PRODUCER_WINDOW_SIZE_KEY, 
+        _producerWindowSize);
+    
+    return _producerWindowSize > 0;
+  
+  }
+
+  /** 
+   * Method to set send time (ms) above which a send counts as blocked by flow control.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setFlowBlockThreshold(ServletContext context) {
+
+    _flowBlockThreshold = getPositiveInt(context, 
+        _CONTEXT_FLOW_BLOCK_THRESHOLD_KEY, 
+        _flowBlockThreshold);
+    
+    return _flowBlockThreshold > 0;
+  
+  }
+
+  /** 
+   * Method to set time (ms) a channel is shed after a timed out send.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setFlowShedInterval(ServletContext context) {
+
+    _flowShedInterval = getPositiveInt(context, 
+        _CONTEXT_FLOW_SHED_INTERVAL_KEY, 
+        _flowShedInterval);
+    
+    return _flowShedInterval > 0;
+  
+  }
+
+  /** 
+   * Method to set size of the container's request thread pool.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setContainerThreads(ServletContext context) {
+
+    _containerThreads = getPositiveInt(context, 
+        _CONTEXT_CONTAINER_THREADS_KEY, 
+        _containerThreads);
+    
+    return _containerThreads > 0;
+  
+  }
+
+  /** 
+   * Method to set client addresses allowed to read the metrics. The parameter is optional.
+   * 
+   * @param context servlet context.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean setMetricsAddresses(ServletContext context) {
+
+    String value = context.getInitParameter(_CONTEXT_METRICS_ADDRESSES_KEY);
+
+    if (value != null &&
+        !value.isBlank()) {
+      
+      _metricsAddresses = value.trim();
+    }
+
+    return true;
+  
+  }
+
+  /**
+   * Method splits a comma separated parameter into trimmed values. Commas
+   * inside parentheses do not split, so a value such as
+   * static:(tcp://a:61616,tcp://b:61616) stays whole.
+   * 
+   * @param text parameter value, or null.
+   * @return String[] values, empty if text is null or blank.
+   */
+  public static String[] split(String text) {
+
+    if (text == null ||
+        text.isBlank()) {
+
+      return new String[0];
+    }
+
+    List<String> values = new ArrayList<String>();
+
+    int depth = 0;
+
+    int start = 0;
+
+    for (int i = 0; i < text.length(); i++) {
+
+      char c = text.charAt(i);
+
+      if (c == '(') {
+
+        depth++;
+
+      } else if (c == ')' &&
+          depth > 0) {
+
+        depth--;
+
+      } else if (c == ',' &&
+          depth == 0) {
+
+        values.add(text.substring(start, i).trim());
+
+        start = i + 1;
+      }
+    }
+
+    values.add(text.substring(start).trim());
+
+    return values.toArray(new String[0]);
+  }
+
+  /** 
+   * Method to read an optional positive integer parameter. The default value
+   * is kept if the parameter is absent, -1 is returned if it is malformed.
+   * 
+   * @param context servlet context.
+   * @param key parameter name.
+   * @param value default value.
+   * @return int parameter value.
+   */
+  private int getPositiveInt(ServletContext context, String key, int value) {
+
+    String number = context.getInitParameter(key);
+
+    if (number == null ||
+        number.isBlank()) {
+      
+      return value;
+    }
+
+    try {
+          
+      int result = Integer.parseInt(number.trim());
+    
+      if (result > 0) {
+        
+        return result;
+      }
+      
+      _logger.severe("parameter ",
+          key,
+          " must be positive.");
+      
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+    }
+
+    return -1;
+  
+  }
+
+  /**
+   * Method to get max number of connection attempts in a row.
+   *
+   * @return int limit.
+   */
+  public int getConnectLimit() {
+    return _connectLimit;
+  }
+
+  /**
+   * Method to get pause interval between connect tries.
+   * 
+   * @return int pause.
+   */
+  public int getConnectInterval() {
+    return _connectInterval;
+  }
+
+  /**
+   * Method to get max number of publish attempts in a row.
+   * 
+   * @return int limit.
+   */
+  public int getPublishLimit() {
+    return _publishLimit;
+  }
+
+  /**
+   * Method to get pause interval between publish tries.
+   * 
+   * @return int pause.
+   */
+  public int getPublishInterval() {
+    return _publishInterval;
+  }
+
+  /**
+   * Method to get initial context value.
+   * 
+   * @return String containing initial context.
+   */
+  public String getInitialContext() {
+    return _initialContext;
+  }
+
+  /**
+   * Method to get factory lookup value.
+   * 
+   * @return String containing factory lookup.
+   */
+  public String getFactoryName() {
+    return _factoryName;
+  }
+
+  /**
+   * Method to get factory lookup values of all brokers.
+   * 
+   * @return String[] containing factory lookups, the first one is also
+   *         returned by {@link #getFactoryName()}.
+   */
+  public String[] getFactoryNames() {
+    return _factoryNames;
+  }
+
+  /**
+   * Method to get private key location file.
+   * 
+   * @return String containing private key file location.
+   */
+  public String getPrivateKeyLocation() {
+    return _privateKeyLocation;
+  }
+
+  /**
+   * Method to get credentials file location..
+   * 
+   * @return String credentials file location.
+   */
+  public String getCredentialsLocation() {    
+    return _credentialsLocation;
+  }
+  
+  /**
+   * Method to get max number of pooled consumers per channel.
+   * 
+   * @return int pool size.
+   */
+  public int getConsumePoolSize() {
+    return _consumePoolSize;
+  }
+
+  /**
+   * Method to get consumer prefetch size.
+   * 
+   * @return int prefetch size.
+   */
+  public int getConsumePrefetch() {
+    return _consumePrefetch;
+  }
+
+  /**
+   * Method to get max number of messages returned by one consume call.
+   * 
+   * @return int limit.
+   */
+  public int getConsumeMaxMessages() {
+    return _consumeMaxMessages;
+  }
+
+  /**
+   * Method to get max wait (ms) of one consume call.
+   * 
+   * @return int wait.
+   */
+  public int getConsumeMaxWait() {
+    return _consumeMaxWait;
+  }
+  
+  /**
+   * Method to get max number of events buffered per subscriber.
+   * 
+   * @return int buffer size.
+   */
+  public int getSubscribeBufferSize() {
+    return _subscribeBufferSize;
+  }
+
+  /**
+   * Method to get subscription response timeout (ms).
+   * 
+   * @return int timeout.
+   */
+  public int getSubscribeTimeout() {
+    return _subscribeTimeout;
+  }
+  
+  /**
+   * Method to get max number of idempotency keys remembered.
+   * 
+   * @return int size.
+   */
+  public int getDedupSize() {
+    return _dedupSize;
+  }
+
+  /**
+   * Method to get time (ms) an idempotency key is remembered for.
+   * 
+   * @return int window.
+   */
+  public int getDedupWindow() {
+    return _dedupWindow;
+  }
+  
+  /**
+   * Method to get node ID stamped into operation IDs.
+   * 
+   * @return int node ID.
+   */
+  public int getNodeId() {
+    return _nodeId;
+  }
+  
+  /**
+   * Method to get interval (ms) between credentials reload checks.
+   * 
+   * @return int interval.
+   */
+  public int getCredentialsReloadInterval() {
+    return _credentialsReloadInterval;
+  }
+  
+  /**
+   * Method to get rate limit tier definitions.
+   * 
+   * @return String tiers, or null if not limited.
+   */
+  public String getRateLimitTiers() {
+    return _rateLimitTiers;
+  }
+
+  /**
+   * Method to get rate limit user tier assignments.
+   * 
+   * @return String assignments, or null.
+   */
+  public String getRateLimitUsers() {
+    return _rateLimitUsers;
+  }
+
+  /**
+   * Method to get number of rate limit buckets per tier.
+   * 
+   * @return int number of buckets.
+   */
+  public int getRateLimitStripes() {
+    return _rateLimitStripes;
+  }
+  
+  /**
+   * Method to get max length of one encoded request field.
+   * 
+   * @return int length.
+   */
+  public int getRequestFieldMax() {
+    return _requestFieldMax;
+  }
+  
+  /**
+   * Method to check whether blocking work runs on virtual threads.
+   * 
+   * @return boolean true in virtual execution mode.
+   */
+  public boolean getIsExecutionVirtual() {
+    return _isExecutionVirtual;
+  }
+
+  /**
+   * Method to check whether the servlet publishes to an embedded broker.
+   * 
+   * @return boolean true in embedded broker mode.
+   */
+  public boolean getIsBrokerEmbedded() {
+    return _isBrokerEmbedded;
+  }
+  
+  /**
+   * Method to get send error rate (percent) above which a broker is taken out of rotation.
+   * 
+   * @return int percent.
+   */
+  public int getBrokerErrorThreshold() {
+    return _brokerErrorThreshold;
+  }
+  
+  /**
+   * Method to get send latency (ms) above which a broker is taken out of rotation.
+   * 
+   * @return int latency.
+   */
+  public int getBrokerLatencyLimit() {
+    return _brokerLatencyLimit;
+  }
+  
+  /**
+   * Method to get time (ms) a broker stays out of rotation.
+   * 
+   * @return int interval.
+   */
+  public int getBrokerDownInterval() {
+    return _brokerDownInterval;
+  }
+  
+  /**
+   * Method to get shard counts of sharded channels.
+   * 
+   * @return String entries, or null.
+   */
+  public String getShardChannels() {
+    return _shardChannels;
+  }
+  
+  /**
+   * Method to get request field hashed to pick a shard.
+   * 
+   * @return String field name.
+   */
+  public String getShardKey() {
+    return _shardKey;
+  }
+  
+  /**
+   * Method to get name of the embedded broker.
+   * 
+   * @return String name.
+   */
+  public String getEmbeddedBrokerName() {
+    return _embeddedBrokerName;
+  }
+  
+  /**
+   * Method to get persistence adapter of the embedded broker.
+   * 
+   * @return String adapter name.
+   */
+  public String getEmbeddedPersistence() {
+    return _embeddedPersistence;
+  }
+  
+  /**
+   * Method to get data directory of the embedded broker.
+   * 
+   * @return String directory.
+   */
+  public String getEmbeddedDataDirectory() {
+    return _embeddedDataDirectory;
+  }
+  
+  /**
+   * Method to get size (MB) of one KahaDB journal file of the embedded broker.
+   * 
+   * @return int size.
+   */
+  public int getEmbeddedJournalSize() {
+    return _embeddedJournalSize;
+  }
+  
+  /**
+   * Method to get memory limit (MB) of the embedded broker.
+   * 
+   * @return int limit.
+   */
+  public int getEmbeddedMemoryLimit() {
+    return _embeddedMemoryLimit;
+  }
+  
+  /**
+   * Method to get store limit (MB) of the embedded broker.
+   * 
+   * @return int limit.
+   */
+  public int getEmbeddedStoreLimit() {
+    return _embeddedStoreLimit;
+  }
+  
+  /**
+   * Method to get temporary store limit (MB) of the embedded broker.
+   * 
+   * @return int limit.
+   */
+  public int getEmbeddedTempLimit() {
+    return _embeddedTempLimit;
+  }
+  
+  /**
+   * Method to get transport connector URIs of the embedded broker.
+   * 
+   * @return String URIs, or null.
+   */
+  public String getEmbeddedConnectors() {
+    return _embeddedConnectors;
+  }
+  
+  /**
+   * Method to get network connector URIs of the embedded broker.
+   * 
+   * @return String URIs, or null.
+   */
+  public String getEmbeddedNetworkConnectors() {
+    return _embeddedNetworkConnectors;
+  }
+  
+  /**
+   * Method to get max number of channels one request may list.
+   * 
+   * @return int max.
+   */
+  public int getChannelListMax() {
+    return _channelListMax;
+  }
+  
+  /**
+   * Method to get size (bytes) of one upload chunk message.
+   * 
+   * @return int size.
+   */
+  public int getChunkSize() {
+    return _chunkSize;
+  }
+  
+  /**
+   * Method to get max number of chunk messages of one upload.
+   * 
+   * @return int limit.
+   */
+  public int getChunkLimit() {
+    return _chunkLimit;
+  }
+  
+  /**
+   * Method to get request header asking for a Server-Timing response header.
+   * 
+   * @return String header name, null if disabled.
+   */
+  public String getTimingHeader() {
+    return _timingHeader;
+  }
+  
+  /**
+   * Method to get share (per mille) of requests answered with Server-Timing.
+   * 
+   * @return int rate.
+   */
+  public int getTimingSampleRate() {
+    return _timingSampleRate;
+  }
+  
+  /**
+   * Method to get interval (ms) between broker health checks.
+   * 
+   * @return int interval.
+   */
+  public int getMonitorInterval() {
+    return _monitorInterval;
+  }
+  
+  /**
+   * Method to get max time (ms) of one broker connect.
+   * 
+   * @return int timeout.
+   */
+  public int getConnectTimeout() {
+    return _connectTimeout;
+  }
+  
+  /**
+   * Method to get max time (ms) of one broker send.
+   * 
+   * @return int timeout.
+   */
+  public int getSendTimeout() {
+    return _sendTimeout;
+  }
+  
+  /**
+   * Method to get channel access control list file location.
+   * 
+   * @return String location, or null.
+   */
+  public String getAclLocation() {
+    return _aclLocation;
+  }
+  
+  /**
+   * Method to get request header carrying the client timeout (ms).
+   * 
+   * @return String header name, or null.
+   */
+  public String getDeadlineHeader() {
+    return _deadlineHeader;
+  }
+  
+  /**
+   * Method to get time (ms) messages outlive their request deadline.
+   * 
+   * @return int time (ms).
+   */
+  public int getDeadlineGrace() {
+    return _deadlineGrace;
+  }
+  
+  /**
+   * Method to get priority lane definitions.
+   * 
+   * @return String definitions, or null.
+   */
+  public String getLanes() {
+    return _lanes;
+  }
+  
+  /**
+   * Method to get bytes of asynchronous sends a producer may have unconfirmed.
+   * 
+   * @return int size (bytes).
+   */
+  public int getProducerWindowSize() {
+    return _producerWindowSize;
+  }
+  
+  /**
+   * Method to get send time (ms) above which a send counts as blocked by flow control.
+   * 
+   * @return int time (ms).
+   */
+  public int getFlowBlockThreshold() {
+    return _flowBlockThreshold;
+  }
+  
+  /**
+   * Method to get time (ms) a channel is shed after a timed out send.
+   * 
+   * @return int time (ms).
+   */
+  public int getFlowShedInterval() {
+    return _flowShedInterval;
+  }
+  
+  /**
+   * Method to get size of the container's request thread pool.
+   * 
+   * @return int number of threads.
+   */
+  public int getContainerThreads() {
+    return _containerThreads;
+  }
+  
+  /**
+   * Method to get client addresses allowed to read the metrics.
+   * 
+   * @return String addresses, or null.
+   */
+  public String getMetricsAddresses() {
+    return _metricsAddresses;
+  }
+  
+  /**
+   * Connection retry limit.
+   */
+  private int _connectLimit = -1;
+
+  /**
+   * Message publish retry sleep interval (ms).
+   */
+  private int _connectInterval = -1;
+
+  /**
+   * Message publish retry limit.
+   */
+  private int _publishLimit = -1;
+
+  /**
+   * Message publish retry sleep interval (ms).
+   */
+  private int _publishInterval = -1;
+
+  /**
+   * MQ initial context.
+   */
+  private String _initialContext = null;
+
+  /**
+   * MQ Factory name
+   */
+  private String _factoryName = null;
+
+  /**
+   * MQ Factory names, one per broker.
+   */
+  private String[] _factoryNames = null;
+
+  /**
+   * MQ Factory name
+   */
+  private String _privateKeyLocation = null;
+
+  /**
+   * MQ Factory name
+   */
+  private String _credentialsLocation = null;
+
+  /**
+   * Max pooled consumers per channel.
+   */
+  private int _consumePoolSize = 4;
+
+  /**
+   * Consumer prefetch size.
+   */
+  private int _consumePrefetch = 100;
+
+  /**
+   * Max messages returned by one consume call.
+   */
+  private int _consumeMaxMessages = 100;
+
+  /**
+   * Max wait (ms) of one consume call.
+   */
+  private int _consumeMaxWait = 30000;
+
+  /**
+   * Max events buffered per subscriber.
+   */
+  private int _subscribeBufferSize = 256;
+
+  /**
+   * Subscription response timeout (ms).
+   */
+  private int _subscribeTimeout = 3600000;
+
+  /**
+   * Max idempotency keys remembered.
+   */
+  private int _dedupSize = 100000;
+
+  /**
+   * Time (ms) an idempotency key is remembered for.
+   */
+  private int _dedupWindow = 300000;
+
+  /**
+   * Node ID stamped into operation IDs.
+   */
+  private int _nodeId = -1;
+
+  /**
+   * Interval (ms) between credentials reload checks.
+   */
+  private int _credentialsReloadInterval = 60000;
+
+  /**
+   * Rate limit tier definitions.
+   */
+  private String _rateLimitTiers = null;
+
+  /**
+   * Rate limit user tier assignments.
+   */
+  private String _rateLimitUsers = null;
+
+  /**
+   * Rate limit buckets per tier.
+   */
+  private int _rateLimitStripes = 4096;
+
+  /**
+   * Max length of one encoded request field.
+   */
+  private int _requestFieldMax = 1024;
+
+  /**
+   * boolean indicating virtual execution mode.
+   */
+  private boolean _isExecutionVirtual = false;
+
+  /**
+   * boolean indicating embedded broker mode.
+   */
+  private boolean _isBrokerEmbedded = false;
+
+  /**
+   * Broker send error rate (percent) limit.
+   */
+  private int _brokerErrorThreshold = 50;
+
+  /**
+   * Broker send latency (ms) limit.
+   */
+  private int _brokerLatencyLimit = 1000;
+
+  /**
+   * Time (ms) a broker stays out of rotation.
+   */
+  private int _brokerDownInterval = 5000;
+
+  /**
+   * Sharded channels as channel=count entries.
+   */
+  private String _shardChannels = null;
+
+  /**
+   * Request field hashed to pick a shard.
+   */
+  private String _shardKey = "pid";
+
+  /**
+   * Embedded broker name.
+   */
+  private String _embeddedBrokerName = "activemq-server";
+
+  /**
+   * Embedded broker persistence adapter.
+   */
+  private String _embeddedPersistence = "kahadb";
+
+  /**
+   * Embedded broker data directory.
+   */
+  private String _embeddedDataDirectory = "activemq-data";
+
+  /**
+   * Embedded broker KahaDB journal file size (MB).
+   */
+  private int _embeddedJournalSize = 32;
+
+  /**
+   * Embedded broker memory limit (MB).
+   */
+  private int _embeddedMemoryLimit = 64;
+
+  /**
+   * Embedded broker store limit (MB).
+   */
+  private int _embeddedStoreLimit = 10240;
+
+  /**
+   * Embedded broker temporary store limit (MB).
+   */
+  private int _embeddedTempLimit = 5120;
+
+  /**
+   * Embedded broker transport connector URIs, comma separated.
+   */
+  private String _embeddedConnectors = null;
+
+  /**
+   * Embedded broker network connector URIs, comma separated.
+   */
+  private String _embeddedNetworkConnectors = null;
+
+  /**
+   * Max channels listed by one request.
+   */
+  private int _channelListMax = 8;
+
+  /**
+   * Upload chunk size (bytes).
+   */
+  private int _chunkSize = 65536;
+
+  /**
+   * Max chunks per upload.
+   */
+  private int _chunkLimit = 16384;
+
+  /**
+   * Request header asking for Server-Timing.
+   */
+  private String _timingHeader = "X-Server-Timing";
+
+  /**
+   * Share (per mille) of requests timed.
+   */
+  private int _timingSampleRate = 0;
+
+  /**
+   * Interval (ms) between broker health checks.
+   */
+  private int _monitorInterval = 1000;
+
+  /**
+   * Max time (ms) of one broker connect.
+   */
+  private int _connectTimeout = 3000;
+
+  /**
+   * Max time (ms) of one broker send.
+   */
+  private int _sendTimeout = 5000;
+
+  /**
+   * Channel access control list file location, or null if every user may use every channel.
+   */
+  private String _aclLocation = null;
+
+  /**
+   * Request header carrying the client timeout (ms), null if deadlines are disabled.
+   */
+  private String _deadlineHeader = "X-Request-Timeout";
+
+  /**
+   * Time (ms) messages outlive their request deadline.
+   */
+  private int _deadlineGrace = 60000;
+
+  /**
+   * Priority lane definitions, null if all channels publish on the request thread.
+   */
+  private String _lanes = null;
+
+  /**
+   * Bytes of asynchronous sends a producer may have unconfirmed.
+   */
+  private int _producerWindowSize = 1048576;
+
+  /**
+   * Send time (ms) above which a send counts as blocked by flow control.
+   */
+  private int _flowBlockThreshold = 100;
+
+  /**
+   * Time (ms) a channel is shed after a timed out send.
+   */
+  private int _flowShedInterval = 1000;
+
+  /**
+   * Size of the container's request thread pool.
+   */
+  private int _containerThreads = 200;
+
+  /**
+   * Client addresses besides loopback allowed to read the metrics, comma separated, or null if only loopback clients may.
+   */
+  private String _metricsAddresses = null;
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONNECT_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_CONNECT_LIMIT_KEY = "connect-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONNECT_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_CONNECT_INTERVAL_KEY = "connect-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_PUBLISH_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_PUBLISH_LIMIT_KEY = "publish-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_PUBLISH_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_PUBLISH_INTERVAL_KEY = "publish-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_INITIAL_CONTEXT_KEY}'.
+   */
+  final public static String _CONTEXT_INITIAL_CONTEXT_KEY = "initial-context";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_FACTORY_NAME_KEY}'.
+   */
+  final public static String _CONTEXT_FACTORY_NAME_KEY = "factory-name";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SERVER_PRIVATE_LOCATION_KEY}'.
+   */
+  final public static String _CONTEXT_SERVER_PRIVATE_LOCATION_KEY = "server-private-key";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CREDENTIALS_FILE_LOCATION_KEY}'.
    */
   final public static String _CONTEXT_CREDENTIALS_FILE_LOCATION_KEY = "credentials";
 
+  /**
+   * Parameter constant '{@value _CONTEXT_CONSUME_POOL_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_CONSUME_POOL_SIZE_KEY = "consume-pool-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONSUME_PREFETCH_KEY}'.
+   */
+  final public static String _CONTEXT_CONSUME_PREFETCH_KEY = "consume-prefetch";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONSUME_MAX_MESSAGES_KEY}'.
+   */
+  final public static String _CONTEXT_CONSUME_MAX_MESSAGES_KEY = "consume-max-messages";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONSUME_MAX_WAIT_KEY}'.
+   */
+  final public static String _CONTEXT_CONSUME_MAX_WAIT_KEY = "consume-max-wait";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SUBSCRIBE_BUFFER_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_SUBSCRIBE_BUFFER_SIZE_KEY = "subscribe-buffer-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SUBSCRIBE_TIMEOUT_KEY}'.
+   */
+  final public static String _CONTEXT_SUBSCRIBE_TIMEOUT_KEY = "subscribe-timeout";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_DEDUP_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_DEDUP_SIZE_KEY = "dedup-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_DEDUP_WINDOW_KEY}'.
+   */
+  final public static String _CONTEXT_DEDUP_WINDOW_KEY = "dedup-window";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_NODE_ID_KEY}'.
+   */
+  final public static String _CONTEXT_NODE_ID_KEY = "node-id";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CREDENTIALS_RELOAD_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_CREDENTIALS_RELOAD_INTERVAL_KEY = "credentials-reload-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_RATE_LIMIT_TIERS_KEY}'.
+   */
+  final public static String _CONTEXT_RATE_LIMIT_TIERS_KEY = "rate-limit-tiers";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_RATE_LIMIT_USERS_KEY}'.
+   */
+  final public static String _CONTEXT_RATE_LIMIT_USERS_KEY = "rate-limit-users";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_RATE_LIMIT_STRIPES_KEY}'.
+   */
+  final public static String _CONTEXT_RATE_LIMIT_STRIPES_KEY = "rate-limit-stripes";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_REQUEST_FIELD_MAX_KEY}'.
+   */
+  final public static String _CONTEXT_REQUEST_FIELD_MAX_KEY = "request-field-max";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EXECUTION_MODE_KEY}'.
+   */
+  final public static String _CONTEXT_EXECUTION_MODE_KEY = "execution-mode";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_BROKER_ERROR_THRESHOLD_KEY}'.
+   */
+  final public static String _CONTEXT_BROKER_ERROR_THRESHOLD_KEY = "broker-error-threshold";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_BROKER_LATENCY_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_BROKER_LATENCY_LIMIT_KEY = "broker-latency-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_BROKER_DOWN_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_BROKER_DOWN_INTERVAL_KEY = "broker-down-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SHARD_CHANNELS_KEY}'.
+   */
+  final public static String _CONTEXT_SHARD_CHANNELS_KEY = "shard-channels";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SHARD_KEY_KEY}'.
+   */
+  final public static String _CONTEXT_SHARD_KEY_KEY = "shard-key";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_BROKER_NAME_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_BROKER_NAME_KEY = "embedded-broker-name";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_PERSISTENCE_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_PERSISTENCE_KEY = "embedded-persistence";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_DATA_DIRECTORY_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_DATA_DIRECTORY_KEY = "embedded-data-directory";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_JOURNAL_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_JOURNAL_SIZE_KEY = "embedded-journal-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_MEMORY_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_MEMORY_LIMIT_KEY = "embedded-memory-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_STORE_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_STORE_LIMIT_KEY = "embedded-store-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_TEMP_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_TEMP_LIMIT_KEY = "embedded-temp-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_CONNECTORS_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_CONNECTORS_KEY = "embedded-connectors";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_EMBEDDED_NETWORK_CONNECTORS_KEY}'.
+   */
+  final public static String _CONTEXT_EMBEDDED_NETWORK_CONNECTORS_KEY = "embedded-network-connectors";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_BROKER_MODE_KEY}'.
+   */
+  final public static String _CONTEXT_BROKER_MODE_KEY = "broker-mode";
+
+  /**
+   * Broker mode '{@value _BROKER_MODE_REMOTE}' publishing to the brokers named by factory-name.
+   */
+  final public static String _BROKER_MODE_REMOTE = "remote";
+
+  /**
+   * Broker mode '{@value _BROKER_MODE_EMBEDDED}' publishing to a broker embedded in the servlet.
+   */
+  final public static String _BROKER_MODE_EMBEDDED = "embedded";
+
+  /**
+   * Persistence '{@value _PERSISTENCE_KAHADB}' storing messages in a KahaDB journal.
+   */
+  final public static String _PERSISTENCE_KAHADB = "kahadb";
+
+  /**
+   * Persistence '{@value _PERSISTENCE_MEMORY}' keeping messages in memory only.
+   */
+  final public static String _PERSISTENCE_MEMORY = "memory";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CHANNEL_LIST_MAX_KEY}'.
+   */
+  final public static String _CONTEXT_CHANNEL_LIST_MAX_KEY = "channel-list-max";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CHUNK_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_CHUNK_SIZE_KEY = "chunk-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CHUNK_LIMIT_KEY}'.
+   */
+  final public static String _CONTEXT_CHUNK_LIMIT_KEY = "chunk-limit";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_TIMING_HEADER_KEY}'.
+   */
+  final public static String _CONTEXT_TIMING_HEADER_KEY = "timing-header";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_TIMING_SAMPLE_RATE_KEY}'.
+   */
+  final public static String _CONTEXT_TIMING_SAMPLE_RATE_KEY = "timing-sample-rate";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_MONITOR_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_MONITOR_INTERVAL_KEY = "monitor-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONNECT_TIMEOUT_KEY}'.
+   */
+  final public static String _CONTEXT_CONNECT_TIMEOUT_KEY = "connect-timeout";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_SEND_TIMEOUT_KEY}'.
+   */
+  final public static String _CONTEXT_SEND_TIMEOUT_KEY = "send-timeout";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_ACL_KEY}'.
+   */
+  final public static String _CONTEXT_ACL_KEY = "acl";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_DEADLINE_HEADER_KEY}'.
+   */
+  final public static String _CONTEXT_DEADLINE_HEADER_KEY = "deadline-header";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_DEADLINE_GRACE_KEY}'.
+   */
+  final public static String _CONTEXT_DEADLINE_GRACE_KEY = "deadline-grace";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_LANES_KEY}'.
+   */
+  final public static String _CONTEXT_LANES_KEY = "lanes";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_PRODUCER_WINDOW_SIZE_KEY}'.
+   */
+  final public static String _CONTEXT_PRODUCER_WINDOW_SIZE_KEY = "producer-window-size";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_FLOW_BLOCK_THRESHOLD_KEY}'.
+   */
+  final public static String _CONTEXT_FLOW_BLOCK_THRESHOLD_KEY = "flow-block-threshold";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_FLOW_SHED_INTERVAL_KEY}'.
+   */
+  final public static String _CONTEXT_FLOW_SHED_INTERVAL_KEY = "flow-shed-interval";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_CONTAINER_THREADS_KEY}'.
+   */
+  final public static String _CONTEXT_CONTAINER_THREADS_KEY = "container-threads";
+
+  /**
+   * Parameter constant '{@value _CONTEXT_METRICS_ADDRESSES_KEY}'.
+   */
+  final public static String _CONTEXT_METRICS_ADDRESSES_KEY = "metrics-addresses";
+
+  /**
+   * Execution mode '{@value _EXECUTION_MODE_CONTAINER}' running requests on container threads.
+   */
+  final public static String _EXECUTION_MODE_CONTAINER = "container";
+
+  /**
+   * Execution mode '{@value _EXECUTION_MODE_VIRTUAL}' running requests on virtual threads.
+   */
+  final public static String _EXECUTION_MODE_VIRTUAL = "virtual";
+
   /**
    * Method to check whether security object is valid.
    * @return boolean indicating validity.  
@@ -1,13 +1,40 @@
 package cc.tools.activemq.server;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.jms.ConnectionFactory;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 
 /**
- * This class implements an Active MQ connection.
+ * This class implements an Active MQ connection. Publishing is spread over
+ * the configured brokers, see {@link ActiveMQServerBroker}. Each channel is
+ * assigned to one healthy broker and stays there until that broker is taken
+ * out of rotation. Consumers and subscriptions use the first broker. In
+ * embedded broker mode the only broker is the one started in this JVM, see
+ * {@link ActiveMQServerEmbedded}. Broken connections are rebuilt in the
+ * background by {@link ActiveMQServerMonitor}.
+ * <p>
+ * A sharded channel publishes to N shard destinations instead of one. The
+ * shard is picked by hashing a key field and the key is sent as message
+ * group, so each key's messages stay in order on one shard and one consumer.
+ * Each shard is a route of its own, so shards spread over brokers.
+ * <p>
+ * A request with a deadline stops connecting, sending and retrying as soon
+ * as the time left cannot cover the next step, judged by the step's average
+ * duration, instead of publishing a message its client no longer waits for.
+ * <p>
+ * Sends held back by broker producer flow control are measured per channel,
+ * and a channel whose send timed out is shed for a while, see
+ * {@link ActiveMQServerFlow}.
  * 
  * @author cc
  * @version %I%, %G%
@@ -37,6 +64,59 @@ public class ActiveMQServerConnection {
       
       _context = (Context) initCtx.lookup(_config.getInitialContext());
 
+      if (!initShards(_config.getShardChannels())) {
+
+        return false;
+      }
+
+      if (_config.getIsBrokerEmbedded()) {
+
+        _embedded = new ActiveMQServerEmbedded(_config);
+
+        if (!_embedded.start()) {
+
+          return false;
+        }
+
+        _factory = _embedded.getFactory();
+
+        _brokers = new ActiveMQServerBroker[] { new ActiveMQServerBroker(0, 
+            _context, 
+            _config.getEmbeddedBrokerName(), 
+            _factory, 
+            _config) };
+
+      } else {
+
+        String[] factories = _config.getFactoryNames();
+
+        _brokers = new ActiveMQServerBroker[factories.length];
+
+        for (int i = 0; i < factories.length; i++) {
+
+          _brokers[i] = new ActiveMQServerBroker(i, 
+              _context, 
+              factories[i], 
+              (ConnectionFactory) _context.lookup(factories[i]), 
+              _config);
+        }
+
+        _factory = (ConnectionFactory) _context.lookup(_config.getFactoryName());
+      }
+
+      _flow = new ActiveMQServerFlow(_config.getFlowBlockThreshold(), 
+          _config.getSendTimeout(), 
+          _config.getFlowShedInterval());
+
+      _monitor = new ActiveMQServerMonitor(_config, _brokers);
+
+      for (ActiveMQServerBroker broker : _brokers) {
+
+        broker.setMonitor(_monitor);
+      }
+
+      _monitor.start();
+
       _isValid = true;
       
       return true;
@@ -50,176 +130,778 @@ public class ActiveMQServerConnection {
     return false;
   }
   
+  /**
+   * Method stops the health monitor, closes every publish adaptor, consumer
+   * and topic subscription, and stops the embedded broker, if any.
+   * Adaptors with sends in flight close when those sends finish.
+   */
+  public void destroy() {
+
+    if (_monitor != null) {
+
+      _monitor.stop();
+    }
+
+    for (ActiveMQServerBroker broker : _brokers) {
+
+      broker.destroy();
+    }
+
+    for (String channel : _consumers.keySet()) {
+
+      ActiveMQServerConsumerPool pool = _consumers.remove(channel);
+
+      if (pool != null) {
+
+        pool.close();
+      }
+    }
+
+    for (String channel : _topics.keySet()) {
+
+      ActiveMQServerTopic topic = _topics.remove(channel);
+
+      if (topic != null) {
+
+        topic.close();
+      }
+    }
+
+    if (_embedded != null) {
+
+      _embedded.stop();
+    }
+  }
+
+  /**
+   * Method parses sharded channels given as <code>channel=count</code>
+   * entries separated by commas and precomputes their route ids.
+   * 
+   * @param shards sharded channels, or null.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean initShards(String shards) {
+
+    if (shards == null ||
+        shards.isBlank()) {
+
+      return true;
+    }
+
+    for (String shard : shards.trim().split("\\s*,\\s*")) {
+
+      String[] fields = shard.split("\\s*=\\s*");
+
+      int count = (fields.length == 2 && fields[1].matches("[0-9]{1,4}") ? Integer.parseInt(fields[1]) : 0);
+
+      if (count < 1) {
+
+        _logger.severe("malformed shard channel ",
+            shard);
+
+        return false;
+      }
+
+      String[] routes = new String[count];
+
+      for (int i = 0; i < count; i++) {
+
+        routes[i] = fields[0] + "#" + i;
+      }
+
+      _shards.put(fields[0], routes);
+    }
+
+    return true;
+  }
+
   /**
    * Method to publish message to Broker.
    * 
    * @param id client call ID.
    * @param message text to be sent to MQ.
    * @param channel channel to be delivered to.
-   * @param code StringBuffer to return result status code.
-   * @param mqid StringBuffer to return MQ transaction id (if any).
+   * @param key shard key, used if the channel is sharded.
+   * @param result result status code and MQ transaction id (if any).
    * @return boolean true if success, false otherwise.
    */
   public boolean publish(String id, 
       String message,
       String channel,
-      StringBuilder code, 
-      StringBuilder mqid) {
+      String key,
+      ActiveMQServerResult result) {
     
     _logger.info("publish id ",
         id);
+
+    String group = (_shards.containsKey(channel) ? key : null);
+
+    return send(id, 
+        channel, 
+        key, 
+        message.length(), 
+        result, 
+        adaptor -> adaptor.publish(id, message, group, result));
+  }
+
+  /**
+   * Method to publish a payload of any size as a sequence of chunk messages,
+   * see {@link ActiveMQServerAdaptor#publishChunk}. The payload is read from
+   * the stream one chunk at a time into a single buffer, so heap use is
+   * bounded by the chunk size however large the payload is. A chunk whose
+   * send fails is retried from the buffer, so consumers may receive it twice
+   * and drop the duplicate by its position. A publish failing after its
+   * first send ends with a best effort abort marker, see
+   * {@link ActiveMQServerAdaptor#abortChunks}, closing the group. This
+   * includes a send shed by flow control, which is rethrown once the marker
+   * has been attempted.
+   * 
+   * @param id client call ID, also the chunk group.
+   * @param in payload stream.
+   * @param length payload length, or -1 if unknown.
+   * @param channel channel to be delivered to.
+   * @param key shard key, used if the channel is sharded.
+   * @param result result status code, MQ transaction id (if any) and the
+   * number of chunks sent.
+   * @return boolean true if success, false otherwise.
+   * @throws RejectedExecutionException if a chunk send was shed.
+   */
+  public boolean publishChunks(String id, 
+      InputStream in,
+      long length,
+      String channel,
+      String key,
+      ActiveMQServerResult result) {
     
-    for (int i = 0; i < _config.getPublishLimit(); i++) {
+    _logger.info("publish chunks id ",
+        id);
 
-      _logger.info("publish id ",
-          id,
-          " attempt ",
-          Integer.toString(i+1));
+    byte[] buffer = new byte[_config.getChunkSize()];
+
+    int total = (length < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, Math.max(1, (length + buffer.length - 1) / buffer.length)));
+
+    int sequence = 0;
+
+    boolean started = false;
+
+    try {
+
+      int next = in.read();
+
+      while (true) {
+
+        int size = 0;
+
+        if (next >= 0) {
+
+          buffer[size++] = (byte) next;
+        }
+
+        size = fill(in, buffer, size);
+
+        next = (size == buffer.length ? in.read() : -1);
+
+        boolean last = (next < 0);
+
+        if (sequence >= _config.getChunkLimit()) {
+
+          _logger.severe("publish chunks id ",
+              id,
+              " over chunk limit");
+
+          return abort(id, channel, key, sequence, started, result);
+        }
+
+        int chunk = sequence;
 
-      Map<String, ActiveMQServerAdaptor> adaptors1 = _adaptors;
+        int count = (last ? sequence + 1 : total);
+
+        int bytes = size;
+
+        started = true;
+
+        if (!send(id, 
+            channel, 
+            key, 
+            bytes, 
+            result, 
+            adaptor -> adaptor.publishChunk(id, buffer, bytes, chunk, count, last, result))) {
+
+          return abort(id, channel, key, sequence, started, result);
+        }
+
+        _chunks.increment();
+
+        _bytes.add(size);
+
+        sequence++;
+
+        if (last) {
+
+          break;
+        }
+      }
+
+    } catch (IOException e) {
+
+      _logger.exception(e);
+
+      return abort(id, channel, key, sequence, started, result);
+
+    } catch (RejectedExecutionException e) {
+
+      abort(id, channel, key, sequence, started, result);
+
+      throw e;
+
+    } finally {
+
+      result.setCount(sequence);
+    }
+
+    return true;
+  }
+
+  /**
+   * Method ends a failed chunk publish with an abort marker if any chunk
+   * may have been sent. The marker is sent on a best effort basis: if the
+   * channel is shed or the deadline has passed, consumers only learn of the
+   * failure from the missing chunks.
+   * 
+   * @param id client call ID, also the chunk group.
+   * @param channel channel to be delivered to.
+   * @param key shard key, used if the channel is sharded.
+   * @param sequence position of the first chunk not sent.
+   * @param started boolean true if a chunk send was attempted.
+   * @param result request deadline and timing.
+   * @return boolean false.
+   */
+  private boolean abort(String id, 
+      String channel, 
+      String key, 
+      int sequence, 
+      boolean started, 
+      ActiveMQServerResult result) {
+    
+    if (!started) {
       
-      ActiveMQServerAdaptor adaptor1 = adaptors1.get(channel);
+      return false;
+    }
+    
+    try {
       
-      if (!isConnected(adaptor1)) {
+      if (!send(id, 
+          channel, 
+          key, 
+          0, 
+          result, 
+          adaptor -> adaptor.abortChunks(id, sequence, result))) {
         
-        _logger.severe("publish id ",
+        _logger.severe("publish chunks id ",
             id,
-            " not connected");
+            " could not send abort marker");
+      }
+      
+    } catch (RejectedExecutionException e) {
+      
+      _logger.severe("publish chunks id ",
+          id,
+          " abort marker shed");
+    }
+    
+    return false;
+  }
 
-        if (!connect(id, channel)) {
-          
-          _logger.severe("publish id ",
-              id,
-              " could not connect");
+  /**
+   * Method reads from a stream until the buffer is full or the stream ends.
+   * 
+   * @param in stream.
+   * @param buffer buffer.
+   * @param offset number of bytes already in buffer.
+   * @return int number of bytes in buffer.
+   * @throws IOException .
+   */
+  private static int fill(InputStream in, byte[] buffer, int offset) throws IOException {
 
-          if (i + 1 < _config.getPublishLimit()) {
-          
-            ActiveMQServerTime.sleep(_config.getPublishInterval());
-          
-          }
-          
-          continue;
-        
-        }        
-        
+    while (offset < buffer.length) {
+
+      int read = in.read(buffer, offset, buffer.length - offset);
+
+      if (read < 0) {
+
+        break;
       }
 
-      Map<String, ActiveMQServerAdaptor> adaptors2 = _adaptors;
+      offset += read;
+    }
+
+    return offset;
+  }
+
+  /**
+   * Method pauses before the next publish attempt, unless the pause and a
+   * send would outlast the request deadline.
+   * 
+   * @param channel channel to be delivered to.
+   * @param i index of the failed attempt, from 0.
+   * @param result request deadline and timing of the retry stage.
+   * @return boolean true if the next attempt is made, false otherwise.
+   */
+  private boolean retry(String channel, int i, ActiveMQServerResult result) {
+
+    if (i + 1 >= _config.getPublishLimit()) {
+
+      return false;
+    }
+
+    if (!result.covers(TimeUnit.MILLISECONDS.toNanos(_config.getPublishInterval()) + _stageSend.getEstimate())) {
+
+      result.expire();
+
+      return false;
+    }
+
+    ActiveMQServerEvents.Retry event = new ActiveMQServerEvents.Retry();
+
+    event.begin();
+
+    long start = _stageRetry.begin();
+
+    ActiveMQServerTime.sleep(_config.getPublishInterval());
+
+    _stageRetry.end(start, true, result.getTiming());
+
+    if (event.shouldCommit()) {
+
+      event.channel = channel;
+
+      event.attempt = i + 1;
+
+      event.commit();
+    }
+
+    return true;
+  }
+
+  /**
+   * This interface is implemented by one send over a connected adaptor.
+   */
+  @FunctionalInterface
+  private interface Sender {
+
+    /**
+     * Method sends through adaptor.
+     * @param adaptor connected {@link ActiveMQServerAdaptor}.
+     * @return boolean true if success, false otherwise.
+     */
+    boolean send(ActiveMQServerAdaptor adaptor);
+  }
+
+  /**
+   * Method to run a send on the channel's broker, connecting, retrying and
+   * failing over as configured.
+   * 
+   * @param id client call ID.
+   * @param channel channel to be delivered to.
+   * @param key shard key, used if the channel is sharded.
+   * @param size payload size, for the flight recorder.
+   * @param result request deadline and timing of connect, send and retry stages.
+   * @param sender send to be run.
+   * @return boolean true if success, false otherwise.
+   * @throws RejectedExecutionException if the channel is shed.
+   */
+  private boolean send(String id, 
+      String channel,
+      String key,
+      int size,
+      ActiveMQServerResult result,
+      Sender sender) {
+
+    if (_flow.isShed(channel)) {
+
+      throw new RejectedExecutionException("channel " + channel + " shed");
+    }
+
+    String[] routes = _shards.get(channel);
+
+    int shard = (routes == null ? -1 : Math.floorMod(key.hashCode(), routes.length));
+
+    String route = (routes == null ? channel : routes[shard]);
+
+    ActiveMQServerEvents.Publish event = new ActiveMQServerEvents.Publish();
+
+    event.begin();
+
+    int attempts = 0;
+
+    boolean published = false;
+
+    boolean next = true;
+
+    while (!published &&
+        next) {
+
+      published = attempt(id, channel, shard, route, attempts, result, sender);
+
+      next = (!published && 
+          !result.getIsExpired() && 
+          retry(channel, attempts, result));
+
+      attempts++;
+    }
+
+    if (event.shouldCommit()) {
+
+      event.id = id;
+
+      event.channel = channel;
+
+      event.size = size;
+
+      event.attempts = attempts;
+
+      event.success = published;
+
+      event.commit();
+    }
+
+    if (!published) {
+
+      _logger.info("publish id ",
+          id,
+          (result.getIsExpired() ? " gave up at its deadline" : " could not publish"));
+    }
+
+    return published;
+  }
+
+  /**
+   * Method to run one publish attempt on the route's broker, connecting if
+   * needed. The attempt is skipped if the request deadline cannot cover it.
+   * 
+   * @param id client call ID.
+   * @param channel channel to be delivered to.
+   * @param shard shard index, or -1 if the channel is not sharded.
+   * @param route route id of channel and shard.
+   * @param i attempt index, from 0.
+   * @param result request deadline and timing of connect and send stages.
+   * @param sender send to be run.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean attempt(String id, 
+      String channel,
+      int shard,
+      String route,
+      int i,
+      ActiveMQServerResult result,
+      Sender sender) {
+
+    ActiveMQServerTiming timing = result.getTiming();
+
+    if (i > 0) {
+
+      _logger.info("publish id ",
+          id,
+          " attempt ",
+          Integer.toString(i+1));
+    }
+
+    ActiveMQServerBroker broker = select(route);
+
+    ActiveMQServerAdaptor adaptor = broker.getAdaptor(route);
+    
+    if (adaptor == null) {
       
-      ActiveMQServerAdaptor adaptor2 = adaptors2.get(channel);
+      _logger.severe("publish id ",
+          id,
+          " not connected");
+
+      if (!result.covers(_stageConnect.getEstimate() + _stageSend.getEstimate())) {
+
+        result.expire();
+
+        return false;
+      }
+
+      long start = _stageConnect.begin();
 
-      if (adaptor2 == null ||
-          !adaptor2.publish(id, message, code, mqid)) {
+      if (!_stageConnect.end(start, broker.connect(id, channel, shard, route), timing)) {
         
         _logger.severe("publish id ",
             id,
-            " could not publish");
+            " could not connect");
         
-        if (i + 1 < _config.getPublishLimit()) {
+        return false;
+      }        
+      
+      adaptor = broker.getAdaptor(route);
+    }
 
-          ActiveMQServerTime.sleep(_config.getPublishInterval());
+    if (!result.covers(_stageSend.getEstimate())) {
 
-        }
-        
-        continue;  
+      result.expire();
+
+      return false;
+    }
+
+    long start = _stageSend.begin();
+
+    boolean published = false;
+
+    if (adaptor != null &&
+        adaptor.acquire()) {
+
+      try {
+
+        published = sender.send(adaptor);
+
+      } finally {
+
+        adaptor.release();
       }
+    }
+
+    long nanos = System.nanoTime() - start;
 
+    broker.record(published, nanos);
+
+    _flow.record(channel, nanos, published);
+
+    if (!_stageSend.end(start, published, timing)) {
+      
       _logger.severe("publish id ",
           id,
-          " published");
-
-      return true;
+          " could not publish");
       
+      return false;  
     }
 
     _logger.info("publish id ",
         id,
-        " could not publish");
-    
-    return false;
+        " published");
+
+    return true;
   }
 
   /**
-   * Method to create or recreate connection to MQ Broker.
-   * @param id client call ID
-   * @param channel channel id to be used.
-   * @return boolean true for success, false otherwise.
+   * This interface is implemented by the delivery of received messages to
+   * the client.
    */
-  synchronized private boolean connect(String id, String channel) {
+  @FunctionalInterface
+  public interface Receiver {
+
+    /**
+     * Method delivers messages.
+     * @param messages received message texts.
+     * @return boolean true if the client got them, false otherwise.
+     */
+    boolean deliver(List<String> messages);
+  }
 
-    _logger.info("connecting ...",
+  /**
+   * Method to receive messages from Broker through the channel's consumer pool.
+   * The messages are acknowledged only once receiver has delivered them, and
+   * are redelivered to a later request otherwise.
+   * 
+   * @param id client call ID.
+   * @param channel channel to be read from.
+   * @param max max number of messages to be received.
+   * @param wait max time (ms) to wait for messages.
+   * @param messages received message texts are appended to this list.
+   * @param receiver delivery of the received messages.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean consume(String id, 
+      String channel,
+      int max,
+      long wait,
+      List<String> messages,
+      Receiver receiver) {
+    
+    _logger.info("consume id ",
         id);
+    
+    long deadline = System.currentTimeMillis() + wait;
+    
+    ActiveMQServerConsumerPool pool = _consumers.computeIfAbsent(channel, 
+        c -> new ActiveMQServerConsumerPool(_context, 
+            _factory, 
+            c, 
+            _config.getConsumePoolSize(), 
+            _config.getConsumePrefetch()));
+    
+    ActiveMQServerConsumer consumer = pool.borrow(wait);
+    
+    if (consumer == null) {
+      
+      _logger.severe("consume id ",
+          id,
+          " could not get consumer");
+      
+      return false;
+    }
+    
+    try {
+      
+      if (!consumer.consume(id, 
+          max, 
+          Math.max(0, deadline - System.currentTimeMillis()), 
+          messages)) {
+        
+        _logger.severe("consume id ",
+            id,
+            " could not consume");
+        
+        return false;
+      }
+      
+      if (!receiver.deliver(messages) ||
+          !consumer.acknowledge()) {
+        
+        _logger.severe("consume id ",
+            id,
+            " could not deliver");
+        
+        return false;
+      }
+      
+    } finally {
+      
+      pool.release(consumer);
+    }
+    
+    _logger.info("consume id ",
+        id,
+        " consumed ",
+        Integer.toString(messages.size()));
+    
+    return true;
+  }
 
-    Map<String, ActiveMQServerAdaptor> adaptors1 = _adaptors;
+  /**
+   * Method to attach a subscriber to the channel's shared topic subscription.
+   * The subscription is created on first use and recreated once it has
+   * been closed, either because it became invalid or because its last
+   * subscriber detached. It is created outside the topic map, so a slow
+   * broker does not block other channels; a subscription that loses the
+   * race to be registered is closed again.
+   * 
+   * @param id client call ID.
+   * @param channel topic channel to be subscribed to.
+   * @param subscriber {@link ActiveMQServerSubscriber} to be attached.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean subscribe(String id, 
+      String channel,
+      ActiveMQServerSubscriber subscriber) {
     
-    ActiveMQServerAdaptor adaptor1 = adaptors1.get(channel);
+    _logger.info("subscribe id ",
+        id);
+    
+    while (true) {
+      
+      ActiveMQServerTopic topic = _topics.get(channel);
+      
+      if (topic == null) {
+        
+        ActiveMQServerTopic created = new ActiveMQServerTopic(_context, 
+            _factory, 
+            channel, 
+            _topics);
+        
+        if (!created.getIsValid()) {
+          
+          _logger.severe("subscribe id ",
+              id,
+              " could not subscribe");
+          
+          return false;
+        }
+        
+        topic = _topics.putIfAbsent(channel, created);
+        
+        if (topic != null) {
+          
+          created.close();
+          
+        } else {
+          
+          topic = created;
+        }
+      }
+      
+      if (topic.add(subscriber)) {
+        
+        return true;
+      }
+      
+      _topics.remove(channel, topic);
+    }
+  }
 
-    if (isConnected(adaptor1)) {
+  /**
+   * Method returns the broker a route publishes to. The route keeps its
+   * broker while that broker is healthy, otherwise it moves to the healthy
+   * broker with the highest weighted rendezvous score. If no broker is
+   * healthy all of them are considered. A route that moves is retired on
+   * its former broker, so the old adaptor is closed and not repaired.
+   * 
+   * @param channel route id.
+   * @return {@link ActiveMQServerBroker} selected broker.
+   */
+  private ActiveMQServerBroker select(String route) {
 
-      return true;
-    
+    ActiveMQServerBroker broker = _assignments.get(route);
+
+    if (broker != null &&
+        broker.getIsHealthy()) {
+
+      return broker;
     }
 
-    for (int i = 0; i < _config.getConnectLimit(); i++) {
-      
-      try {
+    ActiveMQServerBroker selected = null;
 
-        ActiveMQServerAdaptor adaptor2 = new ActiveMQServerAdaptor(_context, 
-            _config.getFactoryName(),
-            channel);
+    double best = -1;
 
-        if (adaptor2.getIsValid()) {
+    for (int pass = 0; pass < 2 && selected == null; pass++) {
 
-          HashMap<String, ActiveMQServerAdaptor> adaptors2 = new HashMap<String, ActiveMQServerAdaptor>();
+      for (ActiveMQServerBroker candidate : _brokers) {
 
-          adaptors2.putAll(adaptors1);
-          
-          adaptors2.put(channel, adaptor2);
-          
-          _adaptors = adaptors2;
-          
-          _logger.info("connect id ",
-              id,
-              " got valid adaptor");
+        if (pass == 0 &&
+            !candidate.getIsHealthy()) {
 
-          return true;
-          
+          continue;
         }
 
-      } catch (Exception e) {
+        double score = candidate.score(route);
 
-        _logger.exception(e);
+        if (score > best) {
 
-      }
+          best = score;
 
-      ActiveMQServerTime.sleep(_config.getConnectInterval());
-      
+          selected = candidate;
+        }
+      }
     }
-    
-    _logger.severe("connect id ",
-        id,
-        " could not get valid adaptor");
-    
-    _logger.severe("connect failed ",
-        id);
-    
-    return false;
-  }
 
-  /**
-  * Method to test if an indexed adaptor exists and if it is valid.
-  * @param adaptor to be checked.
-  * @return boolean indicating whether valid adaptor was found or not.
-  */
-  private boolean isConnected(ActiveMQServerAdaptor adaptor) {
-    
-    if (adaptor == null) {
-      
-      return false;
- 
+    if (selected != broker) {
+
+      _logger.info("route ",
+          route,
+          " assigned to broker ",
+          selected.getName());
+
+      _assignments.put(route, selected);
+
+      selected.assign(route);
+
+      if (broker != null) {
+
+        broker.retire(route);
+      }
     }
-    
-    return adaptor.getIsValid();
+
+    return selected;
   }
 
   /**
@@ -247,9 +929,74 @@ public class ActiveMQServerConnection {
   private Context _context = null;
   
   /**
-   * MQ Adaptor to MQ JMS Api
+   * Connection Factory of the first broker, used by consumers and subscriptions.
+   */  
+  private ConnectionFactory _factory = null;
+
+  /**
+   * Embedded broker, null in remote broker mode.
+   */  
+  private ActiveMQServerEmbedded _embedded = null;
+
+  /**
+   * Broker health monitor.
+   */
+  private ActiveMQServerMonitor _monitor = null;
+
+  /**
+   * Producer flow control record of the channels.
+   */
+  private ActiveMQServerFlow _flow = new ActiveMQServerFlow(Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+
+  /**
+   * Brokers in configuration order.
+   */  
+  private ActiveMQServerBroker[] _brokers = new ActiveMQServerBroker[0];
+
+  /**
+   * Publishing broker indexed by route.
+   */  
+  final private Map<String, ActiveMQServerBroker> _assignments = new ConcurrentHashMap<String, ActiveMQServerBroker>();
+
+  /**
+   * Shard route ids indexed by sharded channel. Only written during init.
+   */  
+  final private Map<String, String[]> _shards = new HashMap<String, String[]>();
+
+  /**
+   * Consumer pools indexed by channel.
+   */  
+  final private Map<String, ActiveMQServerConsumerPool> _consumers = new ConcurrentHashMap<String, ActiveMQServerConsumerPool>();
+
+  /**
+   * Broker connect stage.
+   */  
+  final private static ActiveMQServerStage _stageConnect = new ActiveMQServerStage("connect");
+
+  /**
+   * Broker send stage.
+   */  
+  final private static ActiveMQServerStage _stageSend = new ActiveMQServerStage("send");
+
+  /**
+   * Pause between publish attempts.
+   */  
+  final private static ActiveMQServerStage _stageRetry = new ActiveMQServerStage("retry");
+
+  /**
+   * Chunk messages published.
+   */  
+  final private LongAdder _chunks = ActiveMQServerMetrics.counter("upload.chunks");
+
+  /**
+   * Chunk bytes published.
+   */  
+  final private LongAdder _bytes = ActiveMQServerMetrics.counter("upload.bytes");
+
+  /**
+   * Topic subscriptions indexed by channel.
    */  
-  private Map<String, ActiveMQServerAdaptor> _adaptors = new HashMap<String, ActiveMQServerAdaptor>();
+  final private Map<String, ActiveMQServerTopic> _topics = new ConcurrentHashMap<String, ActiveMQServerTopic>();
 
   /**
    * Configuration object. 
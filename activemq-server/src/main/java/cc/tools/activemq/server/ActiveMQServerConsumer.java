@@ -0,0 +1,325 @@
+package cc.tools.activemq.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.naming.Context;
+
+import org.apache.activemq.ActiveMQConnection;
+
+/**
+ * This class implements a wrapper for a prefetching Active MQ consumer. Objects
+ * are owned by a {@link ActiveMQServerConsumerPool} and used by one request at
+ * a time.
+ * <p>
+ * The session acknowledges by client, so received messages stay with the
+ * broker until the request has delivered them: {@link #acknowledge()} after
+ * the response is written, {@link #recover()} if it could not be.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerConsumer implements ExceptionListener {
+
+  /**
+   * Constructor.
+   * @param context Initial Naming context.
+   * @param factory MQ Connection Factory.
+   * @param queue MQ Queue name, or comma separated names.
+   * @param prefetch number of messages the broker may push ahead of receive calls.
+   */
+  public ActiveMQServerConsumer(Context context, ConnectionFactory factory, String queue, int prefetch) {
+
+    try {
+
+      _factory = factory;
+
+      _connection = _factory.createConnection();
+
+      _open.increment();
+
+      if (_connection instanceof ActiveMQConnection) {
+
+        ((ActiveMQConnection) _connection).getPrefetchPolicy().setAll(prefetch);
+
+      }
+
+      _connection.setExceptionListener(this);
+
+      _session = _connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+
+      _consumer = _session.createConsumer(ActiveMQServerDestination.lookup(context, queue));
+
+      _connection.start();
+
+      _isValid.set(true);
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      close();
+    }
+
+  }
+
+  /**
+   * Method to receive messages from MQ Broker. Blocks for up to wait ms for
+   * the first message, then drains whatever has already been prefetched.
+   * Nothing is received if max is not positive. Received messages are not
+   * acknowledged until {@link #acknowledge()}.
+   *
+   * @param id client call ID.
+   * @param max max number of messages to be received.
+   * @param wait max time (ms) to wait for the first message.
+   * @param messages received message texts are appended to this list.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean consume(String id, int max, long wait, List<String> messages) {
+
+    if (max <= 0) {
+
+      return true;
+    }
+
+    try {
+
+      Message message = (wait > 0 ? _consumer.receive(wait) : _consumer.receiveNoWait());
+
+      while (message != null) {
+
+        _received = message;
+
+        if (message instanceof TextMessage) {
+
+          messages.add(((TextMessage) message).getText());
+
+        } else {
+
+          _logger.severe("consume id ",
+              id,
+              " skipped non text message");
+        }
+
+        if (messages.size() >= max) {
+
+          break;
+        }
+
+        message = _consumer.receiveNoWait();
+      }
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      _isValid.set(false);
+    }
+
+    return false;
+  }
+
+  /**
+   * Method acknowledges every message received since the last
+   * acknowledgement or recovery.
+   *
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean acknowledge() {
+
+    Message received = _received;
+
+    _received = null;
+
+    if (received == null) {
+
+      return true;
+    }
+
+    try {
+
+      received.acknowledge();
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      _isValid.set(false);
+    }
+
+    return false;
+  }
+
+  /**
+   * Method hands every message received since the last acknowledgement back
+   * to the broker for redelivery.
+   */
+  public void recover() {
+
+    if (_received == null) {
+
+      return;
+    }
+
+    _received = null;
+
+    try {
+
+      _session.recover();
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      _isValid.set(false);
+    }
+  }
+
+  /**
+   * Method to close down MQ resources. Messages prefetched or received but
+   * not acknowledged are released back to the broker.
+   */
+  public void close() {
+
+    _isValid.set(false);
+
+    if (!_isClosed.compareAndSet(false, true)) {
+
+      return;
+    }
+
+    try {
+
+      if (_consumer != null) {
+
+        _consumer.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    try {
+
+      if (_session != null) {
+
+        _session.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    try {
+
+      if (_connection != null) {
+
+        _open.decrement();
+
+        _connection.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    _consumer = null;
+
+    _factory = null;
+  }
+
+  /**
+   * Method is the exception callback for implemented
+   * Interface {@link ExceptionListener} generated by error
+   * in MQ consume framework.
+   * @param e exception throw by MQ.
+   */
+  @Override
+  public void onException(JMSException e) {
+
+    _logger.exception(e);
+
+    _isValid.set(false);
+  }
+
+  /**
+   * Method to check whether consumer object is valid.
+   * @return boolean indicating validity.
+   */
+  public boolean getIsValid() {
+
+    return _isValid.get();
+
+  }
+
+  /**
+   * boolean indicating whether this {@link ActiveMQServerConsumer} object is in a valid
+   * state.
+   */
+  private AtomicBoolean _isValid = new AtomicBoolean(false);
+
+  /**
+   * JMS Connection Factory.
+   */
+  private ConnectionFactory _factory = null;
+
+  /**
+   * JMS Connection.
+   */
+  private Connection _connection = null;
+
+  /**
+   * JMS Session.
+   */
+  private Session _session = null;
+
+  /**
+   * JMS Consumer.
+   */
+  private MessageConsumer _consumer = null;
+
+  /**
+   * Last message received and not yet acknowledged, or null.
+   */
+  private Message _received = null;
+
+  /**
+   * boolean indicating whether MQ resources have been closed.
+   */
+  final private AtomicBoolean _isClosed = new AtomicBoolean(false);
+
+  /**
+   * Metric '{@value _METRIC_OPEN}' counting open consumer connections.
+   */
+  final public static String _METRIC_OPEN = "jms.consumer.open";
+
+  /**
+   * Open consumer connections, published as '{@value _METRIC_OPEN}'.
+   */
+  final private static LongAdder _open = ActiveMQServerMetrics.counter(_METRIC_OPEN);
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerConsumer.class.getName());
+}
@@ -0,0 +1,174 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.ConnectionFactory;
+import javax.naming.Context;
+
+/**
+ * This class implements a bounded pool of {@link ActiveMQServerConsumer}
+ * objects for one channel. Consumers are created lazily up to the pool size
+ * and handed to one request at a time, so HTTP requests never create a JMS
+ * consumer of their own.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerConsumerPool {
+
+  /**
+   * Constructor.
+   * @param context Initial Naming context.
+   * @param factory MQ Connection Factory.
+   * @param channel MQ Queue name.
+   * @param size max number of consumers in pool.
+   * @param prefetch consumer prefetch size.
+   */
+  public ActiveMQServerConsumerPool(Context context, ConnectionFactory factory, String channel, int size, int prefetch) {
+
+    _context = context;
+
+    _factory = factory;
+
+    _channel = channel;
+
+    _size = size;
+
+    _prefetch = prefetch;
+
+    _idle = new ArrayBlockingQueue<ActiveMQServerConsumer>(size);
+
+  }
+
+  /**
+   * Method to take a consumer from the pool. An idle consumer is preferred, a
+   * new one is created while the pool is below its size, otherwise the caller
+   * waits for a consumer to be returned.
+   *
+   * @param wait max time (ms) to wait for a consumer.
+   * @return {@link ActiveMQServerConsumer} if success, null otherwise.
+   */
+  public ActiveMQServerConsumer borrow(long wait) {
+
+    ActiveMQServerConsumer consumer = _idle.poll();
+
+    if (consumer != null) {
+
+      return consumer;
+    }
+
+    if (_count.incrementAndGet() <= _size) {
+
+      consumer = new ActiveMQServerConsumer(_context, _factory, _channel, _prefetch);
+
+      if (consumer.getIsValid()) {
+
+        return consumer;
+      }
+
+      _count.decrementAndGet();
+
+      return null;
+    }
+
+    _count.decrementAndGet();
+
+    try {
+
+      return _idle.poll(wait, TimeUnit.MILLISECONDS);
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+    }
+
+    return null;
+  }
+
+  /**
+   * Method to return a consumer to the pool. Messages it received and did not
+   * acknowledge are recovered first. Invalid consumers are closed and their
+   * slot is freed for a replacement.
+   *
+   * @param consumer {@link ActiveMQServerConsumer} previously borrowed.
+   */
+  public void release(ActiveMQServerConsumer consumer) {
+
+    consumer.recover();
+
+    if (consumer.getIsValid() &&
+        !_isClosed &&
+        _idle.offer(consumer)) {
+
+      return;
+    }
+
+    consumer.close();
+
+    _count.decrementAndGet();
+  }
+
+  /**
+   * Method to close all idle consumers. Borrowed consumers are closed when
+   * they are returned.
+   */
+  public void close() {
+
+    _isClosed = true;
+
+    ActiveMQServerConsumer consumer = _idle.poll();
+
+    while (consumer != null) {
+
+      consumer.close();
+
+      _count.decrementAndGet();
+
+      consumer = _idle.poll();
+    }
+  }
+
+  /**
+   * boolean indicating whether the pool has been closed.
+   */
+  private volatile boolean _isClosed = false;
+
+  /**
+   * Idle consumers.
+   */
+  final private BlockingQueue<ActiveMQServerConsumer> _idle;
+
+  /**
+   * Number of consumers created and not yet closed.
+   */
+  final private AtomicInteger _count = new AtomicInteger();
+
+  /**
+   * JMS Context.
+   */
+  final private Context _context;
+
+  /**
+   * MQ Connection Factory.
+   */
+  final private ConnectionFactory _factory;
+
+  /**
+   * MQ channel name.
+   */
+  final private String _channel;
+
+  /**
+   * Max number of consumers.
+   */
+  final private int _size;
+
+  /**
+   * Consumer prefetch size.
+   */
+  final private int _prefetch;
+}
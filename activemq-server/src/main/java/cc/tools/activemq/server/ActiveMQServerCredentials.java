@@ -0,0 +1,438 @@
+package cc.tools.activemq.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * This class implements an immutable multi-user credential store. Passwords
+ * are kept as salted PBKDF2 hashes, one user per line in the form
+ * <code>user:iterations:salt:hash</code> with salt and hash base64 encoded.
+ * <p>
+ * Verifying a PBKDF2 hash is deliberately slow, so a successful check is
+ * remembered as a salted SHA-256 digest of the password and later requests
+ * by the same user are checked against that digest instead. A reload
+ * replaces the whole store, and with it the cache.
+ * <p>
+ * A failed check backs its user name off for the remote address that sent
+ * it, for a time doubling with each failure in a row. During the backoff
+ * passwords from that address other than a remembered one are rejected
+ * without hashing. Repeated wrong passwords therefore cost little, while a
+ * client guessing a user's password cannot lock that user out of other
+ * addresses. Unknown users are checked against a dummy hash, so they take
+ * as long as known ones.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerCredentials {
+
+  /**
+   * Constructor.
+   */
+  public ActiveMQServerCredentials() {
+  }
+
+  /**
+   * Method loads users from text in store format. Blank lines and lines
+   * starting with '#' are ignored.
+   *
+   * @param text store text.
+   * @return boolean true if at least one user was loaded and no line was
+   *         malformed, false otherwise.
+   */
+  public boolean load(String text) {
+
+    for (String line : text.split("\n")) {
+
+      String data = line.trim();
+
+      if (data.isEmpty() ||
+          data.startsWith("#")) {
+
+        continue;
+      }
+
+      String[] fields = data.split(":");
+
+      if (fields.length != 4 ||
+          fields[0].isBlank()) {
+
+        _logger.severe("malformed credentials line");
+
+        return false;
+      }
+
+      try {
+
+        Entry entry = new Entry(Integer.parseInt(fields[1]),
+            Base64.getDecoder().decode(fields[2]),
+            Base64.getDecoder().decode(fields[3]));
+
+        _entries.put(fields[0].toLowerCase(Locale.ROOT), entry);
+
+      } catch (Exception e) {
+
+        _logger.exception(e);
+
+        return false;
+      }
+    }
+
+    return !_entries.isEmpty();
+  }
+
+  /**
+   * Method adds a user with a plain-text password, hashing it with a fresh
+   * salt.
+   *
+   * @param user user name.
+   * @param password user password.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean add(String user, String password) {
+
+    try {
+
+      byte[] salt = salt();
+
+      _entries.put(user.toLowerCase(Locale.ROOT),
+          new Entry(_ITERATIONS, salt, hash(password, salt, _ITERATIONS)));
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    return false;
+  }
+
+  /**
+   * Method checks credentials. User names are case insensitive, passwords
+   * are not.
+   *
+   * @param user user ID.
+   * @param password user password.
+   * @param address client remote address.
+   * @return boolean true if user credentials are correct, false otherwise.
+   */
+  public boolean validate(String user, String password, String address) {
+
+    if (user == null ||
+        password == null) {
+
+      return false;
+    }
+
+    String key = user.toLowerCase(Locale.ROOT);
+
+    Entry entry = _entries.get(key);
+
+    try {
+
+      if (entry != null) {
+
+        byte[] verified = _verified.getIfPresent(key);
+
+        if (verified != null &&
+            MessageDigest.isEqual(verified, digest(password, entry._salt))) {
+
+          return true;
+        }
+      }
+
+      String client = address + '\0' + key;
+
+      Failure failure = _failures.getIfPresent(client);
+
+      if (failure != null &&
+          failure._until - System.nanoTime() > 0) {
+
+        return false;
+      }
+
+      Entry checked = (entry == null ? _UNKNOWN : entry);
+
+      if (!MessageDigest.isEqual(checked._hash, hash(password, checked._salt, checked._iterations)) ||
+          entry == null) {
+
+        _failures.asMap().merge(client, new Failure(1), (last, next) -> new Failure(last._count + 1));
+
+        return false;
+      }
+
+      _failures.invalidate(client);
+
+      _verified.put(key, digest(password, entry._salt));
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    return false;
+  }
+
+  /**
+   * Method to get number of users.
+   * @return int number of users.
+   */
+  public int size() {
+    return _entries.size();
+  }
+
+  /**
+   * Method encodes one store line for user and password.
+   *
+   * @param user user name.
+   * @param password user password.
+   * @return String store line.
+   * @throws Exception .
+   */
+  public static String encode(String user, String password) throws Exception {
+
+    byte[] salt = salt();
+
+    return user +
+        ":" +
+        _ITERATIONS +
+        ":" +
+        Base64.getEncoder().encodeToString(salt) +
+        ":" +
+        Base64.getEncoder().encodeToString(hash(password, salt, _ITERATIONS));
+  }
+
+  /**
+   * Method prints a store line for the user and password given as arguments.
+   *
+   * @param args user name and password.
+   * @throws Exception .
+   */
+  public static void main(String[] args) throws Exception {
+
+    if (args.length != 2) {
+
+      System.err.println("usage: ActiveMQServerCredentials <user> <password>");
+
+      return;
+    }
+
+    System.out.println(encode(args[0], args[1]));
+  }
+
+  /**
+   * Method computes the PBKDF2 hash of password.
+   *
+   * @param password user password.
+   * @param salt user salt.
+   * @param iterations PBKDF2 iteration count.
+   * @return byte[] hash.
+   * @throws Exception .
+   */
+  private static byte[] hash(String password, byte[] salt, int iterations) throws Exception {
+
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, _HASH_BITS);
+
+    try {
+
+      return SecretKeyFactory.getInstance(_ALGORITHM).generateSecret(spec).getEncoded();
+
+    } finally {
+
+      spec.clearPassword();
+    }
+  }
+
+  /**
+   * Method computes the fast salted digest of password held in the verified
+   * cache.
+   *
+   * @param password user password.
+   * @param salt user salt.
+   * @return byte[] digest.
+   * @throws Exception .
+   */
+  private static byte[] digest(String password, byte[] salt) throws Exception {
+
+    MessageDigest digest = MessageDigest.getInstance(_DIGEST);
+
+    digest.update(salt);
+
+    return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Method generates a random salt.
+   * @return byte[] salt.
+   */
+  private static byte[] salt() {
+
+    byte[] salt = new byte[_SALT_BYTES];
+
+    _random.nextBytes(salt);
+
+    return salt;
+  }
+
+  /**
+   * This class holds the hash of one user.
+   */
+  private static class Entry {
+
+    /**
+     * Constructor.
+     * @param iterations PBKDF2 iteration count.
+     * @param salt user salt.
+     * @param hash PBKDF2 hash.
+     */
+    private Entry(int iterations, byte[] salt, byte[] hash) {
+
+      _iterations = iterations;
+
+      _salt = salt;
+
+      _hash = hash;
+    }
+
+    /**
+     * PBKDF2 iteration count.
+     */
+    final private int _iterations;
+
+    /**
+     * User salt.
+     */
+    final private byte[] _salt;
+
+    /**
+     * PBKDF2 hash.
+     */
+    final private byte[] _hash;
+  }
+
+  /**
+   * This class holds the failed checks in a row of one user name.
+   */
+  private static class Failure {
+
+    /**
+     * Constructor.
+     * @param count number of failed checks in a row.
+     */
+    private Failure(int count) {
+
+      _count = count;
+
+      _until = System.nanoTime() +
+          TimeUnit.MILLISECONDS.toNanos(Math.min(_BACKOFF_MAX, (long) _BACKOFF_MIN << Math.min(count - 1, 16)));
+    }
+
+    /**
+     * Number of failed checks in a row.
+     */
+    final private int _count;
+
+    /**
+     * Time ({@link System#nanoTime()}) the user name is backed off until.
+     */
+    final private long _until;
+  }
+
+  /**
+   * Password hash algorithm '{@value _ALGORITHM}'.
+   */
+  final public static String _ALGORITHM = "PBKDF2WithHmacSHA256";
+
+  /**
+   * Verified cache digest algorithm '{@value _DIGEST}'.
+   */
+  final public static String _DIGEST = "SHA-256";
+
+  /**
+   * PBKDF2 iteration count '{@value _ITERATIONS}' for new hashes.
+   */
+  final public static int _ITERATIONS = 310000;
+
+  /**
+   * Hash length in bits.
+   */
+  final private static int _HASH_BITS = 256;
+
+  /**
+   * Salt length in bytes.
+   */
+  final private static int _SALT_BYTES = 16;
+
+  /**
+   * Time (minutes) a verified password is remembered for.
+   */
+  final private static int _VERIFIED_TTL = 10;
+
+  /**
+   * Max number of verified passwords remembered.
+   */
+  final private static int _VERIFIED_SIZE = 10000;
+
+  /**
+   * Backoff (ms) after the first failed check.
+   */
+  final private static int _BACKOFF_MIN = 250;
+
+  /**
+   * Max backoff (ms) after failed checks in a row.
+   */
+  final private static int _BACKOFF_MAX = 30000;
+
+  /**
+   * Source of salts.
+   */
+  final private static SecureRandom _random = new SecureRandom();
+
+  /**
+   * Dummy hash of a random password, checked for unknown users.
+   */
+  final private static Entry _UNKNOWN = new Entry(_ITERATIONS, salt(), salt());
+
+  /**
+   * User hashes indexed by lower case user name. Only written while loading.
+   */
+  final private Map<String, Entry> _entries = new HashMap<String, Entry>();
+
+  /**
+   * Digests of recently verified passwords indexed by lower case user name.
+   */
+  final private Cache<String, byte[]> _verified = CacheBuilder.newBuilder()
+      .maximumSize(_VERIFIED_SIZE)
+      .expireAfterWrite(_VERIFIED_TTL, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * Failed checks in a row indexed by remote address and lower case user
+   * name, including unknown ones.
+   */
+  final private Cache<String, Failure> _failures = CacheBuilder.newBuilder()
+      .maximumSize(_VERIFIED_SIZE)
+      .expireAfterWrite(_VERIFIED_TTL, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerCredentials.class.getName());
+}
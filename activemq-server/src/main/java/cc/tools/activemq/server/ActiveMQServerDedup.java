@@ -0,0 +1,184 @@
+package cc.tools.activemq.server;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * This class implements a bounded, time-windowed record of recent publish
+ * operations indexed by client idempotency key. A retried request finds the
+ * entry of the original request and is answered with its result instead of
+ * being published again.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerDedup {
+
+  /**
+   * Constructor.
+   * @param size max number of keys remembered.
+   * @param window time (ms) a key is remembered for.
+   */
+  public ActiveMQServerDedup(int size, int window) {
+
+    _entries = CacheBuilder.newBuilder()
+        .maximumSize(size)
+        .expireAfterWrite(window, TimeUnit.MILLISECONDS)
+        .build();
+
+  }
+
+  /**
+   * Method builds the idempotency key of a client publish. Each part is
+   * prefixed with its length, so no choice of characters in one part can
+   * make two different requests share a key. User names are case
+   * insensitive, as in {@link ActiveMQServerCredentials}.
+   *
+   * @param user user ID.
+   * @param pid client process id.
+   * @param sequence client sequence number.
+   * @return String idempotency key.
+   */
+  public static String key(String user, String pid, String sequence) {
+
+    StringBuilder key = new StringBuilder();
+
+    for (String part : new String[] { user.toLowerCase(Locale.ROOT), pid, sequence }) {
+
+      key.append(part.length())
+          .append(':')
+          .append(part);
+    }
+
+    return key.toString();
+  }
+
+  /**
+   * Method claims key for a new operation. If key is not known entry is
+   * recorded for it and returned, making the caller its owner. Otherwise the
+   * entry of the original operation is returned.
+   *
+   * @param key client idempotency key.
+   * @param entry new {@link Entry} to be recorded.
+   * @return {@link Entry} for key, which is entry if the caller owns it.
+   */
+  public Entry claim(String key, Entry entry) {
+
+    Entry existing = _entries.asMap().putIfAbsent(key, entry);
+
+    return (existing != null ? existing : entry);
+  }
+
+  /**
+   * Method records the result of the operation owning entry and releases any
+   * duplicates waiting on it. Failed operations are forgotten so a later
+   * retry is published again.
+   *
+   * @param key client idempotency key.
+   * @param entry {@link Entry} owned by caller.
+   * @param id server operation ID.
+   * @param code result status code.
+   * @param mqid MQ transaction id.
+   * @param success boolean true if operation was published.
+   */
+  public void complete(String key, Entry entry, String id, String code, String mqid, boolean success) {
+
+    entry._id = id;
+
+    entry._code = code;
+
+    entry._mqid = mqid;
+
+    if (!success) {
+
+      _entries.asMap().remove(key, entry);
+    }
+
+    entry._latch.countDown();
+  }
+
+  /**
+   * This class holds the result of one operation.
+   */
+  public static class Entry {
+
+    /**
+     * Constructor.
+     */
+    public Entry() {
+    }
+
+    /**
+     * Method waits for the owning operation to complete.
+     * @param wait max time (ms) to wait.
+     * @return boolean true if result is available, false otherwise.
+     */
+    public boolean await(long wait) {
+
+      try {
+
+        return _latch.await(wait, TimeUnit.MILLISECONDS);
+
+      } catch (InterruptedException e) {
+
+        Thread.currentThread().interrupt();
+      }
+
+      return false;
+    }
+
+    /**
+     * Method to get server operation ID.
+     * @return String operation ID.
+     */
+    public String getId() {
+      return _id;
+    }
+
+    /**
+     * Method to get result status code.
+     * @return String status code.
+     */
+    public String getCode() {
+      return _code;
+    }
+
+    /**
+     * Method to get MQ transaction id.
+     * @return String MQ transaction id.
+     */
+    public String getMqid() {
+      return _mqid;
+    }
+
+    /**
+     * Released once result is set.
+     */
+    final private CountDownLatch _latch = new CountDownLatch(1);
+
+    /**
+     * Server operation ID.
+     */
+    private volatile String _id = null;
+
+    /**
+     * Result status code.
+     */
+    private volatile String _code = null;
+
+    /**
+     * MQ transaction id.
+     */
+    private volatile String _mqid = null;
+  }
+
+  /**
+   * Entries indexed by client idempotency key.
+   */
+  final private Cache<String, Entry> _entries;
+}
@@ -0,0 +1,131 @@
+package cc.tools.activemq.server;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+
+/**
+ * This class implements channel to destination resolution. A channel is
+ * either one destination name or a comma separated list of names, which is
+ * resolved to an ActiveMQ composite destination so the broker fans a single
+ * send out to every member.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerDestination {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerDestination() {
+  }
+
+  /**
+   * Method resolves a channel to its destination. A list of queues resolves
+   * to a composite queue, a list of topics to a composite topic, and a mixed
+   * list to a composite of qualified names such as
+   * <code>queue://A,topic://B</code>.
+   *
+   * @param context Initial Naming context.
+   * @param channel channel name or comma separated channel names.
+   * @return {@link Destination} resolved destination.
+   * @throws NamingException if a name is not bound.
+   * @throws JMSException if a listed name is not an ActiveMQ destination.
+   */
+  public static Destination lookup(Context context, String channel) throws NamingException, JMSException {
+
+    if (!isComposite(channel)) {
+
+      return (Destination) context.lookup(channel);
+    }
+
+    StringBuilder physical = new StringBuilder();
+
+    StringBuilder qualified = new StringBuilder();
+
+    boolean queues = true;
+
+    boolean topics = true;
+
+    for (String name : channel.split(_SEPARATOR)) {
+
+      Object object = context.lookup(name);
+
+      if (!(object instanceof ActiveMQDestination)) {
+
+        throw new JMSException("channel " + name + " is not an ActiveMQ destination");
+      }
+
+      ActiveMQDestination destination = (ActiveMQDestination) object;
+
+      queues &= destination.isQueue();
+
+      topics &= destination.isTopic();
+
+      if (physical.length() > 0) {
+
+        physical.append(_SEPARATOR);
+
+        qualified.append(_SEPARATOR);
+      }
+
+      physical.append(destination.getPhysicalName());
+
+      qualified.append(destination.getQualifiedName());
+    }
+
+    if (queues) {
+
+      return new ActiveMQQueue(physical.toString());
+    }
+
+    if (topics) {
+
+      return new ActiveMQTopic(physical.toString());
+    }
+
+    return new ActiveMQQueue(qualified.toString());
+  }
+
+  /**
+   * Method returns whether a channel lists several destinations.
+   * @param channel channel name.
+   * @return boolean true if composite.
+   */
+  public static boolean isComposite(String channel) {
+
+    return channel.indexOf(_SEPARATOR.charAt(0)) >= 0;
+  }
+
+  /**
+   * Method returns the number of destinations a channel lists.
+   * @param channel channel name.
+   * @return int number of destinations.
+   */
+  public static int getCount(String channel) {
+
+    int count = 1;
+
+    for (int i = 0; i < channel.length(); i++) {
+
+      if (channel.charAt(i) == _SEPARATOR.charAt(0)) {
+
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Channel list separator '{@value _SEPARATOR}'.
+   */
+  final public static String _SEPARATOR = ",";
+}
@@ -0,0 +1,176 @@
+package cc.tools.activemq.server;
+
+import java.io.File;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.network.NetworkConnector;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+
+/**
+ * This class implements a broker embedded in the servlet's JVM. The servlet
+ * publishes to it through the <code>vm://</code> transport, so messages are
+ * handed over in memory without a TCP hop or serialization. Network
+ * connectors forward messages to upstream brokers asynchronously.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerEmbedded {
+
+  /**
+   * Constructor.
+   * @param config Configuration object.
+   */
+  public ActiveMQServerEmbedded(ActiveMQServerConfig config) {
+
+    _config = config;
+
+  }
+
+  /**
+   * Method configures and starts the broker.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean start() {
+
+    try {
+
+      BrokerService broker = new BrokerService();
+
+      broker.setBrokerName(_config.getEmbeddedBrokerName());
+
+      broker.setUseJmx(false);
+
+      broker.setUseShutdownHook(false);
+
+      broker.setDataDirectory(_config.getEmbeddedDataDirectory());
+
+      if (_config.getEmbeddedPersistence().equalsIgnoreCase(ActiveMQServerConfig._PERSISTENCE_MEMORY)) {
+
+        broker.setPersistent(false);
+
+        broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+
+      } else {
+
+        KahaDBPersistenceAdapter kahaDB = new KahaDBPersistenceAdapter();
+
+        kahaDB.setDirectory(new File(_config.getEmbeddedDataDirectory(), "kahadb"));
+
+        kahaDB.setJournalMaxFileLength((int) Math.min(Integer.MAX_VALUE, (long) _config.getEmbeddedJournalSize() * _MB));
+
+        broker.setPersistent(true);
+
+        broker.setPersistenceAdapter(kahaDB);
+      }
+
+      broker.getSystemUsage().getMemoryUsage().setLimit((long) _config.getEmbeddedMemoryLimit() * _MB);
+
+      broker.getSystemUsage().getStoreUsage().setLimit((long) _config.getEmbeddedStoreLimit() * _MB);
+
+      broker.getSystemUsage().getTempUsage().setLimit((long) _config.getEmbeddedTempLimit() * _MB);
+
+      for (String uri : ActiveMQServerConfig.split(_config.getEmbeddedConnectors())) {
+
+        broker.addConnector(uri);
+      }
+
+      for (String uri : ActiveMQServerConfig.split(_config.getEmbeddedNetworkConnectors())) {
+
+        NetworkConnector connector = broker.addNetworkConnector(uri);
+
+        connector.setDuplex(false);
+      }
+
+      broker.start();
+
+      if (!broker.waitUntilStarted()) {
+
+        _logger.severe("embedded broker did not start");
+
+        broker.stop();
+
+        return false;
+      }
+
+      _broker = broker;
+
+      _factory = new ActiveMQConnectionFactory("vm://" + _config.getEmbeddedBrokerName() + "?create=false");
+
+      _logger.info("embedded broker ",
+          _config.getEmbeddedBrokerName(),
+          " started");
+
+      return true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+    }
+
+    return false;
+  }
+
+  /**
+   * Method stops the broker.
+   */
+  public void stop() {
+
+    if (_broker == null) {
+
+      return;
+    }
+
+    try {
+
+      _broker.stop();
+
+      _broker.waitUntilStopped();
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    _broker = null;
+  }
+
+  /**
+   * Method to get the in-JVM connection factory of the broker.
+   * @return {@link ConnectionFactory} factory, null if not started.
+   */
+  public ConnectionFactory getFactory() {
+    return _factory;
+  }
+
+  /**
+   * Bytes per MB.
+   */
+  final private static int _MB = 1024 * 1024;
+
+  /**
+   * Configuration object.
+   */
+  final private ActiveMQServerConfig _config;
+
+  /**
+   * Embedded broker, null if not started.
+   */
+  private BrokerService _broker = null;
+
+  /**
+   * In-JVM connection factory.
+   */
+  private ConnectionFactory _factory = null;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerEmbedded.class.getName());
+}
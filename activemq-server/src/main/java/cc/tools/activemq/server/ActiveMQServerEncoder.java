@@ -0,0 +1,366 @@
+package cc.tools.activemq.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * This class implements response encoding straight onto a response output
+ * stream, without building intermediate maps, strings or buffers.
+ * <p>
+ * Two formats are supported. The default is URL form encoding, written from
+ * pre-encoded key bytes. Clients sending an Accept header containing
+ * '{@value _CONTENT_TYPE_BINARY}' get a compact binary layout instead:
+ * <pre>
+ * byte    format version (1)
+ * int     number of fields (big endian)
+ * fields: byte    key index in {@link #_KEYS}
+ *         int     value length in bytes (big endian)
+ *         byte[]  value UTF-8
+ * </pre>
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerEncoder {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerEncoder() {
+  }
+
+  /**
+   * Method returns whether the client accepts the binary format.
+   *
+   * @param accept value of request Accept header, or null.
+   * @return boolean true if binary format is to be used.
+   */
+  public static boolean isBinary(String accept) {
+
+    return accept != null &&
+        accept.contains(_CONTENT_TYPE_BINARY);
+  }
+
+  /**
+   * Method writes response fields followed by a repeated field.
+   *
+   * @param out response output stream.
+   * @param binary boolean true for binary format, false for form encoding.
+   * @param keys field names, each one of {@link #_KEYS}.
+   * @param values field values in the order of keys.
+   * @param key name of repeated field, or null.
+   * @param repeated values of repeated field, or null.
+   * @throws IOException .
+   */
+  public static void write(OutputStream out,
+      boolean binary,
+      String[] keys,
+      String[] values,
+      String key,
+      List<String> repeated) throws IOException {
+
+    int count = keys.length + (repeated == null ? 0 : repeated.size());
+
+    if (binary) {
+
+      out.write(_FORMAT_VERSION);
+
+      writeInt(out, count);
+    }
+
+    for (int i = 0; i < keys.length; i++) {
+
+      writeField(out, binary, i > 0, index(keys[i]), values[i]);
+    }
+
+    if (repeated == null) {
+
+      return;
+    }
+
+    int index = index(key);
+
+    for (int i = 0; i < repeated.size(); i++) {
+
+      writeField(out, binary, keys.length + i > 0, index, repeated.get(i));
+    }
+  }
+
+  /**
+   * Method writes one field.
+   *
+   * @param out response output stream.
+   * @param binary boolean true for binary format.
+   * @param separator boolean true if a form separator is needed.
+   * @param index key index.
+   * @param value field value.
+   * @throws IOException .
+   */
+  private static void writeField(OutputStream out,
+      boolean binary,
+      boolean separator,
+      int index,
+      String value) throws IOException {
+
+    if (binary) {
+
+      int length = utf8Length(value);
+
+      out.write(index);
+
+      writeInt(out, length);
+
+      writeUtf8(out, value, false);
+
+      return;
+    }
+
+    if (separator) {
+
+      out.write('&');
+    }
+
+    out.write(_KEY_BYTES[index]);
+
+    writeUtf8(out, value, true);
+  }
+
+  /**
+   * Method writes a big endian int.
+   *
+   * @param out response output stream.
+   * @param value int value.
+   * @throws IOException .
+   */
+  private static void writeInt(OutputStream out, int value) throws IOException {
+
+    out.write(value >>> 24);
+
+    out.write(value >>> 16);
+
+    out.write(value >>> 8);
+
+    out.write(value);
+  }
+
+  /**
+   * Method returns the index of key in {@link #_KEYS}.
+   * @param key field name.
+   * @return int index.
+   */
+  private static int index(String key) {
+
+    for (int i = 0; i < _KEYS.length; i++) {
+
+      if (_KEYS[i].equals(key)) {
+
+        return i;
+      }
+    }
+
+    throw new IllegalArgumentException("unknown response key " + key);
+  }
+
+  /**
+   * Method returns the UTF-8 length of text.
+   * @param text text.
+   * @return int length in bytes.
+   */
+  private static int utf8Length(String text) {
+
+    int length = 0;
+
+    for (int i = 0; i < text.length(); i++) {
+
+      char c = text.charAt(i);
+
+      if (c < 0x80) {
+
+        length += 1;
+
+      } else if (c < 0x800) {
+
+        length += 2;
+
+      } else if (Character.isHighSurrogate(c) &&
+          i + 1 < text.length() &&
+          Character.isLowSurrogate(text.charAt(i + 1))) {
+
+        length += 4;
+
+        i++;
+
+      } else {
+
+        length += 3;
+      }
+    }
+
+    return length;
+  }
+
+  /**
+   * Method writes text as UTF-8, optionally URL form encoded.
+   *
+   * @param out response output stream.
+   * @param text text.
+   * @param form boolean true to URL form encode.
+   * @throws IOException .
+   */
+  private static void writeUtf8(OutputStream out, String text, boolean form) throws IOException {
+
+    for (int i = 0; i < text.length(); i++) {
+
+      int c = text.charAt(i);
+
+      if (c < 0x80) {
+
+        if (!form ||
+            isFormSafe(c)) {
+
+          out.write(c);
+
+        } else if (c == ' ') {
+
+          out.write('+');
+
+        } else {
+
+          writeByte(out, c, form);
+        }
+
+        continue;
+      }
+
+      if (Character.isHighSurrogate((char) c) &&
+          i + 1 < text.length() &&
+          Character.isLowSurrogate(text.charAt(i + 1))) {
+
+        c = Character.toCodePoint((char) c, text.charAt(++i));
+
+      } else if (Character.isSurrogate((char) c)) {
+
+        c = '?';
+      }
+
+      if (c < 0x800) {
+
+        writeByte(out, 0xc0 | (c >> 6), form);
+
+      } else if (c < 0x10000) {
+
+        writeByte(out, 0xe0 | (c >> 12), form);
+
+        writeByte(out, 0x80 | ((c >> 6) & 0x3f), form);
+
+      } else {
+
+        writeByte(out, 0xf0 | (c >> 18), form);
+
+        writeByte(out, 0x80 | ((c >> 12) & 0x3f), form);
+
+        writeByte(out, 0x80 | ((c >> 6) & 0x3f), form);
+      }
+
+      writeByte(out, 0x80 | (c & 0x3f), form);
+    }
+  }
+
+  /**
+   * Method writes one byte, percent encoded if form is set.
+   *
+   * @param out response output stream.
+   * @param b byte value.
+   * @param form boolean true to percent encode.
+   * @throws IOException .
+   */
+  private static void writeByte(OutputStream out, int b, boolean form) throws IOException {
+
+    if (!form) {
+
+      out.write(b);
+
+      return;
+    }
+
+    out.write('%');
+
+    out.write(_HEX[(b >> 4) & 0xf]);
+
+    out.write(_HEX[b & 0xf]);
+  }
+
+  /**
+   * Method returns whether an ASCII character is written unchanged by URL
+   * form encoding, matching {@link URLEncoder}.
+   *
+   * @param c character.
+   * @return boolean true if unchanged.
+   */
+  private static boolean isFormSafe(int c) {
+
+    return (c >= 'a' && c <= 'z') ||
+        (c >= 'A' && c <= 'Z') ||
+        (c >= '0' && c <= '9') ||
+        c == '.' ||
+        c == '-' ||
+        c == '*' ||
+        c == '_';
+  }
+
+  /**
+   * Method encodes keys as form key prefixes.
+   * @return byte[][] prefixes indexed like {@link #_KEYS}.
+   */
+  private static byte[][] encodeKeys() {
+
+    byte[][] keys = new byte[_KEYS.length][];
+
+    for (int i = 0; i < _KEYS.length; i++) {
+
+      keys[i] = (URLEncoder.encode(_KEYS[i], StandardCharsets.UTF_8) + "=").getBytes(StandardCharsets.UTF_8);
+    }
+
+    return keys;
+  }
+
+  /**
+   * Content type '{@value _CONTENT_TYPE_FORM}' of form encoded responses.
+   */
+  final public static String _CONTENT_TYPE_FORM = "application/x-www-form-urlencoded;charset=UTF-8";
+
+  /**
+   * Content type '{@value _CONTENT_TYPE_BINARY}' of binary responses.
+   */
+  final public static String _CONTENT_TYPE_BINARY = "application/vnd.cc.activemq+binary";
+
+  /**
+   * Binary format version.
+   */
+  final private static int _FORMAT_VERSION = 1;
+
+  /**
+   * Response keys. The position of a key is its binary key index.
+   */
+  final public static String[] _KEYS = new String[] { ActiveMQServer._HTTP_KEY_HEADER,
+      ActiveMQServer._HTTP_KEY_ID,
+      ActiveMQServer._HTTP_KEY_CODE,
+      ActiveMQServer._HTTP_KEY_REMOTE,
+      ActiveMQServer._HTTP_KEY_MQID,
+      ActiveMQServer._HTTP_KEY_COUNT,
+      ActiveMQServer._HTTP_KEY_MESSAGE };
+
+  /**
+   * Form key prefixes indexed like {@link #_KEYS}.
+   */
+  final private static byte[][] _KEY_BYTES = encodeKeys();
+
+  /**
+   * Upper case hex digits.
+   */
+  final private static byte[] _HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+}
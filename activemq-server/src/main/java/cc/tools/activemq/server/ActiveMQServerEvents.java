@@ -0,0 +1,210 @@
+package cc.tools.activemq.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class holds the JDK Flight Recorder events of the servlet. Events
+ * are timed with the JFR clock and recorded alongside the JVM's own GC, lock
+ * and socket events, so a latency incident can be followed through one
+ * recording. They cost next to nothing while not enabled and are cheap
+ * enough to leave on in production, for example with
+ * <code>-XX:StartFlightRecording</code> and the default settings, which
+ * enable all events below.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerEvents {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerEvents() {
+  }
+
+  /**
+   * Decryption of one request field, see
+   * {@link ActiveMQServerSecurity#decryptData}.
+   */
+  @Name(_PREFIX + "Decrypt")
+  @Label("Decrypt")
+  @Category(_CATEGORY)
+  @Description("Decryption of one request field")
+  @StackTrace(false)
+  public static class Decrypt extends Event {
+
+    /**
+     * Encrypted field size.
+     */
+    @Label("Size")
+    @DataAmount
+    public int size;
+
+    /**
+     * Outcome.
+     */
+    @Label("Success")
+    public boolean success;
+  }
+
+  /**
+   * Connect of a route to a broker, see
+   * {@link ActiveMQServerBroker#connect}.
+   */
+  @Name(_PREFIX + "Connect")
+  @Label("Connect")
+  @Category(_CATEGORY)
+  @Description("Connect of a channel route to a broker")
+  @StackTrace(false)
+  public static class Connect extends Event {
+
+    /**
+     * Channel.
+     */
+    @Label("Channel")
+    public String channel;
+
+    /**
+     * Shard index, -1 if not sharded.
+     */
+    @Label("Shard")
+    public int shard;
+
+    /**
+     * Broker factory name.
+     */
+    @Label("Broker")
+    public String broker;
+
+    /**
+     * Connect attempts made.
+     */
+    @Label("Attempts")
+    public int attempts;
+
+    /**
+     * Outcome.
+     */
+    @Label("Success")
+    public boolean success;
+  }
+
+  /**
+   * Publish of one message or chunk including connects and retries, see
+   * {@link ActiveMQServerConnection#publish}.
+   */
+  @Name(_PREFIX + "Publish")
+  @Label("Publish")
+  @Category(_CATEGORY)
+  @Description("Publish of one message including connects and retries")
+  @StackTrace(false)
+  public static class Publish extends Event {
+
+    /**
+     * Client call ID.
+     */
+    @Label("Id")
+    public String id;
+
+    /**
+     * Channel.
+     */
+    @Label("Channel")
+    public String channel;
+
+    /**
+     * Payload size.
+     */
+    @Label("Size")
+    @DataAmount
+    public int size;
+
+    /**
+     * Publish attempts made.
+     */
+    @Label("Attempts")
+    public int attempts;
+
+    /**
+     * Outcome.
+     */
+    @Label("Success")
+    public boolean success;
+  }
+
+  /**
+   * One send to the broker, see {@link ActiveMQServerAdaptor#publish}.
+   */
+  @Name(_PREFIX + "Send")
+  @Label("Send")
+  @Category(_CATEGORY)
+  @Description("One send of a message to the broker")
+  @StackTrace(false)
+  public static class Send extends Event {
+
+    /**
+     * Channel.
+     */
+    @Label("Channel")
+    public String channel;
+
+    /**
+     * Shard index, -1 if not sharded.
+     */
+    @Label("Shard")
+    public int shard;
+
+    /**
+     * Payload size.
+     */
+    @Label("Size")
+    @DataAmount
+    public int size;
+
+    /**
+     * Outcome.
+     */
+    @Label("Success")
+    public boolean success;
+  }
+
+  /**
+   * Pause before a publish attempt is retried.
+   */
+  @Name(_PREFIX + "Retry")
+  @Label("Retry")
+  @Category(_CATEGORY)
+  @Description("Pause before a publish attempt is retried")
+  @StackTrace(false)
+  public static class Retry extends Event {
+
+    /**
+     * Channel.
+     */
+    @Label("Channel")
+    public String channel;
+
+    /**
+     * Attempt that failed.
+     */
+    @Label("Attempt")
+    public int attempt;
+  }
+
+  /**
+   * Event name prefix '{@value _PREFIX}'.
+   */
+  final public static String _PREFIX = "cc.activemq.";
+
+  /**
+   * Event category '{@value _CATEGORY}'.
+   */
+  final public static String _CATEGORY = "ActiveMQ Server";
+}
@@ -0,0 +1,214 @@
+package cc.tools.activemq.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements producer flow control awareness per channel.
+ * <p>
+ * A broker short of memory or store space holds producers back, and
+ * <code>MessageProducer.send</code> blocks until it lets them go or the
+ * connection's send timeout ends the wait. Send time above a threshold is
+ * counted as blocked, and a send failing after the full send timeout as
+ * timed out. Each channel publishes <code>flow.&lt;channel&gt;.blocked</code>
+ * sends, <code>.blocked.nanos</code> time blocked, <code>.timeouts</code>
+ * and <code>.shed</code> through {@link ActiveMQServerMetrics}.
+ * <p>
+ * A timed out send sheds its channel for a while: new publishes to it are
+ * rejected at once, rather than piling up request threads behind a full
+ * broker. The number of channels tracked is bounded, the rest share the
+ * entry '{@value _CHANNEL_OTHER}', which no channel name can collide with
+ * and which is recorded and shed as a whole.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerFlow {
+
+  /**
+   * Constructor.
+   * @param threshold send time (ms) above which a send counts as blocked.
+   * @param timeout connection send timeout (ms).
+   * @param shed time (ms) a channel is shed after a timed out send.
+   */
+  public ActiveMQServerFlow(int threshold, int timeout, int shed) {
+
+    _threshold = TimeUnit.MILLISECONDS.toNanos(threshold);
+
+    _timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    _shed = TimeUnit.MILLISECONDS.toNanos(shed);
+
+  }
+
+  /**
+   * Method records one send.
+   *
+   * @param channel channel sent to.
+   * @param nanos time (ns) the send took.
+   * @param sent boolean true if the send succeeded.
+   */
+  public void record(String channel, long nanos, boolean sent) {
+
+    if (nanos <= _threshold) {
+
+      return;
+    }
+
+    Entry entry = lookup(channel, true);
+
+    entry._blocked.increment();
+
+    entry._blockedNanos.add(nanos - _threshold);
+
+    if (!sent &&
+        nanos >= _timeout) {
+
+      entry._timeouts.increment();
+
+      entry._shedUntil = System.nanoTime() + _shed;
+
+      _logger.severe("channel ",
+          channel,
+          " shed after send timeout");
+    }
+  }
+
+  /**
+   * Method returns whether publishes to a channel are shed.
+   *
+   * @param channel channel name.
+   * @return boolean true if shed.
+   */
+  public boolean isShed(String channel) {
+
+    Entry entry = lookup(channel, false);
+
+    if (entry == null ||
+        entry._shedUntil - System.nanoTime() <= 0) {
+
+      return false;
+    }
+
+    entry._sheds.increment();
+
+    return true;
+  }
+
+  /**
+   * Method returns the entry of a channel, which is the shared entry
+   * '{@value _CHANNEL_OTHER}' once the tracking limit is reached.
+   *
+   * @param channel channel name.
+   * @param create boolean true to create a missing entry.
+   * @return Entry entry, or null if missing and not created.
+   */
+  private Entry lookup(String channel, boolean create) {
+
+    Entry entry = _entries.get(channel);
+
+    if (entry != null) {
+
+      return entry;
+    }
+
+    if (_entries.size() >= _MAX_CHANNELS) {
+
+      return (create ? _other : (_other._shedUntil - System.nanoTime() > 0 ? _other : null));
+    }
+
+    return (create ? _entries.computeIfAbsent(channel, Entry::new) : null);
+  }
+
+  /**
+   * This class holds the flow control record of one channel.
+   */
+  private static class Entry {
+
+    /**
+     * Constructor.
+     * @param channel channel name.
+     */
+    private Entry(String channel) {
+
+      String prefix = "flow." + channel + ".";
+
+      _blocked = ActiveMQServerMetrics.counter(prefix + "blocked");
+
+      _blockedNanos = ActiveMQServerMetrics.counter(prefix + "blocked.nanos");
+
+      _timeouts = ActiveMQServerMetrics.counter(prefix + "timeouts");
+
+      _sheds = ActiveMQServerMetrics.counter(prefix + "shed");
+    }
+
+    /**
+     * Sends blocked.
+     */
+    final private LongAdder _blocked;
+
+    /**
+     * Time (ns) blocked.
+     */
+    final private LongAdder _blockedNanos;
+
+    /**
+     * Sends timed out.
+     */
+    final private LongAdder _timeouts;
+
+    /**
+     * Publishes shed.
+     */
+    final private LongAdder _sheds;
+
+    /**
+     * Time ({@link System#nanoTime()}) the channel is shed until.
+     */
+    private volatile long _shedUntil = System.nanoTime();
+  }
+
+  /**
+   * Entry '{@value _CHANNEL_OTHER}' shared by channels over the tracking
+   * limit. Its '*' cannot appear in a channel name.
+   */
+  final public static String _CHANNEL_OTHER = "*other";
+
+  /**
+   * Max number of channels tracked.
+   */
+  final private static int _MAX_CHANNELS = 256;
+
+  /**
+   * Send time (ns) above which a send counts as blocked.
+   */
+  final private long _threshold;
+
+  /**
+   * Connection send timeout (ns).
+   */
+  final private long _timeout;
+
+  /**
+   * Time (ns) a channel is shed after a timed out send.
+   */
+  final private long _shed;
+
+  /**
+   * Entries indexed by channel name.
+   */
+  final private Map<String, Entry> _entries = new ConcurrentHashMap<String, Entry>();
+
+  /**
+   * Entry shared by channels over the tracking limit.
+   */
+  final private Entry _other = new Entry(_CHANNEL_OTHER);
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerFlow.class.getName());
+}
@@ -0,0 +1,143 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a lock-free generator of cluster-unique operation
+ * IDs. Each ID packs, from the most significant bit down, a 41 bit millisecond
+ * timestamp since {@value _EPOCH}, a 10 bit node ID, a 5 bit stripe and a 7
+ * bit sequence.
+ * <p>
+ * Threads are spread across stripes, each with its own sequence on its own
+ * cache line, so concurrent callers rarely contend. A stripe whose sequence
+ * wraps within one millisecond carries into the timestamp rather than
+ * waiting, and a clock stepping backwards never reuses a value.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerId {
+
+  /**
+   * Constructor.
+   * @param node node ID in the range 0 to {@value _NODE_MAX}.
+   */
+  public ActiveMQServerId(int node) {
+
+    if (node < 0 ||
+        node > _NODE_MAX) {
+
+      throw new IllegalArgumentException("node id out of range");
+    }
+
+    _node = node;
+
+  }
+
+  /**
+   * Method returns the next operation ID.
+   * @return long operation ID.
+   */
+  public long next() {
+
+    long stripe = Thread.currentThread().threadId() & _STRIPE_MASK;
+
+    int index = (int) stripe * _STRIPE_PADDING;
+
+    long now = System.currentTimeMillis() - _EPOCH;
+
+    while (true) {
+
+      long last = _state.get(index);
+
+      long next = ((last >>> _SEQUENCE_BITS) < now ? now << _SEQUENCE_BITS : last + 1);
+
+      if (_state.compareAndSet(index, last, next)) {
+
+        return ((next >>> _SEQUENCE_BITS) << _TIME_SHIFT) |
+            ((long) _node << _NODE_SHIFT) |
+            (stripe << _SEQUENCE_BITS) |
+            (next & _SEQUENCE_MASK);
+      }
+    }
+  }
+
+  /**
+   * Method extracts the node ID from an operation ID.
+   * @param id operation ID.
+   * @return int node ID.
+   */
+  public static int getNode(long id) {
+    return (int) ((id >>> _NODE_SHIFT) & _NODE_MAX);
+  }
+
+  /**
+   * Method extracts the creation time from an operation ID.
+   * @param id operation ID.
+   * @return long time (ms since 1970).
+   */
+  public static long getTime(long id) {
+    return (id >>> _TIME_SHIFT) + _EPOCH;
+  }
+
+  /**
+   * Timestamp origin '{@value _EPOCH}' (2023-01-01T00:00:00Z).
+   */
+  final public static long _EPOCH = 1672531200000L;
+
+  /**
+   * Number of sequence bits.
+   */
+  final private static int _SEQUENCE_BITS = 7;
+
+  /**
+   * Number of stripe bits.
+   */
+  final private static int _STRIPE_BITS = 5;
+
+  /**
+   * Number of node bits.
+   */
+  final private static int _NODE_BITS = 10;
+
+  /**
+   * Largest node ID '{@value _NODE_MAX}'.
+   */
+  final public static int _NODE_MAX = (1 << _NODE_BITS) - 1;
+
+  /**
+   * Sequence mask.
+   */
+  final private static long _SEQUENCE_MASK = (1L << _SEQUENCE_BITS) - 1;
+
+  /**
+   * Stripe mask.
+   */
+  final private static long _STRIPE_MASK = (1L << _STRIPE_BITS) - 1;
+
+  /**
+   * Position of node bits.
+   */
+  final private static int _NODE_SHIFT = _SEQUENCE_BITS + _STRIPE_BITS;
+
+  /**
+   * Position of timestamp bits.
+   */
+  final private static int _TIME_SHIFT = _NODE_SHIFT + _NODE_BITS;
+
+  /**
+   * Distance between stripe slots, keeping each slot on its own cache line.
+   */
+  final private static int _STRIPE_PADDING = 16;
+
+  /**
+   * Per stripe state holding the last timestamp and sequence issued.
+   */
+  final private AtomicLongArray _state = new AtomicLongArray((int) (_STRIPE_MASK + 1) * _STRIPE_PADDING);
+
+  /**
+   * Node ID.
+   */
+  final private int _node;
+}
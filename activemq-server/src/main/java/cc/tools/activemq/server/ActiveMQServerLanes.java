@@ -0,0 +1,409 @@
+package cc.tools.activemq.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class implements priority lanes, bulkheads that keep the publish work
+ * of one class of channels from delaying another.
+ * <p>
+ * Lanes are configured as <code>name=threads:queue:pattern|pattern</code>
+ * entries separated by commas. Patterns use the channel rule syntax of
+ * {@link ActiveMQServerAcl}, so <code>alert=4:16:alerts.&gt;</code> sends
+ * every channel below 'alerts' through a lane of at most 4 concurrent
+ * publishes with 16 more waiting. A channel takes the first lane whose
+ * patterns match all names it lists. Lane '{@value _LANE_DEFAULT}' needs no
+ * patterns and takes the remaining channels, which otherwise publish on the
+ * request thread as before.
+ * <p>
+ * Each lane has its own bounded executor. A full lane rejects at once, so a
+ * flood on one lane ties up at most its threads and queue, while other lanes
+ * keep their own. Lanes never share adaptors, as each route of a channel
+ * already has its own, see {@link ActiveMQServerBroker}. Each lane publishes
+ * its queue wait as stage <code>lane.&lt;name&gt;</code>, see
+ * {@link ActiveMQServerStage}, and gauges <code>lane.&lt;name&gt;.active</code>
+ * and <code>.queued</code>.
+ * <p>
+ * The request waits for its publish, so a lane bounds the publishes running
+ * at once, not the request threads waiting for them. In execution mode
+ * 'virtual' requests wait on virtual threads and the container pool is
+ * free. In execution mode 'container' a flood on one lane holds up to its
+ * threads plus queue of the container's threads, so the threads and queues
+ * of all lanes together must stay below the container pool for the other
+ * lanes to keep serving.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerLanes {
+
+  /**
+   * Constructor. Every definition is checked before any lane is started, so
+   * a malformed one leaves no executor running and no gauge registered.
+   * @param lanes lane definitions, or null.
+   * @param limit number of request threads the lanes together must stay
+   *        below, or 0 if requests wait on virtual threads.
+   */
+  public ActiveMQServerLanes(String lanes, int limit) {
+
+    try {
+
+      List<Lane> entries = new ArrayList<Lane>();
+
+      int held = 0;
+
+      if (lanes != null) {
+
+        for (String lane : lanes.split(",")) {
+
+          if (lane.isBlank()) {
+
+            continue;
+          }
+
+          String[] fields = lane.split("[=:]", 4);
+
+          String name = fields[0].trim();
+
+          boolean isDefault = name.equals(_LANE_DEFAULT);
+
+          if (fields.length != (isDefault ? 3 : 4)) {
+
+            _logger.severe("malformed lane ",
+                lane);
+
+            return;
+          }
+
+          Lane entry = new Lane(name,
+              Integer.parseInt(fields[1].trim()),
+              Integer.parseInt(fields[2].trim()),
+              (isDefault ? null : fields[3].trim().replace('|', ',')));
+
+          if (!entry._isValid) {
+
+            _logger.severe("malformed lane ",
+                lane);
+
+            return;
+          }
+
+          entries.add(entry);
+
+          held += entry._threadCount + entry._queueSize;
+        }
+      }
+
+      if (limit > 0 &&
+          held >= limit) {
+
+        _logger.severe("lanes hold ",
+            Integer.toString(held),
+            " request threads of ",
+            Integer.toString(limit));
+
+        return;
+      }
+
+      for (Lane entry : entries) {
+
+        entry.start();
+
+        if (entry._patterns == null) {
+
+          _default = entry;
+
+        } else {
+
+          _lanes.add(entry);
+        }
+      }
+
+      _isValid = true;
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+  }
+
+  /**
+   * Method runs a publish in the lane of channel and waits for it. The
+   * caller waits even if interrupted, since the task uses request state
+   * owned by the caller, and holds its request thread meanwhile. A rejection raised by the task itself is passed on.
+   *
+   * @param channel validated channel name or comma separated names.
+   * @param timing request timing of the lane stage, or null.
+   * @param task publish to be run.
+   * @return boolean task result.
+   * @throws RejectedExecutionException if the lane or the channel is saturated.
+   */
+  public boolean call(String channel, ActiveMQServerTiming timing, BooleanSupplier task) {
+
+    Lane lane = select(channel);
+
+    if (lane == null) {
+
+      return task.getAsBoolean();
+    }
+
+    long start = lane._stage.begin();
+
+    FutureTask<Boolean> future = new FutureTask<Boolean>(() -> {
+
+      lane._stage.end(start, true, timing);
+
+      return task.getAsBoolean();
+    });
+
+    try {
+
+      lane._executor.execute(future);
+
+    } catch (RejectedExecutionException e) {
+
+      lane._stage.end(start, false, timing);
+
+      throw e;
+    }
+
+    boolean interrupted = false;
+
+    try {
+
+      while (true) {
+
+        try {
+
+          return future.get();
+
+        } catch (InterruptedException e) {
+
+          interrupted = true;
+        }
+      }
+
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof RejectedExecutionException) {
+
+        throw (RejectedExecutionException) e.getCause();
+      }
+
+      _logger.exception(e);
+
+    } finally {
+
+      if (interrupted) {
+
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method returns the lane of a channel.
+   * @param channel validated channel name or comma separated names.
+   * @return Lane lane, or null to run on the calling thread.
+   */
+  private Lane select(String channel) {
+
+    for (int i = 0; i < _lanes.size(); i++) {
+
+      Lane lane = _lanes.get(i);
+
+      if (lane._patterns.check(ActiveMQServerAcl._ANY_USER, channel, Integer.MAX_VALUE) == ActiveMQServerAcl._ALLOWED) {
+
+        return lane;
+      }
+    }
+
+    return _default;
+  }
+
+  /**
+   * Method to get the name of the lane of a channel.
+   * @param channel validated channel name or comma separated names.
+   * @return String lane name, or null if the channel has no lane.
+   */
+  public String getLane(String channel) {
+
+    Lane lane = select(channel);
+
+    return (lane == null ? null : lane._name);
+  }
+
+  /**
+   * Method stops all lanes. Running and queued publishes still complete.
+   */
+  public void destroy() {
+
+    for (Lane lane : _lanes) {
+
+      lane.destroy();
+    }
+
+    if (_default != null) {
+
+      _default.destroy();
+    }
+  }
+
+  /**
+   * Method to check whether lanes object is valid.
+   * @return boolean indicating validity.
+   */
+  public boolean getIsValid() {
+    return _isValid;
+  }
+
+  /**
+   * This class holds one lane.
+   */
+  private static class Lane {
+
+    /**
+     * Constructor. The lane runs nothing until started.
+     * @param name lane name.
+     * @param threads max number of concurrent publishes.
+     * @param queue max number of waiting publishes.
+     * @param patterns comma separated channel patterns, or null to match all.
+     */
+    private Lane(String name, int threads, int queue, String patterns) {
+
+      _name = name;
+
+      _threadCount = threads;
+
+      _queueSize = queue;
+
+      _patterns = (patterns == null ? null : new ActiveMQServerAcl());
+
+      _isValid = threads > 0 &&
+          queue > 0 &&
+          (_patterns == null || _patterns.load(ActiveMQServerAcl._ANY_USER + ":" + patterns));
+    }
+
+    /**
+     * Method creates the lane's executor, stage and gauges.
+     */
+    private void start() {
+
+      _executor = new ThreadPoolExecutor(_threadCount,
+          _threadCount,
+          _KEEP_ALIVE,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(_queueSize),
+          r -> {
+
+            Thread thread = new Thread(r, "activemq-lane-" + _name + "-" + _threads.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+          },
+          new ThreadPoolExecutor.AbortPolicy());
+
+      _executor.allowCoreThreadTimeOut(true);
+
+      _stage = new ActiveMQServerStage("lane." + _name);
+
+      ThreadPoolExecutor executor = _executor;
+
+      ActiveMQServerMetrics.gauge("lane." + _name + ".active", () -> executor.getActiveCount());
+
+      ActiveMQServerMetrics.gauge("lane." + _name + ".queued", () -> executor.getQueue().size());
+    }
+
+    /**
+     * Method stops the lane's executor.
+     */
+    private void destroy() {
+
+      _executor.shutdown();
+    }
+
+    /**
+     * Lane name.
+     */
+    final private String _name;
+
+    /**
+     * Max number of concurrent publishes.
+     */
+    final private int _threadCount;
+
+    /**
+     * Max number of waiting publishes.
+     */
+    final private int _queueSize;
+
+    /**
+     * Bounded executor running the lane's publishes, once started.
+     */
+    private ThreadPoolExecutor _executor = null;
+
+    /**
+     * Stage timing the queue wait, once started.
+     */
+    private ActiveMQServerStage _stage = null;
+
+    /**
+     * Channel patterns, compiled as the rules of any user, or null for lane
+     * '{@value ActiveMQServerLanes#_LANE_DEFAULT}'.
+     */
+    final private ActiveMQServerAcl _patterns;
+
+    /**
+     * Lane thread counter, for thread names.
+     */
+    final private AtomicInteger _threads = new AtomicInteger();
+
+    /**
+     * boolean indicating whether the lane definition is valid.
+     */
+    final private boolean _isValid;
+  }
+
+  /**
+   * Lane '{@value _LANE_DEFAULT}' of channels no other lane matches.
+   */
+  final public static String _LANE_DEFAULT = "default";
+
+  /**
+   * Time (ms) an idle lane thread is kept.
+   */
+  final private static long _KEEP_ALIVE = 60000L;
+
+  /**
+   * Lanes with patterns, in configuration order.
+   */
+  final private List<Lane> _lanes = new ArrayList<Lane>();
+
+  /**
+   * Lane of channels no other lane matches, or null.
+   */
+  private Lane _default = null;
+
+  /**
+   * boolean indicating whether this {@link ActiveMQServerLanes} object is in a valid
+   * state.
+   */
+  private boolean _isValid = false;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerLanes.class.getName());
+}
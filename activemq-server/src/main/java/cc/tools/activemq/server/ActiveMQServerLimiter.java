@@ -0,0 +1,106 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a striped, lock-free token bucket rate limiter.
+ * <p>
+ * Keys are hashed onto a fixed number of buckets, so memory is bounded no
+ * matter how many keys are seen. Keys sharing a bucket share its budget,
+ * which only ever makes the limit stricter. Each bucket is a single
+ * theoretical arrival time updated by compare-and-set (the generic cell rate
+ * algorithm), so a check costs one read and one CAS.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerLimiter {
+
+  /**
+   * Constructor.
+   * @param rate sustained requests per second.
+   * @param burst requests allowed at once after an idle period.
+   * @param stripes number of buckets, rounded up to a power of two.
+   */
+  public ActiveMQServerLimiter(int rate, int burst, int stripes) {
+
+    _interval = _NANOS_PER_SECOND / Math.max(1, rate);
+
+    _tolerance = _interval * (Math.max(1, burst) - 1);
+
+    int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+
+    _mask = size - 1;
+
+    _buckets = new AtomicLongArray(size * _STRIPE_PADDING);
+
+  }
+
+  /**
+   * Method takes one token from the bucket of key.
+   *
+   * @param key client key, e.g. remote address or user.
+   * @return long 0 if admitted, otherwise nanoseconds until a token is available.
+   */
+  public long acquire(String key) {
+
+    int hash = key.hashCode();
+
+    int index = ((hash ^ (hash >>> 16)) & _mask) * _STRIPE_PADDING;
+
+    long now = System.nanoTime() - _origin;
+
+    while (true) {
+
+      long tat = _buckets.get(index);
+
+      long wait = tat - _tolerance - now;
+
+      if (wait > 0) {
+
+        return wait;
+      }
+
+      if (_buckets.compareAndSet(index, tat, Math.max(tat, now) + _interval)) {
+
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Nanoseconds per second.
+   */
+  final private static long _NANOS_PER_SECOND = 1000000000L;
+
+  /**
+   * Distance between buckets, keeping each bucket on its own cache line.
+   */
+  final private static int _STRIPE_PADDING = 8;
+
+  /**
+   * Time origin keeping bucket times positive.
+   */
+  final private long _origin = System.nanoTime();
+
+  /**
+   * Nanoseconds between tokens.
+   */
+  final private long _interval;
+
+  /**
+   * Nanoseconds a bucket may run ahead of the clock.
+   */
+  final private long _tolerance;
+
+  /**
+   * Bucket index mask.
+   */
+  final private int _mask;
+
+  /**
+   * Theoretical arrival time per bucket.
+   */
+  final private AtomicLongArray _buckets;
+}
@@ -29,7 +29,50 @@ public class ActiveMQServerLogger {
    * @param message {@link String} containing message to be logged.
    */
   public void info(String message) {
-    log(Level.INFO, _info + message);
+    if (_logger.isLoggable(Level.INFO)) {
+      log(Level.INFO, _info + message);
+    }
+  }
+
+  /**
+   * Method to report {@link java.util.logging.Level#INFO} message to server log.
+   * The fixed arity overloads spare callers the varargs array, and nothing
+   * is built when the level is disabled.
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   */
+  public void info(String first, String second) {
+    if (_logger.isLoggable(Level.INFO)) {
+      log(Level.INFO, _info + first + second);
+    }
+  }
+
+  /**
+   * Method to report {@link java.util.logging.Level#INFO} message to server log
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   * @param third third part of message.
+   */
+  public void info(String first, String second, String third) {
+    if (_logger.isLoggable(Level.INFO)) {
+      log(Level.INFO, _info + first + second + third);
+    }
+  }
+
+  /**
+   * Method to report {@link java.util.logging.Level#INFO} message to server log
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   * @param third third part of message.
+   * @param fourth fourth part of message.
+   */
+  public void info(String first, String second, String third, String fourth) {
+    if (_logger.isLoggable(Level.INFO)) {
+      log(Level.INFO, _info + first + second + third + fourth);
+    }
   }
 
   /**
@@ -38,6 +81,10 @@ public class ActiveMQServerLogger {
    * @param messages {@link String} containing messages to be logged.
    */
   public void info(String ... messages) {
+    if (!_logger.isLoggable(Level.INFO)) {
+      return;
+    }
+
     StringBuilder buffer = new StringBuilder();
     
     for (String message : messages) {
@@ -58,6 +105,45 @@ public class ActiveMQServerLogger {
     log(Level.SEVERE, _severe + message);
   }
 
+  /**
+   * Method to report {@link java.util.logging.Level#SEVERE} message to server log
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   */
+  public void severe(String first, String second) {
+    if (_logger.isLoggable(Level.SEVERE)) {
+      log(Level.SEVERE, _severe + first + second);
+    }
+  }
+
+  /**
+   * Method to report {@link java.util.logging.Level#SEVERE} message to server log
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   * @param third third part of message.
+   */
+  public void severe(String first, String second, String third) {
+    if (_logger.isLoggable(Level.SEVERE)) {
+      log(Level.SEVERE, _severe + first + second + third);
+    }
+  }
+
+  /**
+   * Method to report {@link java.util.logging.Level#SEVERE} message to server log
+   * 
+   * @param first first part of message.
+   * @param second second part of message.
+   * @param third third part of message.
+   * @param fourth fourth part of message.
+   */
+  public void severe(String first, String second, String third, String fourth) {
+    if (_logger.isLoggable(Level.SEVERE)) {
+      log(Level.SEVERE, _severe + first + second + third + fourth);
+    }
+  }
+
   /**
    * Method to report {@link java.util.logging.Level#SEVERE} message to server log
    * 
@@ -0,0 +1,104 @@
+package cc.tools.activemq.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This class implements a process wide registry of named counters and
+ * gauges. Counters are {@link LongAdder} objects, so hot paths update them
+ * without contention. Gauges are sampled only when metrics are rendered.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerMetrics {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerMetrics() {
+  }
+
+  /**
+   * Method returns the counter registered under name, creating it if needed.
+   * Callers should keep the returned counter rather than looking it up per
+   * event.
+   *
+   * @param name metric name.
+   * @return {@link LongAdder} counter.
+   */
+  public static LongAdder counter(String name) {
+
+    LongSupplier metric = _metrics.computeIfAbsent(name, n -> new Counter());
+
+    if (metric instanceof Counter) {
+
+      return ((Counter) metric)._adder;
+    }
+
+    throw new IllegalArgumentException("metric " + name + " is a gauge");
+  }
+
+  /**
+   * Method registers a gauge under name, replacing any previous gauge.
+   *
+   * @param name metric name.
+   * @param gauge supplier sampled when metrics are rendered.
+   */
+  public static void gauge(String name, LongSupplier gauge) {
+
+    _metrics.put(name, gauge);
+
+  }
+
+  /**
+   * Method renders all metrics as 'name value' lines sorted by name.
+   *
+   * @return String rendered metrics.
+   */
+  public static String render() {
+
+    StringBuilder buffer = new StringBuilder();
+
+    for (Map.Entry<String, LongSupplier> entry : _metrics.entrySet()) {
+
+      buffer.append(entry.getKey());
+
+      buffer.append(' ');
+
+      buffer.append(entry.getValue().getAsLong());
+
+      buffer.append('\n');
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * This class adapts a {@link LongAdder} counter to the metric registry.
+   */
+  private static class Counter implements LongSupplier {
+
+    /**
+     * Method returns the current count.
+     * @return long count.
+     */
+    @Override
+    public long getAsLong() {
+      return _adder.sum();
+    }
+
+    /**
+     * Counter value.
+     */
+    final private LongAdder _adder = new LongAdder();
+  }
+
+  /**
+   * Metrics indexed by name.
+   */
+  final private static Map<String, LongSupplier> _metrics = new ConcurrentSkipListMap<String, LongSupplier>();
+}
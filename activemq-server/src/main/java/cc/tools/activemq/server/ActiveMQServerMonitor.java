@@ -0,0 +1,233 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * This class implements the background broker health monitor. Every
+ * monitor interval, and at once when an adaptor reports a connection failure
+ * through its {@link javax.jms.ExceptionListener}, each broker rebuilds its
+ * broken adaptors and probes itself if it is out of rotation or idle, see
+ * {@link ActiveMQServerBroker#check()}. Reconnects therefore happen off the
+ * request path.
+ * <p>
+ * The monitor also bounds connects: {@link #bounded} runs a blocking connect
+ * on a connector thread and gives up after the connect timeout, so a
+ * connect stuck in TCP cannot hold its caller. Connector threads are
+ * bounded per broker with a small queue: once they are all stuck, further
+ * connects are rejected at once instead of piling up threads.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerMonitor {
+
+  /**
+   * Constructor. Threads keep the creating thread's context class loader,
+   * which JNDI lookups of java:comp/env resolve through.
+   * @param config Configuration object.
+   * @param brokers brokers to be monitored.
+   */
+  public ActiveMQServerMonitor(ActiveMQServerConfig config, ActiveMQServerBroker[] brokers) {
+
+    _config = config;
+
+    _brokers = brokers;
+
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+    _scheduler = Executors.newSingleThreadScheduledExecutor(r -> thread(r, "activemq-monitor", loader));
+
+    int threads = Math.max(1, brokers.length) * _CONNECTOR_THREADS_PER_BROKER;
+
+    _connector = new ThreadPoolExecutor(threads, 
+        threads, 
+        _CONNECTOR_KEEP_ALIVE, 
+        TimeUnit.MILLISECONDS, 
+        new ArrayBlockingQueue<Runnable>(Math.max(1, brokers.length)), 
+        r -> thread(r, "activemq-connect", loader), 
+        new ThreadPoolExecutor.AbortPolicy());
+
+    _connector.allowCoreThreadTimeOut(true);
+
+    ActiveMQServerMetrics.gauge("monitor.connects", () -> _connector.getActiveCount());
+
+    ActiveMQServerMetrics.gauge("monitor.checks", () -> _checks);
+  }
+
+  /**
+   * Method creates a daemon thread.
+   * @param r task.
+   * @param name thread name.
+   * @param loader context class loader.
+   * @return Thread thread.
+   */
+  private static Thread thread(Runnable r, String name, ClassLoader loader) {
+
+    Thread thread = new Thread(r, name);
+
+    thread.setDaemon(true);
+
+    thread.setContextClassLoader(loader);
+
+    return thread;
+  }
+
+  /**
+   * Method starts periodic checks.
+   */
+  public void start() {
+
+    _scheduler.scheduleWithFixedDelay(this::check, 
+        _config.getMonitorInterval(), 
+        _config.getMonitorInterval(), 
+        TimeUnit.MILLISECONDS);
+
+  }
+
+  /**
+   * Method stops the monitor.
+   */
+  public void stop() {
+
+    _scheduler.shutdownNow();
+
+    _connector.shutdownNow();
+  }
+
+  /**
+   * Method asks for a check as soon as possible. Signals arriving while a
+   * check is pending are merged into it.
+   */
+  public void signal() {
+
+    if (_pending.compareAndSet(false, true)) {
+
+      try {
+
+        _scheduler.execute(this::check);
+
+      } catch (Exception e) {
+
+        _pending.set(false);
+      }
+    }
+  }
+
+  /**
+   * Method checks all brokers.
+   */
+  private void check() {
+
+    _pending.set(false);
+
+    _checks++;
+
+    for (ActiveMQServerBroker broker : _brokers) {
+
+      try {
+
+        broker.check();
+
+      } catch (Exception e) {
+
+        _logger.exception(e);
+      }
+    }
+  }
+
+  /**
+   * Method runs a blocking connect on a connector thread and waits for it up
+   * to the connect timeout. A connect that completes after the timeout is
+   * handed to orphan, so it can be closed rather than leaked.
+   *
+   * @param <T> connect result type.
+   * @param task blocking connect.
+   * @param orphan receives the result of a connect that timed out.
+   * @return T connect result.
+   * @throws RejectedExecutionException if all connector threads are busy.
+   * @throws Exception if the connect failed or timed out.
+   */
+  public <T> T bounded(Callable<T> task, Consumer<T> orphan) throws Exception {
+
+    CompletableFuture<T> future = new CompletableFuture<T>();
+
+    _connector.execute(() -> {
+
+      try {
+
+        future.complete(task.call());
+
+      } catch (Throwable t) {
+
+        future.completeExceptionally(t);
+      }
+    });
+
+    try {
+
+      return future.get(_config.getConnectTimeout(), TimeUnit.MILLISECONDS);
+
+    } catch (TimeoutException e) {
+
+      future.thenAccept(orphan);
+
+      throw e;
+    }
+  }
+
+  /**
+   * Number of checks run, read by the metrics gauge.
+   */
+  private volatile long _checks = 0;
+
+  /**
+   * Configuration object.
+   */
+  final private ActiveMQServerConfig _config;
+
+  /**
+   * Monitored brokers.
+   */
+  final private ActiveMQServerBroker[] _brokers;
+
+  /**
+   * boolean indicating whether a signalled check is pending.
+   */
+  final private AtomicBoolean _pending = new AtomicBoolean(false);
+
+  /**
+   * Thread running checks.
+   */
+  final private ScheduledExecutorService _scheduler;
+
+  /**
+   * Threads running bounded connects.
+   */
+  final private ThreadPoolExecutor _connector;
+
+  /**
+   * Connector threads per broker.
+   */
+  final private static int _CONNECTOR_THREADS_PER_BROKER = 4;
+
+  /**
+   * Time (ms) an idle connector thread is kept.
+   */
+  final private static long _CONNECTOR_KEEP_ALIVE = 60000L;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerMonitor.class.getName());
+}
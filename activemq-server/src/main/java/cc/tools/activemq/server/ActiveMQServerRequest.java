@@ -0,0 +1,199 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * This class implements the context of one request: the decrypted request
+ * fields in fixed slots, the publish result and the response values.
+ * Contexts are pooled and reused, so the request hot path does not allocate
+ * maps, buffers or arrays per request. A context is acquired with
+ * {@link #acquire()} and must be handed back with {@link #release()} once
+ * the response is written.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerRequest {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerRequest() {
+  }
+
+  /**
+   * Method takes a context from the pool, or creates one if the pool is
+   * empty.
+   * @return {@link ActiveMQServerRequest} empty context.
+   */
+  public static ActiveMQServerRequest acquire() {
+
+    ActiveMQServerRequest context = _pool.poll();
+
+    return (context != null ? context : new ActiveMQServerRequest());
+  }
+
+  /**
+   * Method clears the context and hands it back to the pool. A context that
+   * does not fit in the pool is left to the garbage collector.
+   */
+  public void release() {
+
+    for (int i = 0; i < _values.length; i++) {
+
+      _values[i] = null;
+    }
+
+    for (int i = 0; i < _response.length; i++) {
+
+      _response[i] = null;
+    }
+
+    _result.reset();
+
+    _pool.offer(this);
+  }
+
+  /**
+   * Method returns a request field.
+   * @param key field name, one of {@link #_FIELDS}.
+   * @return String decrypted value, null if not set.
+   */
+  public String get(String key) {
+
+    return _values[slot(key)];
+  }
+
+  /**
+   * Method sets a request field.
+   * @param key field name, one of {@link #_FIELDS}.
+   * @param value decrypted value.
+   */
+  public void put(String key, String value) {
+
+    _values[slot(key)] = value;
+  }
+
+  /**
+   * Method to get the publish result.
+   * @return {@link ActiveMQServerResult} result.
+   */
+  public ActiveMQServerResult getResult() {
+    return _result;
+  }
+
+  /**
+   * Method to get the per-stage timing of the request.
+   * @return {@link ActiveMQServerTiming} timing.
+   */
+  public ActiveMQServerTiming getTiming() {
+    return _result.getTiming();
+  }
+
+  /**
+   * Method fills the reused response value slots.
+   *
+   * @param header client header.
+   * @param id client call ID.
+   * @param code result status code.
+   * @param remote client address.
+   * @param mqid MQ transaction id.
+   * @return String[] response values.
+   */
+  public String[] getResponse(String header, String id, String code, String remote, String mqid) {
+
+    _response[0] = header;
+
+    _response[1] = id;
+
+    _response[2] = code;
+
+    _response[3] = remote;
+
+    _response[4] = mqid;
+
+    return _response;
+  }
+
+  /**
+   * Method fills the reused response value slots including a count.
+   *
+   * @param header client header.
+   * @param id client call ID.
+   * @param code result status code.
+   * @param remote client address.
+   * @param mqid MQ transaction id.
+   * @param count message count.
+   * @return String[] response values.
+   */
+  public String[] getResponse(String header, String id, String code, String remote, String mqid, String count) {
+
+    _response[5] = count;
+
+    return getResponse(header, id, code, remote, mqid);
+  }
+
+  /**
+   * Method returns the slot of a field. Field names are constants, so the
+   * reference comparison almost always decides.
+   * @param key field name.
+   * @return int slot index.
+   */
+  private static int slot(String key) {
+
+    for (int i = 0; i < _FIELDS.length; i++) {
+
+      if (_FIELDS[i] == key) {
+
+        return i;
+      }
+    }
+
+    for (int i = 0; i < _FIELDS.length; i++) {
+
+      if (_FIELDS[i].equals(key)) {
+
+        return i;
+      }
+    }
+
+    throw new IllegalArgumentException("unknown request field " + key);
+  }
+
+  /**
+   * Request fields. The position of a field is its slot.
+   */
+  final public static String[] _FIELDS = new String[] { ActiveMQServer._HTTP_KEY_HEADER,
+      ActiveMQServer._HTTP_KEY_USER,
+      ActiveMQServer._HTTP_KEY_PASSWORD,
+      ActiveMQServer._HTTP_KEY_CHANNEL,
+      ActiveMQServer._HTTP_KEY_MESSAGE,
+      ActiveMQServer._HTTP_KEY_PID,
+      ActiveMQServer._HTTP_KEY_SEQUENCE };
+
+  /**
+   * Number of pooled contexts.
+   */
+  final private static int _POOL_SIZE = 256;
+
+  /**
+   * Idle contexts.
+   */
+  final private static ArrayBlockingQueue<ActiveMQServerRequest> _pool = new ArrayBlockingQueue<ActiveMQServerRequest>(_POOL_SIZE);
+
+  /**
+   * Field values indexed by slot.
+   */
+  final private String[] _values = new String[_FIELDS.length];
+
+  /**
+   * Response values.
+   */
+  final private String[] _response = new String[6];
+
+  /**
+   * Publish result.
+   */
+  final private ActiveMQServerResult _result = new ActiveMQServerResult();
+}
@@ -0,0 +1,285 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements the result of a publish, filled in by
+ * {@link ActiveMQServerConnection} and {@link ActiveMQServerAdaptor}. It is
+ * owned by a pooled {@link ActiveMQServerRequest} and reused across
+ * requests.
+ * <p>
+ * It also carries the client's deadline, if the request had one, so every
+ * step of the publish can check whether the remaining time still covers it,
+ * and the validated request metadata stamped on the messages sent.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerResult {
+
+  /**
+   * Constructor.
+   */
+  public ActiveMQServerResult() {
+  }
+
+  /**
+   * Method clears the result for reuse.
+   */
+  public void reset() {
+
+    _code = null;
+
+    _mqid = null;
+
+    _count = 0;
+
+    _deadline = 0;
+
+    _expiration = 0;
+
+    _isExpired = false;
+
+    _header = null;
+
+    _pid = null;
+
+    _address = null;
+
+    _ingest = 0;
+
+    _timing.reset();
+  }
+
+  /**
+   * Method to get the result status code.
+   * @return String code, null if not set.
+   */
+  public String getCode() {
+    return _code;
+  }
+
+  /**
+   * Method to set the result status code.
+   * @param code status code.
+   */
+  public void setCode(String code) {
+    _code = code;
+  }
+
+  /**
+   * Method to get the MQ transaction id.
+   * @return String id, null if not set.
+   */
+  public String getMqid() {
+    return _mqid;
+  }
+
+  /**
+   * Method to set the MQ transaction id.
+   * @param mqid MQ transaction id.
+   */
+  public void setMqid(String mqid) {
+    _mqid = mqid;
+  }
+
+  /**
+   * Method to get the number of messages sent.
+   * @return int count.
+   */
+  public int getCount() {
+    return _count;
+  }
+
+  /**
+   * Method to set the number of messages sent.
+   * @param count message count.
+   */
+  public void setCount(int count) {
+    _count = count;
+  }
+
+  /**
+   * Method sets the deadline of the request.
+   * @param timeout time (ms) from now the client waits for, or 0 for none.
+   * @param grace time (ms) messages of the request outlive the deadline.
+   */
+  public void setDeadline(long timeout, long grace) {
+
+    if (timeout <= 0) {
+
+      _deadline = 0;
+
+      _expiration = 0;
+
+      return;
+    }
+
+    _deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    _expiration = System.currentTimeMillis() + timeout + grace;
+  }
+
+  /**
+   * Method returns whether the time left before the deadline covers a step.
+   * @param nanos expected duration (ns) of the step.
+   * @return boolean true if covered or there is no deadline.
+   */
+  public boolean covers(long nanos) {
+
+    return _deadline == 0 ||
+        _deadline - System.nanoTime() >= nanos;
+  }
+
+  /**
+   * Method to get the time left before the deadline.
+   * @return long time (ms), 0 once passed, Long.MAX_VALUE if there is no deadline.
+   */
+  public long getRemaining() {
+
+    if (_deadline == 0) {
+
+      return Long.MAX_VALUE;
+    }
+
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(_deadline - System.nanoTime()));
+  }
+
+  /**
+   * Method to get the JMS expiration of messages of the request, the
+   * deadline plus grace time.
+   * @return long time (ms since epoch), 0 if there is no deadline.
+   */
+  public long getExpiration() {
+    return _expiration;
+  }
+
+  /**
+   * Method marks the request as given up because of its deadline.
+   */
+  public void expire() {
+    _isExpired = true;
+  }
+
+  /**
+   * Method returns whether the request was given up because of its deadline.
+   * @return boolean true if expired.
+   */
+  public boolean getIsExpired() {
+    return _isExpired;
+  }
+
+  /**
+   * Method sets the validated request metadata.
+   * @param header client header.
+   * @param pid client process id.
+   * @param address client IP address.
+   * @param ingest time (ms since epoch) the request was accepted.
+   */
+  public void setMetadata(String header, String pid, String address, long ingest) {
+
+    _header = header;
+
+    _pid = pid;
+
+    _address = address;
+
+    _ingest = ingest;
+  }
+
+  /**
+   * Method to get the client header.
+   * @return String header, null if not set.
+   */
+  public String getHeader() {
+    return _header;
+  }
+
+  /**
+   * Method to get the client process id.
+   * @return String pid, null if not set.
+   */
+  public String getPid() {
+    return _pid;
+  }
+
+  /**
+   * Method to get the client IP address.
+   * @return String address, null if not set.
+   */
+  public String getAddress() {
+    return _address;
+  }
+
+  /**
+   * Method to get the time the request was accepted.
+   * @return long time (ms since epoch), 0 if not set.
+   */
+  public long getIngest() {
+    return _ingest;
+  }
+
+  /**
+   * Method to get the per-stage timing of the request.
+   * @return {@link ActiveMQServerTiming} timing.
+   */
+  public ActiveMQServerTiming getTiming() {
+    return _timing;
+  }
+
+  /**
+   * Result status code.
+   */
+  private String _code = null;
+
+  /**
+   * MQ transaction id.
+   */
+  private String _mqid = null;
+
+  /**
+   * Messages sent.
+   */
+  private int _count = 0;
+
+  /**
+   * Deadline (ns, {@link System#nanoTime()} based), 0 if none.
+   */
+  private long _deadline = 0;
+
+  /**
+   * Message expiration (ms since epoch), 0 if none.
+   */
+  private long _expiration = 0;
+
+  /**
+   * boolean indicating whether the request was given up at its deadline.
+   */
+  private boolean _isExpired = false;
+
+  /**
+   * Client header.
+   */
+  private String _header = null;
+
+  /**
+   * Client process id.
+   */
+  private String _pid = null;
+
+  /**
+   * Client IP address.
+   */
+  private String _address = null;
+
+  /**
+   * Time (ms since epoch) the request was accepted, 0 if not set.
+   */
+  private long _ingest = 0;
+
+  /**
+   * Per-stage timing.
+   */
+  final private ActiveMQServerTiming _timing = new ActiveMQServerTiming();
+}
@@ -0,0 +1,162 @@
+package cc.tools.activemq.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements one stage of the request validation pipeline. Each
+ * stage counts the requests it passed and rejected and the time it took,
+ * published through {@link ActiveMQServerMetrics} as
+ * <code>stage.&lt;name&gt;.passed</code>, <code>.rejected</code> and
+ * <code>.nanos</code>. Timed requests also get the stage's duration in their
+ * {@link ActiveMQServerTiming}. A moving average of the duration tells
+ * requests with a deadline whether they can still afford the stage. The
+ * average halves every {@value _ESTIMATE_HALF_LIFE} ms without a sample, so
+ * one slow sample cannot keep every later deadline request out of a stage
+ * that then never runs again to correct it.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerStage {
+
+  /**
+   * Constructor.
+   * @param name stage name.
+   */
+  public ActiveMQServerStage(String name) {
+
+    _passed = ActiveMQServerMetrics.counter("stage." + name + ".passed");
+
+    _rejected = ActiveMQServerMetrics.counter("stage." + name + ".rejected");
+
+    _nanos = ActiveMQServerMetrics.counter("stage." + name + ".nanos");
+
+    _slot = ActiveMQServerTiming.register(name);
+
+  }
+
+  /**
+   * Method marks the start of the stage.
+   * @return long start time (ns).
+   */
+  public long begin() {
+
+    return System.nanoTime();
+
+  }
+
+  /**
+   * Method marks the end of the stage.
+   *
+   * @param start start time returned by {@link #begin()}.
+   * @param result boolean true if the request passed the stage.
+   * @return boolean result.
+   */
+  public boolean end(long start, boolean result) {
+
+    return end(start, result, null);
+  }
+
+  /**
+   * Method marks the end of the stage and records it in a request timing.
+   *
+   * @param start start time returned by {@link #begin()}.
+   * @param result boolean true if the request passed the stage.
+   * @param timing request timing, or null.
+   * @return boolean result.
+   */
+  public boolean end(long start, boolean result, ActiveMQServerTiming timing) {
+
+    long nanos = System.nanoTime() - start;
+
+    _nanos.add(nanos);
+
+    long now = start + nanos;
+
+    long estimate = getEstimate(now);
+
+    _estimate = estimate + ((nanos - estimate) >> _ESTIMATE_SHIFT);
+
+    _sampledAt = now;
+
+    (result ? _passed : _rejected).increment();
+
+    if (timing != null) {
+
+      timing.add(_slot, nanos);
+    }
+
+    return result;
+  }
+
+  /**
+   * Method to get the expected duration of the stage.
+   * @return long moving average of the duration (ns), decayed since the
+   *         last sample.
+   */
+  public long getEstimate() {
+    return getEstimate(System.nanoTime());
+  }
+
+  /**
+   * Method to get the expected duration of the stage at a given time.
+   * @param now time ({@link System#nanoTime()}).
+   * @return long moving average of the duration (ns), decayed since the
+   *         last sample.
+   */
+  private long getEstimate(long now) {
+
+    long halves = (now - _sampledAt) / _ESTIMATE_HALF_LIFE_NANOS;
+
+    return (halves <= 0 ? _estimate : _estimate >> Math.min(63, halves));
+  }
+
+  /**
+   * Moving average weight, each duration counts 1/2^{@value _ESTIMATE_SHIFT}.
+   */
+  final private static int _ESTIMATE_SHIFT = 3;
+
+  /**
+   * Time (ms) '{@value _ESTIMATE_HALF_LIFE}' without a sample after which the
+   * estimate halves.
+   */
+  final private static long _ESTIMATE_HALF_LIFE = 1000L;
+
+  /**
+   * Estimate half life (ns).
+   */
+  final private static long _ESTIMATE_HALF_LIFE_NANOS = TimeUnit.MILLISECONDS.toNanos(_ESTIMATE_HALF_LIFE);
+
+  /**
+   * Moving average of the duration (ns) at the last sample. Updates may race
+   * and lose a sample, which an estimate can afford.
+   */
+  private volatile long _estimate = 0;
+
+  /**
+   * Time ({@link System#nanoTime()}) of the last sample.
+   */
+  private volatile long _sampledAt = System.nanoTime();
+
+  /**
+   * Slot in {@link ActiveMQServerTiming}.
+   */
+  final private int _slot;
+
+  /**
+   * Requests passed.
+   */
+  final private LongAdder _passed;
+
+  /**
+   * Requests rejected.
+   */
+  final private LongAdder _rejected;
+
+  /**
+   * Time spent (ns).
+   */
+  final private LongAdder _nanos;
+}
@@ -0,0 +1,161 @@
+package cc.tools.activemq.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class implements the servlet startup pipeline. Phases either run in
+ * line or are forked to run in parallel with each other, and each phase is
+ * timed. Timings are logged and published through
+ * {@link ActiveMQServerMetrics} as <code>startup.&lt;phase&gt;.millis</code>
+ * and <code>startup.total.millis</code>.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerStartup {
+
+  /**
+   * Constructor.
+   */
+  public ActiveMQServerStartup() {
+
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+    _executor = Executors.newCachedThreadPool(r -> {
+
+      Thread thread = new Thread(r, "activemq-startup");
+
+      thread.setDaemon(true);
+
+      // JNDI lookups of java:comp/env resolve through the web application's
+      // class loader.
+      thread.setContextClassLoader(loader);
+
+      return thread;
+    });
+
+  }
+
+  /**
+   * Method runs a phase in line.
+   *
+   * @param name phase name.
+   * @param phase phase returning true on success.
+   * @return boolean true if success, false otherwise.
+   */
+  public boolean run(String name, BooleanSupplier phase) {
+
+    return time(name, phase);
+  }
+
+  /**
+   * Method starts a phase in parallel with other forked phases.
+   *
+   * @param name phase name.
+   * @param phase phase returning true on success.
+   */
+  public void fork(String name, BooleanSupplier phase) {
+
+    _phases.add(CompletableFuture.supplyAsync(() -> time(name, phase), _executor));
+
+  }
+
+  /**
+   * Method waits for all forked phases and ends the pipeline.
+   *
+   * @return boolean true if all phases succeeded, false otherwise.
+   */
+  public boolean join() {
+
+    boolean result = true;
+
+    for (CompletableFuture<Boolean> phase : _phases) {
+
+      try {
+
+        result &= phase.get();
+
+      } catch (Exception e) {
+
+        _logger.exception(e);
+
+        result = false;
+      }
+    }
+
+    _executor.shutdown();
+
+    long millis = (System.nanoTime() - _start) / 1000000L;
+
+    ActiveMQServerMetrics.gauge("startup.total.millis", () -> millis);
+
+    _logger.info("startup ",
+        (result ? "completed" : "failed"),
+        " in ",
+        Long.toString(millis),
+        " ms");
+
+    return result;
+  }
+
+  /**
+   * Method runs and times a phase.
+   *
+   * @param name phase name.
+   * @param phase phase returning true on success.
+   * @return boolean true if success, false otherwise.
+   */
+  private boolean time(String name, BooleanSupplier phase) {
+
+    long start = System.nanoTime();
+
+    boolean result = false;
+
+    try {
+
+      result = phase.getAsBoolean();
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    long millis = (System.nanoTime() - start) / 1000000L;
+
+    ActiveMQServerMetrics.gauge("startup." + name + ".millis", () -> millis);
+
+    _logger.info("startup phase ",
+        name,
+        (result ? " valid in " : " failed in "),
+        Long.toString(millis),
+        " ms");
+
+    return result;
+  }
+
+  /**
+   * Pipeline start time (ns).
+   */
+  final private long _start = System.nanoTime();
+
+  /**
+   * Forked phases.
+   */
+  final private List<CompletableFuture<Boolean>> _phases = new ArrayList<CompletableFuture<Boolean>>();
+
+  /**
+   * Executor running forked phases.
+   */
+  final private ExecutorService _executor;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerStartup.class.getName());
+}
@@ -0,0 +1,291 @@
+package cc.tools.activemq.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * This class implements one HTTP Server-Sent Events subscriber attached to an
+ * {@link ActiveMQServerTopic}. Events are queued in a bounded buffer and
+ * written with non-blocking output, so the broker thread never waits on a
+ * client. A subscriber whose buffer overflows is dropped.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerSubscriber implements WriteListener, AsyncListener {
+
+  /**
+   * Constructor.
+   * @param id client call ID.
+   * @param async servlet async context holding the open response.
+   * @param size max number of events buffered for this subscriber.
+   * @throws IOException .
+   */
+  public ActiveMQServerSubscriber(String id, AsyncContext async, int size) throws IOException {
+
+    _id = id;
+
+    _async = async;
+
+    _queue = new ArrayBlockingQueue<byte[]>(size);
+
+    _async.addListener(this);
+
+    _output = _async.getResponse().getOutputStream();
+
+    _output.setWriteListener(this);
+  }
+
+  /**
+   * Method to queue an event for this subscriber. The subscriber is closed if
+   * its buffer is full.
+   *
+   * @param event encoded event.
+   * @return boolean true if event was queued, false if subscriber is closed.
+   */
+  public boolean offer(byte[] event) {
+
+    if (_closed.get()) {
+
+      return false;
+    }
+
+    if (!_queue.offer(event)) {
+
+      _logger.severe("subscriber id ",
+          _id,
+          " dropped as slow");
+
+      close();
+
+      return false;
+    }
+
+    drain();
+
+    return true;
+  }
+
+  /**
+   * Method writes queued events while the output stream accepts them without
+   * blocking.
+   */
+  synchronized private void drain() {
+
+    try {
+
+      while (!_closed.get() &&
+          _output.isReady()) {
+
+        byte[] event = _queue.poll();
+
+        if (event == null) {
+
+          _output.flush();
+
+          return;
+        }
+
+        _output.write(event);
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      close();
+    }
+  }
+
+  /**
+   * Method to detach subscriber from its topic and complete the response.
+   */
+  public void close() {
+
+    if (!_closed.compareAndSet(false, true)) {
+
+      return;
+    }
+
+    ActiveMQServerTopic topic = _topic;
+
+    if (topic != null) {
+
+      topic.remove(this);
+    }
+
+    _queue.clear();
+
+    try {
+
+      _async.complete();
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+  }
+
+  /**
+   * Method sets topic this subscriber is attached to.
+   * @param topic owning {@link ActiveMQServerTopic}.
+   */
+  public void setTopic(ActiveMQServerTopic topic) {
+
+    _topic = topic;
+
+  }
+
+  /**
+   * Method to check whether subscriber is closed.
+   * @return boolean true if closed.
+   */
+  public boolean getIsClosed() {
+
+    return _closed.get();
+
+  }
+
+  /**
+   * Method encodes text as a Server-Sent Events message. Each line of text
+   * becomes one data field.
+   *
+   * @param id event ID, or null.
+   * @param text event data.
+   * @return byte[] encoded event.
+   */
+  public static byte[] encodeEvent(String id, String text) {
+
+    StringBuilder buffer = new StringBuilder(text.length() + 32);
+
+    if (id != null) {
+
+      buffer.append("id: ").append(id).append('\n');
+    }
+
+    for (String line : text.split("\r\n|\r|\n", -1)) {
+
+      buffer.append("data: ").append(line).append('\n');
+    }
+
+    buffer.append('\n');
+
+    return buffer.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * {@link WriteListener} callback when output can be written again.
+   * @throws IOException .
+   */
+  @Override
+  public void onWritePossible() throws IOException {
+
+    drain();
+
+  }
+
+  /**
+   * {@link WriteListener} callback on write error.
+   * @param t error.
+   */
+  @Override
+  public void onError(Throwable t) {
+
+    _logger.severe("subscriber id ",
+        _id,
+        " write error ",
+        t.toString());
+
+    close();
+  }
+
+  /**
+   * {@link AsyncListener} callback on response completion.
+   * @param event async event.
+   * @throws IOException .
+   */
+  @Override
+  public void onComplete(AsyncEvent event) throws IOException {
+
+    close();
+
+  }
+
+  /**
+   * {@link AsyncListener} callback on response timeout.
+   * @param event async event.
+   * @throws IOException .
+   */
+  @Override
+  public void onTimeout(AsyncEvent event) throws IOException {
+
+    close();
+
+  }
+
+  /**
+   * {@link AsyncListener} callback on response error.
+   * @param event async event.
+   * @throws IOException .
+   */
+  @Override
+  public void onError(AsyncEvent event) throws IOException {
+
+    close();
+
+  }
+
+  /**
+   * {@link AsyncListener} callback on async restart.
+   * @param event async event.
+   * @throws IOException .
+   */
+  @Override
+  public void onStartAsync(AsyncEvent event) throws IOException {
+  }
+
+  /**
+   * Client call ID.
+   */
+  final private String _id;
+
+  /**
+   * Servlet async context.
+   */
+  final private AsyncContext _async;
+
+  /**
+   * Response output stream.
+   */
+  final private ServletOutputStream _output;
+
+  /**
+   * Events waiting to be written.
+   */
+  final private BlockingQueue<byte[]> _queue;
+
+  /**
+   * boolean indicating whether this subscriber is closed.
+   */
+  final private AtomicBoolean _closed = new AtomicBoolean(false);
+
+  /**
+   * Owning topic.
+   */
+  private volatile ActiveMQServerTopic _topic = null;
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private static ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerSubscriber.class.getName());
+}
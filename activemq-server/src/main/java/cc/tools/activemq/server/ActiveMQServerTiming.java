@@ -0,0 +1,190 @@
+package cc.tools.activemq.server;
+
+/**
+ * This class implements the per-stage latency breakdown of one request,
+ * returned to the client as a <code>Server-Timing</code> header such as
+ * <code>credentials;dur=3.104, send;dur=12.400, total;dur=16.020</code>.
+ * Durations are measured by {@link ActiveMQServerStage} with the monotonic
+ * clock and given in ms. Each stage registers a slot, and a timing only
+ * records stages while it is enabled, so untimed requests pay nothing.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerTiming {
+
+  /**
+   * Constructor.
+   */
+  public ActiveMQServerTiming() {
+  }
+
+  /**
+   * Method returns the slot of a stage, registering it on first use.
+   *
+   * @param name stage name.
+   * @return int slot index.
+   */
+  public static synchronized int register(String name) {
+
+    for (int i = 0; i < _count; i++) {
+
+      if (_names[i].equals(name)) {
+
+        return i;
+      }
+    }
+
+    if (_count == _SLOTS) {
+
+      throw new IllegalStateException("too many timed stages");
+    }
+
+    _names[_count] = name;
+
+    return _count++;
+  }
+
+  /**
+   * Method enables recording and starts the total duration.
+   */
+  public void start() {
+
+    _isEnabled = true;
+
+    _start = System.nanoTime();
+  }
+
+  /**
+   * Method clears the timing for reuse and disables recording.
+   */
+  public void reset() {
+
+    for (int i = 0; i < _nanos.length; i++) {
+
+      _nanos[i] = 0;
+    }
+
+    _mask = 0;
+
+    _isEnabled = false;
+  }
+
+  /**
+   * Method adds time spent in a stage, if recording.
+   *
+   * @param slot stage slot.
+   * @param nanos duration (ns).
+   */
+  public void add(int slot, long nanos) {
+
+    if (!_isEnabled) {
+
+      return;
+    }
+
+    _nanos[slot] += nanos;
+
+    _mask |= 1L << slot;
+  }
+
+  /**
+   * Method renders the stages that ran, in registration order, followed by
+   * the total, as a <code>Server-Timing</code> header value.
+   *
+   * @return String header value.
+   */
+  public String render() {
+
+    StringBuilder buffer = new StringBuilder(256);
+
+    for (int i = 0; i < _SLOTS; i++) {
+
+      if ((_mask & (1L << i)) != 0) {
+
+        append(buffer, _names[i], _nanos[i]);
+      }
+    }
+
+    append(buffer, "total", System.nanoTime() - _start);
+
+    return buffer.toString();
+  }
+
+  /**
+   * Method appends one metric with its duration in ms to three decimals.
+   *
+   * @param buffer header value.
+   * @param name metric name.
+   * @param nanos duration (ns).
+   */
+  private static void append(StringBuilder buffer, String name, long nanos) {
+
+    long micros = nanos / 1000L;
+
+    long fraction = micros % 1000L;
+
+    if (buffer.length() > 0) {
+
+      buffer.append(", ");
+    }
+
+    buffer.append(name).append(";dur=").append(micros / 1000L).append('.');
+
+    if (fraction < 100) {
+
+      buffer.append('0');
+    }
+
+    if (fraction < 10) {
+
+      buffer.append('0');
+    }
+
+    buffer.append(fraction);
+  }
+
+  /**
+   * Method to check whether the timing is recording.
+   * @return boolean true if enabled.
+   */
+  public boolean getIsEnabled() {
+    return _isEnabled;
+  }
+
+  /**
+   * Max number of timed stages.
+   */
+  final private static int _SLOTS = 32;
+
+  /**
+   * Stage names indexed by slot.
+   */
+  final private static String[] _names = new String[_SLOTS];
+
+  /**
+   * Number of registered stages.
+   */
+  private static int _count = 0;
+
+  /**
+   * Time spent (ns) indexed by slot.
+   */
+  final private long[] _nanos = new long[_SLOTS];
+
+  /**
+   * Slots that ran.
+   */
+  private long _mask = 0;
+
+  /**
+   * boolean indicating whether stages are recorded.
+   */
+  private boolean _isEnabled = false;
+
+  /**
+   * Request start time (ns).
+   */
+  private long _start = 0;
+}
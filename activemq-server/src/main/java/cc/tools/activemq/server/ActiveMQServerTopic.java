@@ -0,0 +1,331 @@
+package cc.tools.activemq.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.naming.Context;
+
+/**
+ * This class implements a single broker subscription to a topic that fans
+ * out every message to all attached {@link ActiveMQServerSubscriber} objects.
+ * The subscription is closed once its last subscriber detaches, and it then
+ * removes itself from the registry it was created for.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerTopic implements ExceptionListener, MessageListener {
+
+  /**
+   * Constructor.
+   * @param context Initial Naming context.
+   * @param factory MQ Connection Factory.
+   * @param topic MQ Topic name, or comma separated names.
+   * @param topics registry of topic subscriptions indexed by name.
+   */
+  public ActiveMQServerTopic(Context context, 
+      ConnectionFactory factory, 
+      String topic, 
+      Map<String, ActiveMQServerTopic> topics) {
+
+    _name = topic;
+
+    _topics = topics;
+
+    try {
+
+      Destination destination = ActiveMQServerDestination.lookup(context, topic);
+
+      if (!(destination instanceof Topic)) {
+
+        _logger.severe("channel ",
+            topic,
+            " is not a topic");
+
+        return;
+      }
+
+      _factory = factory;
+
+      _connection = _factory.createConnection();
+
+      _open.increment();
+
+      _connection.setExceptionListener(this);
+
+      _session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+      _consumer = _session.createConsumer((Topic) destination);
+
+      _consumer.setMessageListener(this);
+
+      _connection.start();
+
+      _isValid.set(true);
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+
+      close();
+    }
+
+  }
+
+  /**
+   * Method attaches a subscriber. A subscription that has been closed takes
+   * no new subscribers, the caller has to create a fresh one.
+   * @param subscriber {@link ActiveMQServerSubscriber} to be attached.
+   * @return boolean true if attached, false if this subscription is closed.
+   */
+  public boolean add(ActiveMQServerSubscriber subscriber) {
+
+    synchronized (_subscribers) {
+
+      if (!_isValid.get()) {
+
+        return false;
+      }
+
+      subscriber.setTopic(this);
+
+      _subscribers.add(subscriber);
+    }
+
+    if (subscriber.getIsClosed()) {
+
+      remove(subscriber);
+    }
+
+    return true;
+  }
+
+  /**
+   * Method detaches a subscriber, and closes the subscription once the last
+   * subscriber is gone.
+   * @param subscriber {@link ActiveMQServerSubscriber} to be detached.
+   */
+  public void remove(ActiveMQServerSubscriber subscriber) {
+
+    boolean idle = false;
+
+    synchronized (_subscribers) {
+
+      idle = (_subscribers.remove(subscriber) &&
+          _subscribers.isEmpty() &&
+          _isValid.compareAndSet(true, false));
+    }
+
+    if (idle) {
+
+      _logger.info("topic ",
+          _name,
+          " has no subscribers");
+
+      close();
+    }
+  }
+
+  /**
+   * Method is the message callback for implemented Interface
+   * {@link MessageListener}. The message is encoded once and offered to
+   * every subscriber.
+   * @param message message received from MQ.
+   */
+  @Override
+  public void onMessage(Message message) {
+
+    try {
+
+      if (!(message instanceof TextMessage)) {
+
+        return;
+      }
+
+      byte[] event = ActiveMQServerSubscriber.encodeEvent(message.getJMSMessageID(),
+          ((TextMessage) message).getText());
+
+      for (ActiveMQServerSubscriber subscriber : _subscribers) {
+
+        subscriber.offer(event);
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+  }
+
+  /**
+   * Method to close down MQ resources and all attached subscribers.
+   */
+  public void close() {
+
+    synchronized (_subscribers) {
+
+      _isValid.set(false);
+    }
+
+    if (!_isClosed.compareAndSet(false, true)) {
+
+      return;
+    }
+
+    if (_topics != null) {
+
+      _topics.remove(_name, this);
+    }
+
+    try {
+
+      if (_consumer != null) {
+
+        _consumer.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    try {
+
+      if (_session != null) {
+
+        _session.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    try {
+
+      if (_connection != null) {
+
+        _open.decrement();
+
+        _connection.close();
+
+      }
+
+    } catch (Exception e) {
+
+      _logger.exception(e);
+    }
+
+    _consumer = null;
+
+    _factory = null;
+
+    for (ActiveMQServerSubscriber subscriber : _subscribers) {
+
+      subscriber.close();
+    }
+  }
+
+  /**
+   * Method is the exception callback for implemented
+   * Interface {@link ExceptionListener} generated by error
+   * in MQ subscribe framework. Subscribers are closed so clients reconnect
+   * to a fresh subscription.
+   * @param e exception throw by MQ.
+   */
+  @Override
+  public void onException(JMSException e) {
+
+    _logger.exception(e);
+
+    close();
+  }
+
+  /**
+   * Method to check whether topic object is valid.
+   * @return boolean indicating validity.
+   */
+  public boolean getIsValid() {
+
+    return _isValid.get();
+
+  }
+
+  /**
+   * MQ Topic name.
+   */
+  final private String _name;
+
+  /**
+   * Registry of topic subscriptions this subscription is removed from once
+   * closed.
+   */
+  final private Map<String, ActiveMQServerTopic> _topics;
+
+  /**
+   * Attached subscribers.
+   */
+  final private List<ActiveMQServerSubscriber> _subscribers = new CopyOnWriteArrayList<ActiveMQServerSubscriber>();
+
+  /**
+   * boolean indicating whether this {@link ActiveMQServerTopic} object is in a valid
+   * state.
+   */
+  private AtomicBoolean _isValid = new AtomicBoolean(false);
+
+  /**
+   * JMS Connection Factory.
+   */
+  private ConnectionFactory _factory = null;
+
+  /**
+   * JMS Connection.
+   */
+  private Connection _connection = null;
+
+  /**
+   * JMS Session.
+   */
+  private Session _session = null;
+
+  /**
+   * JMS Consumer.
+   */
+  private MessageConsumer _consumer = null;
+
+  /**
+   * boolean indicating whether MQ resources have been closed.
+   */
+  final private AtomicBoolean _isClosed = new AtomicBoolean(false);
+
+  /**
+   * Metric '{@value _METRIC_OPEN}' counting open topic connections.
+   */
+  final public static String _METRIC_OPEN = "jms.topic.open";
+
+  /**
+   * Open topic connections, published as '{@value _METRIC_OPEN}'.
+   */
+  final private static LongAdder _open = ActiveMQServerMetrics.counter(_METRIC_OPEN);
+
+  /**
+   * Local logger reference for logging operations.
+   */
+  final private ActiveMQServerLogger _logger = new ActiveMQServerLogger(ActiveMQServerTopic.class.getName());
+}
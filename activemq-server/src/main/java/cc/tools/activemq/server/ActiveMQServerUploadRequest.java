@@ -0,0 +1,93 @@
+package cc.tools.activemq.server;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * This class implements the view of an upload request whose fields are sent
+ * as headers. The body of an upload is the raw payload, so its fields cannot
+ * be sent in a form, and the query string ends up in access logs, which must
+ * not see credentials. Field 'user' is therefore read from header
+ * '{@value _HEADER_PREFIX}user', and so on, and the query string is not
+ * read at all.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerUploadRequest extends HttpServletRequestWrapper {
+
+  /**
+   * Constructor.
+   * @param request client {@link javax.servlet.http.HttpServletRequest} object.
+   */
+  public ActiveMQServerUploadRequest(HttpServletRequest request) {
+
+    super(request);
+
+  }
+
+  /**
+   * Method returns a request field from its header.
+   * @param name field name.
+   * @return String field value, or null if absent.
+   */
+  @Override
+  public String getParameter(String name) {
+    return getHeader(_HEADER_PREFIX + name);
+  }
+
+  /**
+   * Method returns a request field from its header.
+   * @param name field name.
+   * @return String[] field value, or null if absent.
+   */
+  @Override
+  public String[] getParameterValues(String name) {
+
+    String value = getParameter(name);
+
+    return (value == null ? null : new String[] { value });
+  }
+
+  /**
+   * Method returns the upload fields present.
+   * @return Map fields indexed by name.
+   */
+  @Override
+  public Map<String, String[]> getParameterMap() {
+
+    Map<String, String[]> fields = new HashMap<String, String[]>();
+
+    for (String name : ActiveMQServer._HTTP_UPLOAD_KEYS) {
+
+      String[] values = getParameterValues(name);
+
+      if (values != null) {
+
+        fields.put(name, values);
+      }
+    }
+
+    return Collections.unmodifiableMap(fields);
+  }
+
+  /**
+   * Method returns the names of the upload fields present.
+   * @return Enumeration field names.
+   */
+  @Override
+  public Enumeration<String> getParameterNames() {
+    return Collections.enumeration(getParameterMap().keySet());
+  }
+
+  /**
+   * Prefix '{@value _HEADER_PREFIX}' of the headers carrying upload fields.
+   */
+  final public static String _HEADER_PREFIX = "X-CC-";
+}
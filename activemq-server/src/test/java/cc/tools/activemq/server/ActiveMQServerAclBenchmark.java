@@ -0,0 +1,96 @@
+package cc.tools.activemq.server;
+
+/**
+ * This class implements a microbenchmark of channel checks, comparing the
+ * compiled {@link ActiveMQServerAcl} trie with the regular expression it
+ * replaced. Run it with <code>./gradlew benchmarkAcl</code>.
+ *
+ * @author cc
+ * @version %I%, %G%
+ * @since 0.1
+ */
+public class ActiveMQServerAclBenchmark {
+
+  /**
+   * Constructor.
+   */
+  private ActiveMQServerAclBenchmark() {
+  }
+
+  /**
+   * Method runs the benchmark.
+   * @param args unused.
+   */
+  public static void main(String[] args) {
+
+    ActiveMQServerAcl acl = new ActiveMQServerAcl();
+
+    acl.load("*:public.>\n" +
+        "alice:logs/app.*,logs/*/audit,orders,orders.eu,orders.us\n" +
+        "bob:metrics/>\n");
+
+    for (int round = 0; round < _ROUNDS; round++) {
+
+      long start = System.nanoTime();
+
+      int allowed = 0;
+
+      for (int i = 0; i < _ITERATIONS; i++) {
+
+        if (acl.check("alice", _CHANNELS[i & 3], _MAX) == ActiveMQServerAcl._ALLOWED) {
+
+          allowed++;
+        }
+      }
+
+      long trie = System.nanoTime() - start;
+
+      start = System.nanoTime();
+
+      int matched = 0;
+
+      for (int i = 0; i < _ITERATIONS; i++) {
+
+        if (_CHANNELS[i & 3].matches(_PATTERN)) {
+
+          matched++;
+        }
+      }
+
+      long regex = System.nanoTime() - start;
+
+      System.out.println("round " + round +
+          ": trie " + String.format("%.1f", (double) trie / _ITERATIONS) + " ns/op (" + allowed + ")" +
+          ", regex " + String.format("%.1f", (double) regex / _ITERATIONS) + " ns/op (" + matched + ")");
+    }
+  }
+
+  /**
+   * Channels checked in turn.
+   */
+  final private static String[] _CHANNELS = new String[] {
+      "logs/app.web",
+      "logs/eu/audit,orders.eu",
+      "public.news.daily",
+      "metrics/cpu" };
+
+  /**
+   * Channel format regular expression checked before the trie.
+   */
+  final private static String _PATTERN = "^[/a-zA-Z0-9\\.]+(,[/a-zA-Z0-9\\.]+)*$";
+
+  /**
+   * Max number of names in a channel.
+   */
+  final private static int _MAX = 8;
+
+  /**
+   * Measured rounds, the first ones being warm up.
+   */
+  final private static int _ROUNDS = 5;
+
+  /**
+   * Checks per round.
+   */
+  final private static int _ITERATIONS = 2000000;
+}
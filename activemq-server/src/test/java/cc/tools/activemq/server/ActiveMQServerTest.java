@@ -3,10 +3,572 @@
  */
 package cc.tools.activemq.server;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.BytesMessage;
+import javax.jms.ConnectionFactory;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.naming.Context;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+
+import jdk.jfr.EventType;
+
 import org.junit.Test;
 
 public class ActiveMQServerTest {
   @Test public void test1() {
     // do nothing for now
   }
+
+  @Test public void testEncodeEvent() {
+    assertEquals("id: 7\ndata: a\ndata: b\n\n",
+        new String(ActiveMQServerSubscriber.encodeEvent("7", "a\r\nb"), StandardCharsets.UTF_8));
+  }
+
+  @Test public void testDedup() {
+    ActiveMQServerDedup dedup = new ActiveMQServerDedup(10, 60000);
+    assertFalse(ActiveMQServerDedup.key("u/1", "2", "3").equals(ActiveMQServerDedup.key("u", "1/2", "3")));
+    assertEquals(ActiveMQServerDedup.key("Alice", "1", "2"), ActiveMQServerDedup.key("alice", "1", "2"));
+    ActiveMQServerDedup.Entry first = new ActiveMQServerDedup.Entry();
+    assertTrue(dedup.claim("u/1/1", first) == first);
+    ActiveMQServerDedup.Entry second = dedup.claim("u/1/1", new ActiveMQServerDedup.Entry());
+    assertTrue(second == first);
+    assertFalse(second.await(0));
+    dedup.complete("u/1/1", first, "5", "0", "0", true);
+    assertTrue(second.await(0));
+    assertEquals("5", second.getId());
+    ActiveMQServerDedup.Entry failed = new ActiveMQServerDedup.Entry();
+    dedup.claim("u/1/2", failed);
+    dedup.complete("u/1/2", failed, "6", "-11", "0", false);
+    ActiveMQServerDedup.Entry retry = new ActiveMQServerDedup.Entry();
+    assertTrue(dedup.claim("u/1/2", retry) == retry);
+  }
+
+  @Test public void testId() throws Exception {
+    ActiveMQServerId ids = new ActiveMQServerId(513);
+    Set<Long> seen = ConcurrentHashMap.newKeySet();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 20000; j++) {
+          seen.add(ids.next());
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8 * 20000, seen.size());
+    long id = ids.next();
+    assertEquals(513, ActiveMQServerId.getNode(id));
+    assertTrue(Math.abs(ActiveMQServerId.getTime(id) - System.currentTimeMillis()) < 60000);
+  }
+
+  @Test public void testCredentials() throws Exception {
+    ActiveMQServerCredentials credentials = new ActiveMQServerCredentials();
+    assertTrue(credentials.load("# users\n" + ActiveMQServerCredentials.encode("Alice", "secret") + "\n"));
+    assertTrue(credentials.validate("alice", "secret", "10.0.0.1"));
+    assertTrue(credentials.validate("ALICE", "secret", "10.0.0.1"));
+    assertFalse(credentials.validate("alice", "SECRET", "10.0.0.1"));
+    assertFalse(credentials.validate("bob", "secret", "10.0.0.1"));
+    assertTrue(credentials.validate("alice", "secret", "10.0.0.1"));
+    assertTrue(credentials.add("carol", "secret"));
+    assertFalse(credentials.validate("carol", "wrong", "10.0.0.9"));
+    long start = System.nanoTime();
+    assertFalse(credentials.validate("carol", "wrong", "10.0.0.9"));
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(credentials.validate("carol", "secret", "10.0.0.1"));
+    assertFalse(new ActiveMQServerCredentials().load("alice:1:bad"));
+  }
+
+  @Test public void testSplit() {
+    assertEquals(0, ActiveMQServerConfig.split(" ").length);
+    assertEquals(Arrays.asList("client=5:10", "user=1:2"),
+        Arrays.asList(ActiveMQServerConfig.split(" client=5:10 , user=1:2 ")));
+    assertEquals(Arrays.asList("static:(tcp://a:61616,tcp://b:61616)", "tcp://c:61616"),
+        Arrays.asList(ActiveMQServerConfig.split("static:(tcp://a:61616,tcp://b:61616), tcp://c:61616")));
+  }
+
+  @Test public void testMetricsClient() {
+    assertTrue(ActiveMQServer.isMetricsClient("127.0.0.1", null));
+    assertTrue(ActiveMQServer.isMetricsClient("0:0:0:0:0:0:0:1", null));
+    assertFalse(ActiveMQServer.isMetricsClient("10.0.0.7", null));
+    assertFalse(ActiveMQServer.isMetricsClient("10.0.0.7", "10.0.0.70"));
+    assertTrue(ActiveMQServer.isMetricsClient("10.0.0.7", "10.0.0.6, 10.0.0.7"));
+    assertFalse(ActiveMQServer.isMetricsClient(null, "10.0.0.7"));
+  }
+
+  @Test public void testAcl() {
+    ActiveMQServerAcl acl = new ActiveMQServerAcl();
+    assertTrue(acl.load("# rules\n*:public.>\nAlice:logs/app.*,logs/*/audit,orders\n"));
+    assertEquals(ActiveMQServerAcl._ALLOWED, acl.check("alice", "logs/app.web", 4));
+    assertEquals(ActiveMQServerAcl._ALLOWED, acl.check("ALICE", "logs/x/audit,orders,public.a.b", 4));
+    assertEquals(ActiveMQServerAcl._DENIED, acl.check("alice", "logs/app.web.1", 4));
+    assertEquals(ActiveMQServerAcl._DENIED, acl.check("alice", "logs/app", 4));
+    assertEquals(ActiveMQServerAcl._DENIED, acl.check("bob", "orders", 4));
+    assertEquals(ActiveMQServerAcl._ALLOWED, acl.check("bob", "public.news", 4));
+    assertEquals(ActiveMQServerAcl._DENIED, acl.check("bob", "public", 4));
+    assertEquals(ActiveMQServerAcl._MALFORMED, acl.check("alice", "orders,", 4));
+    assertEquals(ActiveMQServerAcl._MALFORMED, acl.check("alice", "logs/app web", 4));
+    assertEquals(ActiveMQServerAcl._MALFORMED, acl.check("alice", "orders,orders", 1));
+    assertFalse(new ActiveMQServerAcl().load("alice:logs/a*"));
+    assertFalse(new ActiveMQServerAcl().load("alice:>/logs"));
+  }
+
+  @Test public void testAdmission() {
+    ActiveMQServerAdmission admission = new ActiveMQServerAdmission("client=1:2,gold=1:3", "alice=gold", 16);
+    assertTrue(admission.getIsValid());
+    assertEquals(0, admission.admitClient("10.0.0.1"));
+    assertEquals(0, admission.admitClient("10.0.0.1"));
+    assertTrue(admission.admitClient("10.0.0.1") > 0);
+    assertEquals(0, admission.admitUser("bob", () -> true));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(ActiveMQServerAdmission._UNAUTHENTICATED, admission.admitUser("alice", () -> false));
+    }
+    assertEquals(0, admission.admitUser("Alice", () -> true));
+    assertEquals(0, admission.admitUser("alice", () -> true));
+    assertEquals(0, admission.admitUser("alice", () -> true));
+    assertTrue(admission.admitUser("alice", () -> true) > 0);
+    assertEquals("1", ActiveMQServerAdmission.getRetryAfter(1));
+    assertFalse(new ActiveMQServerAdmission("client=1", null, 16).getIsValid());
+  }
+
+  @Test public void testEncoder() throws Exception {
+    String text = "a b&c=d/\u00e9\u20ac\ud83d\ude00*-._~";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ActiveMQServerEncoder.write(out, false, new String[] { "id", "code" }, new String[] { "7", text },
+        "message", Arrays.asList("x", ""));
+    assertEquals("id=7&code=" + URLEncoder.encode(text, StandardCharsets.UTF_8) + "&message=x&message=",
+        out.toString(StandardCharsets.UTF_8));
+    out.reset();
+    ActiveMQServerEncoder.write(out, true, new String[] { "code" }, new String[] { "\u00e9" }, null, null);
+    assertEquals(Arrays.toString(new byte[] { 1, 0, 0, 0, 1, 2, 0, 0, 0, 2, (byte) 0xc3, (byte) 0xa9 }),
+        Arrays.toString(out.toByteArray()));
+    assertTrue(ActiveMQServerEncoder.isBinary("text/html, " + ActiveMQServerEncoder._CONTENT_TYPE_BINARY));
+    assertFalse(ActiveMQServerEncoder.isBinary(null));
+  }
+
+  @Test public void testBroker() {
+    ActiveMQServerConfig config = new ActiveMQServerConfig();
+    ActiveMQServerBroker broker = new ActiveMQServerBroker(90, null, "jms/ConnectionFactory", null, config);
+    assertTrue(broker.getIsHealthy());
+    assertEquals(broker.score("CC.MQ"), broker.score("CC.MQ"), 0.0);
+    broker.record(false, 1000);
+    assertTrue(broker.getIsHealthy());
+    assertTrue(broker.getWeight() < 1.0);
+    for (int i = 0; i < 3; i++) {
+      broker.record(false, 1000);
+    }
+    assertFalse(broker.getIsHealthy());
+    assertEquals(1.0, broker.getWeight(), 0.0);
+  }
+
+  @Test public void testBrokerRoutes() {
+    List<String> closed = new ArrayList<String>();
+    ActiveMQServerConfig config = new ActiveMQServerConfig();
+    config.init((ServletContext) Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+        new Class<?>[] { ServletContext.class }, (proxy, method, args) ->
+            (method.getName().equals("getInitParameter") && args[0].toString().startsWith("connect-") ? "1" : null)));
+    ActiveMQServerBroker broker = new ActiveMQServerBroker(91, (Context) stub(Context.class, closed),
+        "jms/ConnectionFactory", (ConnectionFactory) stub(ConnectionFactory.class, closed), config);
+    broker.assign("CC.MQ");
+    assertTrue(broker.connect("1", "CC.MQ", -1, "CC.MQ"));
+    assertTrue(broker.getAdaptor("CC.MQ") != null);
+    assertTrue(ActiveMQServerMetrics.render().contains("broker.91.routes 1\n"));
+    broker.retire("CC.MQ");
+    assertTrue(broker.getAdaptor("CC.MQ") == null);
+    assertTrue(closed.contains("Connection"));
+    closed.clear();
+    assertTrue(broker.connect("2", "CC.MQ", -1, "CC.MQ"));
+    broker.check();
+    assertTrue(broker.getAdaptor("CC.MQ") == null);
+    assertTrue(closed.contains("Connection"));
+    assertTrue(ActiveMQServerMetrics.render().contains("broker.91.routes 0\n"));
+    long probes = ActiveMQServerMetrics.counter("broker.91.probes").sum();
+    broker.check();
+    broker.check();
+    assertEquals(probes + 1, ActiveMQServerMetrics.counter("broker.91.probes").sum());
+  }
+
+  @Test public void testStartup() {
+    ActiveMQServerStartup startup = new ActiveMQServerStartup();
+    assertTrue(startup.run("first", () -> true));
+    startup.fork("second", () -> true);
+    startup.fork("third", () -> { throw new IllegalStateException("phase"); });
+    assertFalse(startup.join());
+    assertTrue(ActiveMQServerMetrics.render().contains("startup.second.millis "));
+  }
+
+  @Test public void testAssembler() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ActiveMQServerAssembler assembler = new ActiveMQServerAssembler(group -> out, 2);
+    assertEquals(null, assembler.accept(chunk("7", 0, -1, false, "abc")));
+    assertEquals(1, assembler.getPending());
+    assertEquals("7", assembler.accept(chunk("7", 1, 2, true, "de")));
+    assertEquals("abcde", out.toString(StandardCharsets.UTF_8));
+    assertEquals(null, assembler.accept(chunk("8", 0, -1, false, "x")));
+    assertEquals(null, assembler.accept(chunk("8", 2, 3, true, "z")));
+    assertEquals(0, assembler.getPending());
+    out.reset();
+    assertEquals(null, assembler.accept(chunk("9", 0, -1, false, "ab")));
+    assertEquals(null, assembler.accept(chunk("9", 0, -1, false, "ab")));
+    assertEquals(null, assembler.accept(chunk("9", 1, -1, false, "cd")));
+    assertEquals(null, assembler.accept(chunk("9", 1, -1, false, "cd")));
+    assertEquals("9", assembler.accept(chunk("9", 2, 3, true, "e")));
+    assertEquals("abcde", out.toString(StandardCharsets.UTF_8));
+    assertEquals(null, assembler.accept(chunk("10", 0, -1, false, "ab")));
+    assertEquals(null, assembler.accept(chunk("10", 1, -1, true, true, "")));
+    assertEquals(0, assembler.getPending());
+  }
+
+  @Test public void testUploadRequest() {
+    HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+        new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) ->
+            (method.getName().equals("getHeader") && args[0].equals("X-CC-user") ? "alice" : null));
+    ActiveMQServerUploadRequest upload = new ActiveMQServerUploadRequest(request);
+    assertEquals("alice", upload.getParameter(ActiveMQServer._HTTP_KEY_USER));
+    assertEquals(null, upload.getParameter(ActiveMQServer._HTTP_KEY_PASSWORD));
+    assertEquals(1, upload.getParameterMap().size());
+  }
+
+  @Test public void testRequest() {
+    ActiveMQServerRequest context = ActiveMQServerRequest.acquire();
+    context.put(ActiveMQServer._HTTP_KEY_PID, "42");
+    context.getResult().setCode("-11");
+    context.getResult().setMetadata("h", "42", "10.0.0.1", 1700000000000L);
+    assertEquals("42", context.get(new String("pid")));
+    assertEquals(null, context.get(ActiveMQServer._HTTP_KEY_SEQUENCE));
+    context.release();
+    ActiveMQServerRequest reused = ActiveMQServerRequest.acquire();
+    assertTrue(reused == context);
+    assertEquals(null, reused.get(ActiveMQServer._HTTP_KEY_PID));
+    assertEquals(null, reused.getResult().getCode());
+    assertEquals(null, reused.getResult().getPid());
+    assertEquals(0, reused.getResult().getIngest());
+    reused.release();
+  }
+
+  @Test public void testDeadline() throws Exception {
+    ActiveMQServerResult result = new ActiveMQServerResult();
+    assertTrue(result.covers(Long.MAX_VALUE));
+    assertEquals(0, result.getExpiration());
+    result.setDeadline(1000, 500);
+    assertTrue(result.covers(1000000L));
+    assertFalse(result.covers(2000000000L));
+    assertTrue(result.getRemaining() <= 1000);
+    assertTrue(result.getExpiration() - System.currentTimeMillis() > 1000);
+    result.expire();
+    assertTrue(result.getIsExpired());
+    result.reset();
+    assertFalse(result.getIsExpired());
+    assertEquals(Long.MAX_VALUE, result.getRemaining());
+    ActiveMQServerStage stage = new ActiveMQServerStage("deadline");
+    stage.end(stage.begin() - 8000000L, true);
+    assertTrue(stage.getEstimate() >= 1000000L);
+    ActiveMQServerStage spiked = new ActiveMQServerStage("deadline.spike");
+    spiked.end(spiked.begin() - 3000000000L, false);
+    ActiveMQServerResult waiting = new ActiveMQServerResult();
+    waiting.setDeadline(200, 0);
+    assertFalse(waiting.covers(spiked.getEstimate()));
+    Thread.sleep(2100);
+    assertTrue(spiked.getEstimate() < 100000000L);
+    waiting.setDeadline(200, 0);
+    assertTrue(waiting.covers(spiked.getEstimate()));
+  }
+
+  @Test public void testLanes() throws Exception {
+    ActiveMQServerLanes lanes = new ActiveMQServerLanes("alert=1:1:alerts.>|ops.alert,default=1:1", 0);
+    assertTrue(lanes.getIsValid());
+    assertEquals("alert", lanes.getLane("alerts.disk,ops.alert"));
+    assertEquals("default", lanes.getLane("debug.web"));
+    assertEquals("default", lanes.getLane("alerts.disk,debug.web"));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    Thread running = new Thread(() -> lanes.call("debug.web", null, () -> {
+      started.countDown();
+      return awaitQuietly(blocked);
+    }));
+    Thread queued = new Thread(() -> lanes.call("debug.web", null, () -> true));
+    running.start();
+    assertTrue(awaitQuietly(started));
+    queued.start();
+    assertTrue(awaitMetric("lane.default.queued 1\n"));
+    try {
+      lanes.call("debug.web", null, () -> true);
+      assertTrue(false);
+    } catch (RejectedExecutionException e) {
+    }
+    assertTrue(lanes.call("alerts.disk", null, () -> true));
+    blocked.countDown();
+    running.join();
+    queued.join();
+    lanes.destroy();
+    assertFalse(new ActiveMQServerLanes("alert=1:1", 0).getIsValid());
+    assertFalse(new ActiveMQServerLanes("early=1:1:early.>,late=0:1:late.>", 0).getIsValid());
+    assertFalse(ActiveMQServerMetrics.render().contains("lane.early."));
+    assertFalse(new ActiveMQServerLanes("alert=2:8:alerts.>,default=4:6", 20).getIsValid());
+    assertTrue(new ActiveMQServerLanes("alert=2:8:alerts.>,default=4:6", 21).getIsValid());
+    assertTrue(new ActiveMQServerLanes(null, 0).call("any", null, () -> true));
+  }
+
+  private static boolean awaitMetric(String line) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!ActiveMQServerMetrics.render().contains(line)) {
+      if (System.nanoTime() > deadline) {
+        return false;
+      }
+      Thread.yield();
+    }
+    return true;
+  }
+
+  private static boolean awaitQuietly(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      return false;
+    }
+  }
+
+  @Test public void testFlow() {
+    ActiveMQServerFlow flow = new ActiveMQServerFlow(10, 50, 1000);
+    flow.record("flow.test", 5000000L, true);
+    assertFalse(flow.isShed("flow.test"));
+    flow.record("flow.test", 30000000L, true);
+    assertEquals(1, ActiveMQServerMetrics.counter("flow.flow.test.blocked").sum());
+    assertEquals(20000000L, ActiveMQServerMetrics.counter("flow.flow.test.blocked.nanos").sum());
+    assertFalse(flow.isShed("flow.test"));
+    flow.record("flow.test", 60000000L, false);
+    assertTrue(flow.isShed("flow.test"));
+    assertFalse(flow.isShed("flow.other"));
+    assertEquals(1, ActiveMQServerMetrics.counter("flow.flow.test.timeouts").sum());
+    ActiveMQServerFlow full = new ActiveMQServerFlow(10, 50, 1000);
+    full.record("other", 60000000L, false);
+    for (int i = 0; i < 300; i++) {
+      full.record("flow.full." + i, 30000000L, true);
+    }
+    assertTrue(full.isShed("other"));
+    assertFalse(full.isShed("flow.full.299"));
+    full.record("flow.full.298", 60000000L, false);
+    assertTrue(full.isShed("flow.full.299"));
+    assertFalse(full.isShed("flow.full.0"));
+    assertEquals(1, ActiveMQServerMetrics.counter("flow.other.timeouts").sum());
+    assertEquals(1, ActiveMQServerMetrics.counter("flow." + ActiveMQServerFlow._CHANNEL_OTHER + ".timeouts").sum());
+    assertEquals(46, ActiveMQServerMetrics.counter("flow." + ActiveMQServerFlow._CHANNEL_OTHER + ".blocked").sum());
+  }
+
+  @Test public void testTiming() {
+    ActiveMQServerStage stage = new ActiveMQServerStage("timed");
+    ActiveMQServerTiming timing = new ActiveMQServerTiming();
+    stage.end(stage.begin() - 3104000L, true, timing);
+    assertFalse(timing.getIsEnabled());
+    timing.start();
+    stage.end(stage.begin() - 3104000L, true, timing);
+    assertTrue(timing.render().matches("timed;dur=3\\.1\\d\\d, total;dur=\\d+\\.\\d{3}"));
+    timing.reset();
+    assertTrue(timing.render().startsWith("total;dur="));
+  }
+
+  @Test public void testEvents() {
+    assertEquals("cc.activemq.Publish", EventType.getEventType(ActiveMQServerEvents.Publish.class).getName());
+    assertTrue(EventType.getEventType(ActiveMQServerEvents.Send.class).getField("size") != null);
+  }
+
+  @Test public void testMonitor() throws Exception {
+    ActiveMQServerMonitor monitor = new ActiveMQServerMonitor(new ActiveMQServerConfig(), new ActiveMQServerBroker[0]);
+    assertEquals("ok", monitor.bounded(() -> "ok", result -> { }));
+    monitor.stop();
+    ActiveMQServerConfig config = new ActiveMQServerConfig();
+    config.init((ServletContext) Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+        new Class<?>[] { ServletContext.class }, (proxy, method, args) ->
+            (method.getName().equals("getInitParameter") && args[0].toString().startsWith("connect-") ? "1" : null)));
+    ActiveMQServerMonitor stuck = new ActiveMQServerMonitor(config, new ActiveMQServerBroker[0]);
+    CountDownLatch release = new CountDownLatch(1);
+    int timeouts = 0;
+    try {
+      for (int i = 0; i < 10; i++) {
+        try {
+          stuck.bounded(() -> release.await(10, TimeUnit.SECONDS), result -> { });
+        } catch (TimeoutException e) {
+          timeouts++;
+        }
+      }
+    } catch (RejectedExecutionException e) {
+      assertEquals(5, timeouts);
+    } finally {
+      release.countDown();
+      stuck.stop();
+    }
+    assertEquals(5, timeouts);
+  }
+
+  @Test public void testAdaptorLifecycle() {
+    List<String> closed = new ArrayList<String>();
+    ConnectionFactory factory = (ConnectionFactory) stub(ConnectionFactory.class, closed);
+    ActiveMQServerAdaptor adaptor = new ActiveMQServerAdaptor((Context) stub(Context.class, closed),
+        factory, "jms/CC.MQ", -1, null);
+    assertTrue(adaptor.getIsValid());
+    assertTrue(adaptor.acquire());
+    adaptor.retire();
+    assertFalse(adaptor.acquire());
+    assertFalse(closed.contains("Connection"));
+    adaptor.release();
+    assertTrue(closed.contains("Connection"));
+    assertTrue(ActiveMQServerMetrics.render().contains(ActiveMQServerAdaptor._METRIC_OPEN + " 0\n"));
+  }
+
+  @Test public void testConsumer() {
+    Deque<String> texts = new ArrayDeque<String>(Arrays.asList("a", "b", "c"));
+    List<String> events = new ArrayList<String>();
+    ActiveMQServerConsumerPool pool = new ActiveMQServerConsumerPool((Context) queue(Context.class, texts, events),
+        (ConnectionFactory) queue(ConnectionFactory.class, texts, events), "jms/CC.MQ", 1, 10);
+    ActiveMQServerConsumer consumer = pool.borrow(0);
+    List<String> messages = new ArrayList<String>();
+    assertTrue(consumer.consume("1", 0, 100, messages));
+    assertTrue(messages.isEmpty());
+    assertTrue(events.isEmpty());
+    assertTrue(consumer.consume("2", 2, 100, messages));
+    assertEquals(Arrays.asList("a", "b"), messages);
+    assertEquals(Arrays.asList("receive 100", "receiveNoWait"), events);
+    assertTrue(consumer.acknowledge());
+    assertTrue(events.contains("acknowledge"));
+    pool.release(consumer);
+    assertFalse(events.contains("recover"));
+    events.clear();
+    assertTrue(pool.borrow(0) == consumer);
+    assertTrue(pool.borrow(10) == null);
+    messages.clear();
+    assertTrue(consumer.consume("3", 5, 0, messages));
+    assertEquals(Arrays.asList("c"), messages);
+    assertEquals(Arrays.asList("receiveNoWait", "receiveNoWait"), events);
+    pool.release(consumer);
+    assertTrue(events.contains("recover"));
+    pool.close();
+    assertTrue(events.contains("close"));
+  }
+
+  @Test public void testTopic() throws Exception {
+    List<String> closed = new ArrayList<String>();
+    Map<String, ActiveMQServerTopic> topics = new ConcurrentHashMap<String, ActiveMQServerTopic>();
+    Context context = (Context) Proxy.newProxyInstance(Context.class.getClassLoader(),
+        new Class<?>[] { Context.class }, (proxy, method, args) -> stub(Topic.class, closed));
+    ActiveMQServerTopic topic = new ActiveMQServerTopic(context,
+        (ConnectionFactory) stub(ConnectionFactory.class, closed), "jms/CC.TOPIC", topics);
+    topics.put("jms/CC.TOPIC", topic);
+    ActiveMQServerSubscriber first = subscriber("1");
+    ActiveMQServerSubscriber second = subscriber("2");
+    assertTrue(topic.add(first));
+    assertTrue(topic.add(second));
+    first.close();
+    assertTrue(topic.getIsValid());
+    assertFalse(closed.contains("Connection"));
+    second.close();
+    assertFalse(topic.getIsValid());
+    assertTrue(closed.contains("Connection"));
+    assertTrue(topics.isEmpty());
+    assertFalse(topic.add(subscriber("3")));
+  }
+
+  private static ActiveMQServerSubscriber subscriber(String id) throws IOException {
+    ServletOutputStream output = new ServletOutputStream() {
+      @Override public boolean isReady() { return true; }
+      @Override public void setWriteListener(WriteListener listener) { }
+      @Override public void write(int b) { }
+    };
+    ServletResponse response = (ServletResponse) Proxy.newProxyInstance(ServletResponse.class.getClassLoader(),
+        new Class<?>[] { ServletResponse.class }, (proxy, method, args) -> output);
+    return new ActiveMQServerSubscriber(id, (AsyncContext) Proxy.newProxyInstance(AsyncContext.class.getClassLoader(),
+        new Class<?>[] { AsyncContext.class }, (proxy, method, args) ->
+            (method.getName().equals("getResponse") ? response : null)), 10);
+  }
+
+  private static Object queue(Class<?> type, Deque<String> texts, List<String> events) {
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "receive": events.add("receive " + args[0]);
+          return text(texts.poll(), events);
+        case "receiveNoWait": events.add("receiveNoWait");
+          return text(texts.poll(), events);
+        case "lookup": return stub(Queue.class, events);
+        case "recover":
+        case "close": events.add(method.getName());
+          return null;
+        default: return (method.getReturnType().isInterface() ? queue(method.getReturnType(), texts, events) : null);
+      }
+    });
+  }
+
+  private static TextMessage text(String text, List<String> events) {
+    return (text == null ? null : (TextMessage) Proxy.newProxyInstance(TextMessage.class.getClassLoader(),
+        new Class<?>[] { TextMessage.class }, (proxy, method, args) -> {
+          if (method.getName().equals("acknowledge")) {
+            events.add("acknowledge");
+          }
+          return (method.getName().equals("getText") ? text : null);
+        }));
+  }
+
+  private static Object stub(Class<?> type, List<String> closed) {
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+      if (method.getName().equals("close")) {
+        closed.add(type.getSimpleName());
+      }
+      Class<?> result = (method.getName().equals("lookup") ? Queue.class : method.getReturnType());
+      return (result.isInterface() ? stub(result, closed) : null);
+    });
+  }
+
+  private static BytesMessage chunk(String id, int seq, int total, boolean last, String data) {
+    return chunk(id, seq, total, last, false, data);
+  }
+
+  private static BytesMessage chunk(String id, int seq, int total, boolean last, boolean abort, String data) {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    if (abort) {
+      properties.put(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_ABORT, true);
+    }
+    properties.put(ActiveMQServerAdaptor._MQ_PROPERTY_ID, id);
+    properties.put(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_SEQ, seq);
+    properties.put(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_TOTAL, total);
+    properties.put(ActiveMQServerAdaptor._MQ_PROPERTY_CHUNK_LAST, last);
+    ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    return (BytesMessage) Proxy.newProxyInstance(BytesMessage.class.getClassLoader(),
+        new Class<?>[] { BytesMessage.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "propertyExists": return properties.containsKey(args[0]);
+            case "readBytes": return Math.max(0, in.read((byte[]) args[0]));
+            default: return properties.get(args[0]);
+          }
+        });
+  }
 }